@@ -0,0 +1,110 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Allocation check for the step loop. Runs a fixed-seed headless world until it's in steady
+ * state, then measures what the sim thread allocates around each simulateOneStep and divides
+ * by the number of live dinos. Fails (exit code 1) if the average goes over the budget, so an
+ * allocation regression in Field or the species classes shows up as a failed run.
+ *
+ * The default budget is roughly what the engine does today plus some headroom (it still
+ * makes a new Field, vegetation grid, Locations and neighbour lists every step), so lower it
+ * as those get fixed.
+ *
+ * Usage: java AllocationBudgetCheck [--size=120x80] [--warmup-steps=150] [--steps=100]
+ *                                   [--budget=768] [--seed=6969]
+ */
+public class AllocationBudgetCheck
+{
+    public static void main(String[] args)
+    {
+        System.setProperty("java.awt.headless", "true");
+
+        Map<String, String> opts = parseArgs(args);
+        String[] size = opts.getOrDefault("size", "120x80").toLowerCase().split("x");
+        int width = Integer.parseInt(size[0]);
+        int depth = Integer.parseInt(size[1]);
+        int warmupSteps = Integer.parseInt(opts.getOrDefault("warmup-steps", "150"));
+        int steps = Integer.parseInt(opts.getOrDefault("steps", "100"));
+        double budget = Double.parseDouble(opts.getOrDefault("budget", "768"));
+        long seed = Long.parseLong(opts.getOrDefault("seed", "6969"));
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(!(bean instanceof com.sun.management.ThreadMXBean threadBean) || !threadBean.isThreadAllocatedMemorySupported()) {
+            System.out.println("This JVM can't report per-thread allocation, nothing to check.");
+            return;
+        }
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        Randomizer.reset(seed);
+        Simulator sim = new Simulator(depth, width, true);
+        sim.setStatsSink(null);
+
+        // let the JIT settle and the population get past the initial boom
+        for(int i = 0; i < warmupSteps && sim.getField().isViable(); i++) {
+            sim.simulateOneStep();
+        }
+
+        long totalBytes = 0;
+        long totalAnimalSteps = 0;
+        double worstPerAnimal = 0;
+        int measured = 0;
+
+        for(int i = 0; i < steps && sim.getField().isViable(); i++) {
+            int animals = sim.getField().getDinosaurs().size();
+
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            sim.simulateOneStep();
+            long bytes = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+            totalBytes += bytes;
+            totalAnimalSteps += Math.max(1, animals);
+            worstPerAnimal = Math.max(worstPerAnimal, bytes / (double) Math.max(1, animals));
+            measured++;
+        }
+
+        System.setOut(console);
+
+        if(measured == 0) {
+            System.out.println("World died out during warmup, nothing measured.");
+            System.exit(1);
+        }
+
+        double perAnimal = totalBytes / (double) totalAnimalSteps;
+        PerfMonitor perf = sim.getPerfMonitor();
+
+        System.out.printf("%dx%d, %d steps measured after %d warmup%n", width, depth, measured, warmupSteps);
+        System.out.printf("  bytes/step          %12.0f%n", totalBytes / (double) measured);
+        System.out.printf("  bytes/step/animal   %12.1f  (worst step %.1f, budget %.1f)%n", perAnimal, worstPerAnimal, budget);
+        System.out.println("  by phase (perf monitor window, last " + perf.getSampleCount() + " steps):");
+        for(PerfMonitor.Phase phase : PerfMonitor.Phase.values()) {
+            System.out.printf("    %-11s %12.0f bytes/step%n", phase.name().toLowerCase(), perf.getMeanPhaseAllocatedBytes(phase));
+        }
+
+        if(perAnimal > budget) {
+            System.out.println("FAIL: over the allocation budget");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    // --key=value style args
+    private static Map<String, String> parseArgs(String[] args)
+    {
+        Map<String, String> opts = new HashMap<>();
+        for(String arg : args) {
+            if(!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            if(eq < 0) opts.put(arg.substring(2), "true");
+            else opts.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return opts;
+    }
+}
@@ -24,6 +24,12 @@ public class Allosaurus extends Carnivore
         // System.out.println("[spawn] allo at " + location + " energy=" + getEnergy());
     }
 
+    // A saved dino being loaded (Dinosaur.create); restoreState fills in the rest
+    Allosaurus(Location location, boolean female)
+    {
+        super(location, Tuning.get(SpeciesType.ALLOSAURUS).maxEnergy, female);
+    }
+
     // Attack value comes from tuning (so we can balance without changing code)
     @Override
     public int getAttack()
@@ -31,6 +37,13 @@ public class Allosaurus extends Carnivore
         return Tuning.get(SpeciesType.ALLOSAURUS).attack;
     }
 
+    // Species type for tuning lookup
+    @Override
+    public SpeciesType getSpeciesType()
+    {
+        return SpeciesType.ALLOSAURUS;
+    }
+
     // Used in hunting: day/night changes it and weather can mess it up too.
     private double timeKillMod()
     {
@@ -110,6 +123,7 @@ public class Allosaurus extends Carnivore
         consumeEnergy(births * Math.max(0, t.energyCostPerBaby));
         if(!isAlive()) return 0;
 
+        SimEvents.birth(this, births);
         return births;
     }
 
@@ -19,6 +19,12 @@ public class Ankylosaurus extends Herbivore
         }
     }
 
+    // A saved dino being loaded (Dinosaur.create); restoreState fills in the rest
+    Ankylosaurus(Location location, boolean female)
+    {
+        super(location, Tuning.get(SpeciesType.ANKYLOSAURUS).maxEnergy, female);
+    }
+
     @Override
     public int getDefence()
     {
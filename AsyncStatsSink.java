@@ -0,0 +1,149 @@
+/*
+ * Wraps another sink so the sim thread only drops stats into a ring buffer and a background
+ * thread does the actual writing, a batch at a time (with one flush per batch).
+ * everyNth keeps only steps that are multiples of N.
+ * If the writer falls a whole buffer behind, the oldest stats are dropped rather than making
+ * the sim wait; the number dropped is printed when it's closed.
+ */
+public class AsyncStatsSink implements StatsSink
+{
+    private static final int BATCH = 256;
+
+    private final StatsSink target;
+    private final int everyNth;
+
+    // ring buffer (guarded by lock)
+    private final Object lock = new Object();
+    private final StepStats[] ring;
+    private int head;
+    private int size;
+    private long dropped;
+    // stats ever queued (so the one at head is number queued - size), and whether the writer
+    // has a batch out that isn't written and flushed yet
+    private long queued;
+    private boolean inFlight;
+    private boolean closed;
+
+    private final Thread writer;
+
+    public AsyncStatsSink(StatsSink target)
+    {
+        this(target, 4096, 1);
+    }
+
+    public AsyncStatsSink(StatsSink target, int capacity, int everyNth)
+    {
+        this.target = target;
+        this.everyNth = Math.max(1, everyNth);
+        this.ring = new StepStats[Math.max(BATCH, capacity)];
+
+        writer = new Thread(this::drainLoop, "stats-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Sim thread: queue it (never blocks on I/O)
+    public void accept(StepStats stats)
+    {
+        if(stats.step() % everyNth != 0) return;
+
+        synchronized(lock) {
+            if(closed) return;
+            if(size == ring.length) {
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+                dropped++;
+            }
+            ring[(head + size) % ring.length] = stats;
+            size++;
+            queued++;
+            // the writer and any flush() wait on the same lock; a lone notify could wake the wrong one
+            lock.notifyAll();
+        }
+    }
+
+    // Waits until everything queued so far has been written and flushed
+    public void flush()
+    {
+        synchronized(lock) {
+            long target = queued;
+            // everything before the head of the ring has been taken, and once no batch is out
+            // it's all been written (or dropped)
+            while((inFlight || queued - size < target) && writer.isAlive()) {
+                try {
+                    lock.wait(50);
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Writes whatever is left, then closes the target
+    public void close()
+    {
+        synchronized(lock) {
+            if(closed) return;
+            closed = true;
+            lock.notifyAll();
+        }
+
+        try {
+            writer.join();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        target.close();
+        if(dropped > 0) System.err.println("stats: dropped " + dropped + " steps (writer too slow)");
+    }
+
+    // Writer thread: take a batch, write it outside the lock, flush, repeat
+    private void drainLoop()
+    {
+        StepStats[] batch = new StepStats[BATCH];
+
+        while(true) {
+            int n;
+            synchronized(lock) {
+                while(size == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    }
+                    catch(InterruptedException e) {
+                        return;
+                    }
+                }
+                if(size == 0) return;
+
+                n = Math.min(size, BATCH);
+                for(int i = 0; i < n; i++) {
+                    batch[i] = ring[head];
+                    ring[head] = null;
+                    head = (head + 1) % ring.length;
+                }
+                size -= n;
+                inFlight = true;
+            }
+
+            try {
+                for(int i = 0; i < n; i++) {
+                    target.accept(batch[i]);
+                    batch[i] = null;
+                }
+                target.flush();
+            }
+            catch(RuntimeException e) {
+                System.err.println("stats: writer failed, " + e);
+            }
+
+            synchronized(lock) {
+                inFlight = false;
+                lock.notifyAll();
+            }
+        }
+    }
+}
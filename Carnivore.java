@@ -14,6 +14,11 @@ public abstract class Carnivore extends Dinosaur
         super(location, maxEnergy);
     }
 
+    protected Carnivore(Location location, int maxEnergy, boolean female)
+    {
+        super(location, maxEnergy, female);
+    }
+
     // Carnivores have attack stat (from tuning)
     public abstract int getAttack();
 
@@ -38,6 +43,7 @@ public abstract class Carnivore extends Dinosaur
         boolean success = rand.nextDouble() <= chance;
 
         if(success) {
+            SimEvents.kill(this, prey);
             if(prey.isInfected()) {
                 DiseaseManager.onPredatorAteInfectedPrey(this);
             }
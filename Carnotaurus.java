@@ -15,12 +15,24 @@ public class Carnotaurus extends Carnivore
         }
     }
 
+    // A saved dino being loaded (Dinosaur.create); restoreState fills in the rest
+    Carnotaurus(Location location, boolean female)
+    {
+        super(location, Tuning.get(SpeciesType.CARNOTAURUS).maxEnergy, female);
+    }
+
     @Override
     public int getAttack()
     {
         return Tuning.get(SpeciesType.CARNOTAURUS).attack;
     }
 
+    @Override
+    public SpeciesType getSpeciesType()
+    {
+        return SpeciesType.CARNOTAURUS;
+    }
+
     // Day/night modifier + fog modifier
     private double timeKillMod()
     {
@@ -86,6 +98,7 @@ public class Carnotaurus extends Carnivore
         consumeEnergy(births * Math.max(0, t.energyCostPerBaby));
         if(!isAlive()) return 0;
 
+        SimEvents.birth(this, births);
         return births;
     }
 
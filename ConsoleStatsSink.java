@@ -0,0 +1,29 @@
+import java.io.PrintStream;
+
+/*
+ * Prints the usual population line to System.out.
+ * Lines are collected and printed in one go on flush (AsyncStatsSink flushes per batch).
+ */
+public class ConsoleStatsSink implements StatsSink
+{
+    private final StringBuilder pending = new StringBuilder();
+
+    public void accept(StepStats stats)
+    {
+        pending.append(stats.toConsoleLine()).append(System.lineSeparator());
+    }
+
+    public void flush()
+    {
+        if(pending.length() == 0) return;
+        PrintStream out = System.out;
+        out.print(pending);
+        out.flush();
+        pending.setLength(0);
+    }
+
+    public void close()
+    {
+        flush();
+    }
+}
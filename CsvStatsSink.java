@@ -0,0 +1,67 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Writes one CSV row per step: step,time,weather,<one column per species>,infected.
+ * If the file name ends in .gz it's gzipped as it goes (long runs get big otherwise).
+ */
+public class CsvStatsSink implements StatsSink
+{
+    private final Writer out;
+
+    // Opens (and truncates) the file and writes the header
+    public CsvStatsSink(File file) throws IOException
+    {
+        OutputStream stream = new FileOutputStream(file);
+        if(file.getName().endsWith(".gz")) stream = new GZIPOutputStream(stream, 1 << 16);
+        out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+
+        StringBuilder header = new StringBuilder("step,time,weather");
+        for(SpeciesType type : SpeciesType.values()) header.append(',').append(type.name());
+        header.append(",infected\n");
+        out.write(header.toString());
+    }
+
+    public void accept(StepStats stats)
+    {
+        StringBuilder row = new StringBuilder();
+        row.append(stats.step()).append(',').append(stats.timeOfDay()).append(',').append(stats.weather());
+        for(int count : stats.counts()) row.append(',').append(count);
+        row.append(',').append(stats.infected()).append('\n');
+
+        try {
+            out.write(row.toString());
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void flush()
+    {
+        try {
+            out.flush();
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void close()
+    {
+        try {
+            out.close();
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
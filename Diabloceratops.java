@@ -19,6 +19,12 @@ public class Diabloceratops extends Herbivore
         }
     }
 
+    // A saved dino being loaded (Dinosaur.create); restoreState fills in the rest
+    Diabloceratops(Location location, boolean female)
+    {
+        super(location, Tuning.get(SpeciesType.DIABLOCERATOPS).maxEnergy, female);
+    }
+
     @Override
     public int getDefence()
     {
@@ -15,12 +15,24 @@ public class Dilophosaurus extends Carnivore
         }
     }
 
+    // A saved dino being loaded (Dinosaur.create); restoreState fills in the rest
+    Dilophosaurus(Location location, boolean female)
+    {
+        super(location, Tuning.get(SpeciesType.DILOPHOSAURUS).maxEnergy, female);
+    }
+
     @Override
     public int getAttack()
     {
         return Tuning.get(SpeciesType.DILOPHOSAURUS).attack;
     }
 
+    @Override
+    public SpeciesType getSpeciesType()
+    {
+        return SpeciesType.DILOPHOSAURUS;
+    }
+
     // Dilo gets a strong night modifier and (usually) zero day mod if night-only is enabled
     private double timeKillMod()
     {
@@ -94,6 +106,7 @@ public class Dilophosaurus extends Carnivore
         consumeEnergy(births * Math.max(0, t.energyCostPerBaby));
         if(!isAlive()) return 0;
 
+        SimEvents.birth(this, births);
         return births;
     }
 
@@ -13,24 +13,33 @@ public abstract class Dinosaur
     private boolean alive;
     private Location location;
 
-    private final boolean female;
+    private boolean female;
 
-    private final int maxEnergy;
+    private int maxEnergy;
     private int energy;
 
     private boolean infected;
     private int infectionTimer;
     private int immunityTimer;
 
+    // set when infected flips either way, so the field can tell the view this cell changed colour
+    private boolean infectionChanged;
+
     private int age;
 
     // Makes a dinosaur with max energy and random sex
     public Dinosaur(Location location, int maxEnergy)
+    {
+        this(location, maxEnergy, rand.nextBoolean());
+    }
+
+    // Makes a dinosaur with max energy and a known sex (loading worlds, so the rng isn't touched)
+    protected Dinosaur(Location location, int maxEnergy, boolean female)
     {
         this.alive = true;
         this.location = location;
 
-        this.female = rand.nextBoolean();
+        this.female = female;
 
         this.maxEnergy = maxEnergy;
         this.energy = maxEnergy;
@@ -42,9 +51,58 @@ public abstract class Dinosaur
         this.age = 0;
     }
 
+    // Makes a dinosaur of the given species for loading worlds (no random age or sex, no rng use)
+    public static Dinosaur create(SpeciesType type, Location location, boolean female)
+    {
+        switch(type) {
+            case ALLOSAURUS: return new Allosaurus(location, female);
+            case CARNOTAURUS: return new Carnotaurus(location, female);
+            case DILOPHOSAURUS: return new Dilophosaurus(location, female);
+            case IGUANADON: return new Iguanadon(location, female);
+            case DIABLOCERATOPS: return new Diabloceratops(location, female);
+            case ANKYLOSAURUS: return new Ankylosaurus(location, female);
+            default: throw new IllegalArgumentException("Unknown species " + type);
+        }
+    }
+
+    // Overwrites everything with saved values (checkpoints); skips the usual rules on purpose
+    public void restoreState(boolean alive, boolean female, int maxEnergy, int energy, int age,
+                             boolean infected, int infectionTimer, int immunityTimer, boolean infectionChanged)
+    {
+        this.alive = alive;
+        if(!alive) this.location = null;
+        this.female = female;
+        this.maxEnergy = maxEnergy;
+        this.energy = energy;
+        this.age = age;
+        this.infected = infected;
+        this.infectionTimer = infectionTimer;
+        this.immunityTimer = immunityTimer;
+        this.infectionChanged = infectionChanged;
+    }
+
+    public int getInfectionTimer()
+    {
+        return infectionTimer;
+    }
+
+    public int getImmunityTimer()
+    {
+        return immunityTimer;
+    }
+
+    // Peeks at the view's "infection changed" flag without clearing it
+    public boolean hasPendingInfectionChange()
+    {
+        return infectionChanged;
+    }
+
     // Each dinosaur decides what to do per step
     public abstract void act(Field currentField, Field nextFieldState);
 
+    // Used to pull tuning values (and by the view/stats to group by species)
+    public abstract SpeciesType getSpeciesType();
+
     // Checks alive state
     public boolean isAlive()
     {
@@ -156,6 +214,15 @@ public abstract class Dinosaur
         infected = true;
         infectionTimer = Math.max(1, duration);
         immunityTimer = 0;
+        infectionChanged = true;
+    }
+
+    // True if infection started/ended since the last call (and clears the flag)
+    public boolean takeInfectionChange()
+    {
+        boolean changed = infectionChanged;
+        infectionChanged = false;
+        return changed;
     }
 
     // Disease step logic (Simulator calls this before act)
@@ -181,6 +248,7 @@ public abstract class Dinosaur
                 infected = false;
                 infectionTimer = 0;
                 immunityTimer = DiseaseManager.getImmunityDuration();
+                infectionChanged = true;
             } else {
                 setDead();
             }
@@ -23,6 +23,7 @@ public class DiseaseManager
         Dinosaur d = dinos.get(rand.nextInt(dinos.size()));
         if(d != null && d.canBeInfected()) {
             d.infect(randomInfectionDuration());
+            SimEvents.outbreak(d);
             // System.out.println("[disease] outbreak on " + d.getClass().getSimpleName());
         }
     }
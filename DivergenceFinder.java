@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/*
+ * Runs two versions of a world side by side, one step at a time, and finds the first step
+ * where they stop being the same world (WorldHash), then the first cell (row by row) that
+ * differs. Two branches off the same snapshot with the same settings should never diverge;
+ * if they do, something in the engine isn't deterministic.
+ *
+ *   WorldSnapshot start = WorldSnapshot.of(sim);
+ *   DivergenceFinder finder = new DivergenceFinder(new WorldFork(start),
+ *           new WorldFork(start).withTuning("vegRegrowChance", "0.31"));
+ *   Divergence d = finder.find(5000);   // null if they stayed the same
+ *
+ * Command line (settings are tuning keys as in Tuning.snapshot, or seed=N, for the second run):
+ *   java DivergenceFinder world.ckp steps [key=value ...]
+ *   java DivergenceFinder depth width steps [key=value ...]
+ */
+public class DivergenceFinder
+{
+    // Where two runs first differ; row/col are -1 when it's time/weather/rng rather than a cell
+    public record Divergence(int step, int row, int col, String detail)
+    {
+        @Override
+        public String toString()
+        {
+            return (row < 0) ? "step " + step + ": " + detail
+                             : "step " + step + " cell (" + row + "," + col + "): " + detail;
+        }
+    }
+
+    private final WorldFork a, b;
+    private int stepsCompared;
+
+    public DivergenceFinder(WorldFork a, WorldFork b)
+    {
+        this.a = a;
+        this.b = b;
+    }
+
+    // Steps both runs up to maxSteps times (or until both have stopped); returns where they first differ, or null
+    public Divergence find(int maxSteps)
+    {
+        Divergence d = compare();
+        for(int n = 0; d == null && n < maxSteps; n++) {
+            int before = a.getStep();
+            a.simulate(1);
+            b.simulate(1);
+            // neither moved, so both have died out and there's nothing more to compare
+            if(a.getStep() == before && b.getStep() == before) break;
+            stepsCompared++;
+            d = compare();
+        }
+        return d;
+    }
+
+    // Steps run (by each side) in find() so far
+    public int getStepsCompared()
+    {
+        return stepsCompared;
+    }
+
+    private Divergence compare()
+    {
+        Field fa = a.getSimulator().getField();
+        Field fb = b.getSimulator().getField();
+        int step = a.getStep();
+        if(step != b.getStep()) {
+            return new Divergence(step, -1, -1, "one run stopped at step " + Math.min(step, b.getStep()));
+        }
+        if(fa.getDepth() != fb.getDepth() || fa.getWidth() != fb.getWidth()) {
+            return new Divergence(step, -1, -1, "field sizes differ");
+        }
+
+        if(WorldHash.of(fa) != WorldHash.of(fb)) {
+            Divergence cell = firstDifferentCell(step, fa, fb);
+            if(cell != null) return cell;
+            // equal cell by cell, so only order-independent hashing could disagree (it can't)
+            return new Divergence(step, -1, -1, "world hashes differ");
+        }
+
+        SimGlobals ga = a.getGlobals(), gb = b.getGlobals();
+        if(ga.timeOfDay() != gb.timeOfDay()) return new Divergence(step, -1, -1, "time " + ga.timeOfDay() + " vs " + gb.timeOfDay());
+        if(ga.weather() != gb.weather() || ga.stepsUntilChange() != gb.stepsUntilChange()
+                || ga.heatwaveCycles() != gb.heatwaveCycles()) {
+            return new Divergence(step, -1, -1, "weather " + ga.weather() + "/" + ga.stepsUntilChange()
+                    + " vs " + gb.weather() + "/" + gb.stepsUntilChange());
+        }
+        if(ga.rngState() != gb.rngState()) {
+            // same world, but the next step will roll different numbers
+            return new Divergence(step, -1, -1, "rng states differ");
+        }
+        return null;
+    }
+
+    private static Divergence firstDifferentCell(int step, Field fa, Field fb)
+    {
+        int width = fa.getWidth();
+        for(int row = 0; row < fa.getDepth(); row++) {
+            for(int col = 0; col < width; col++) {
+                Location loc = new Location(row, col);
+                int va = fa.getVegetationAt(loc), vb = fb.getVegetationAt(loc);
+                if(va != vb) return new Divergence(step, row, col, "vegetation " + va + " vs " + vb);
+
+                Dinosaur da = alive(fa.getDinosaurAt(loc)), db = alive(fb.getDinosaurAt(loc));
+                if(da == null && db == null) continue;
+                if(da == null || db == null || da.getSpeciesType() != db.getSpeciesType()) {
+                    return new Divergence(step, row, col, describe(da) + " vs " + describe(db));
+                }
+                int cell = row * width + col;
+                if(WorldHash.of(da, cell) != WorldHash.of(db, cell)) {
+                    return new Divergence(step, row, col, describe(da) + " vs " + describe(db));
+                }
+            }
+        }
+        return null;
+    }
+
+    // dead dinos left in a cell count as empty, the next step treats them that way too
+    private static Dinosaur alive(Dinosaur d)
+    {
+        return (d != null && d.isAlive()) ? d : null;
+    }
+
+    private static String describe(Dinosaur d)
+    {
+        if(d == null) return "empty";
+        return d.getSpeciesType() + (d.isFemale() ? " F" : " M")
+                + " energy " + d.getEnergy() + "/" + d.getMaxEnergy() + " age " + d.getAge()
+                + (d.isInfected() ? " infected " + d.getInfectionTimer() : "")
+                + (d.getImmunityTimer() > 0 ? " immune " + d.getImmunityTimer() : "");
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        WorldSnapshot start;
+        int steps, firstSetting;
+        if(args.length >= 2 && !args[0].matches("\\d+")) {
+            int[] size = WorldCheckpoint.readSize(Paths.get(args[0]));
+            Simulator sim = new Simulator(size[0], size[1], true);
+            sim.setStatsSink(null);
+            WorldCheckpoint.load(sim, Paths.get(args[0]));
+            start = WorldSnapshot.of(sim);
+            steps = Integer.parseInt(args[1]);
+            firstSetting = 2;
+        }
+        else if(args.length >= 3) {
+            Simulator sim = new Simulator(Integer.parseInt(args[0]), Integer.parseInt(args[1]), true);
+            sim.setStatsSink(null);
+            start = WorldSnapshot.of(sim);
+            steps = Integer.parseInt(args[2]);
+            firstSetting = 3;
+        }
+        else {
+            System.out.println("Usage: java DivergenceFinder world.ckp steps [key=value ...]");
+            System.out.println("       java DivergenceFinder depth width steps [key=value ...]");
+            return;
+        }
+
+        WorldFork b = new WorldFork(start);
+        for(int i = firstSetting; i < args.length; i++) {
+            String[] kv = args[i].split("=", 2);
+            if(kv.length != 2) throw new IllegalArgumentException("Expected key=value: " + args[i]);
+            if(kv[0].equals("seed")) b.withSeed(Long.parseLong(kv[1]));
+            else b.withTuning(kv[0], kv[1]);
+        }
+
+        DivergenceFinder finder = new DivergenceFinder(new WorldFork(start), b);
+        long t0 = System.nanoTime();
+        Divergence d = finder.find(steps);
+        System.out.printf("%d steps compared in %.1f s%n", finder.getStepsCompared(), (System.nanoTime() - t0) / 1e9);
+        System.out.println((d == null) ? "No divergence" : "First divergence at " + d);
+    }
+}
@@ -0,0 +1,471 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/*
+ * Microbenchmarks for the engine hot paths (no build tool here, so no JMH; this does the
+ * same basic job with just the JDK: warmup, timed iterations, ops/sec with error, and
+ * bytes allocated per op like JMH's GC profiler gives you).
+ *
+ * Every case runs for every grid size x density. Density scales the spawn probabilities in
+ * Tuning (1.0 = the normal defaults). Setup work between iterations is not timed or counted
+ * in alloc/op, but the GC columns cover the whole measurement phase so setup garbage shows there.
+ * Worlds start at step 0 (daytime), so e.g. night-only Dilophosaurus mostly measures its rest path.
+ *
+ * Usage: java EngineBenchmark [--sizes=120x80,1000x1000] [--densities=0.5,1,2]
+ *                             [--bench=adjacent,step,...] [--warmup=1] [--measure=3] [--csv=file]
+ */
+public class EngineBenchmark
+{
+    private static final String DEFAULT_SIZES = "120x80,500x500,1000x1000,4000x4000";
+    private static final String DEFAULT_DENSITIES = "1.0";
+    private static final int LOCATION_POOL = 4096;
+    private static final int MAX_ACTORS_PER_ITERATION = 20000;
+    // a case that does no work this many times in a row (or needs this many fresh worlds) is skipped
+    private static final int MAX_EMPTY_ITERATIONS = 1000;
+    private static final int MAX_RESETS = 5;
+
+    // results get folded in here so the JIT can't throw the work away
+    private static long blackhole;
+
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /*
+     * One benchmark case. setUp runs once per grid size/density, beforeIteration before every
+     * timed iteration, and runIteration is the timed part (returns how many ops it did).
+     */
+    private abstract static class Case
+    {
+        final String name;
+        // set when the case can't run at this size/density (and why)
+        String skipReason;
+
+        Case(String name)
+        {
+            this.name = name;
+        }
+
+        void setUp(int depth, int width) { }
+
+        void beforeIteration() { }
+
+        abstract long runIteration();
+    }
+
+    // One result row
+    private record Result(String bench, String size, double density, double opsPerSec, double error,
+                          double bytesPerOp, long gcCount, long gcMillis) { }
+
+    public static void main(String[] args) throws IOException
+    {
+        System.setProperty("java.awt.headless", "true");
+
+        Map<String, String> opts = parseArgs(args);
+        String[] sizes = opts.getOrDefault("sizes", DEFAULT_SIZES).split(",");
+        String[] densities = opts.getOrDefault("densities", DEFAULT_DENSITIES).split(",");
+        String filter = opts.get("bench");
+        double warmupSecs = Double.parseDouble(opts.getOrDefault("warmup", "1"));
+        double measureSecs = Double.parseDouble(opts.getOrDefault("measure", "3"));
+
+        EngineBenchmark bench = new EngineBenchmark();
+        List<Result> results = bench.runAll(sizes, densities, filter, warmupSecs, measureSecs);
+
+        printTable(results);
+        if(opts.containsKey("csv")) writeCsv(results, opts.get("csv"));
+    }
+
+    // Runs every (matching) case for every size/density combo
+    private List<Result> runAll(String[] sizes, String[] densities, String filter,
+                                double warmupSecs, double measureSecs)
+    {
+        List<Result> results = new ArrayList<>();
+        PrintStream console = System.out;
+
+        for(String size : sizes) {
+            String[] parts = size.trim().toLowerCase().split("x");
+            int width = Integer.parseInt(parts[0]);
+            int depth = Integer.parseInt(parts[1]);
+
+            for(String densityText : densities) {
+                double density = Double.parseDouble(densityText.trim());
+
+                for(Case c : buildCases(density)) {
+                    if(filter != null && !matches(filter, c.name)) continue;
+
+                    console.printf("# %s  %s  density %.2f%n", c.name, size.trim(), density);
+
+                    // the engine prints stats every step, keep that out of the numbers/report
+                    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                    Result result = null;
+                    try {
+                        c.setUp(depth, width);
+                        run(c, warmupSecs);
+                        if(c.skipReason == null) result = measure(c, size.trim(), density, measureSecs);
+                    }
+                    finally {
+                        System.setOut(console);
+                    }
+                    if(result != null) results.add(result);
+                    else console.println("#   skipped: " + c.skipReason);
+                }
+            }
+        }
+
+        console.println("# blackhole " + blackhole);
+        return results;
+    }
+
+    // Untimed warmup (still runs the same code so the JIT gets to it)
+    private void run(Case c, double seconds)
+    {
+        long deadline = System.nanoTime() + (long)(seconds * 1e9);
+        while(System.nanoTime() < deadline && c.skipReason == null) {
+            c.beforeIteration();
+            if(c.skipReason == null) c.runIteration();
+        }
+    }
+
+    // Timed iterations: ops/sec per iteration, alloc per op, GC over the whole measurement (null if skipped)
+    private Result measure(Case c, String size, double density, double seconds)
+    {
+        List<Double> rates = new ArrayList<>();
+        long totalOps = 0;
+        long totalNanos = 0;
+        long totalBytes = 0;
+
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcMillis();
+        long threadId = Thread.currentThread().getId();
+        int empty = 0;
+
+        while(totalNanos < seconds * 1e9 || rates.size() < 3) {
+            c.beforeIteration();
+            if(c.skipReason != null) return null;
+
+            long bytesBefore = threadBean.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            long ops = c.runIteration();
+            long elapsed = System.nanoTime() - start;
+            long bytes = threadBean.getThreadAllocatedBytes(threadId) - bytesBefore;
+
+            if(ops <= 0 || elapsed <= 0) {
+                if(++empty >= MAX_EMPTY_ITERATIONS) {
+                    c.skipReason = "no ops in " + empty + " iterations in a row";
+                    return null;
+                }
+                continue;
+            }
+            empty = 0;
+            totalOps += ops;
+            totalNanos += elapsed;
+            totalBytes += bytes;
+            rates.add(ops * 1e9 / elapsed);
+        }
+
+        double mean = totalOps * 1e9 / totalNanos;
+        double variance = 0;
+        for(double r : rates) variance += (r - mean) * (r - mean);
+        double error = 1.96 * Math.sqrt(variance / Math.max(1, rates.size() - 1)) / Math.sqrt(rates.size());
+
+        return new Result(c.name, size, density, mean, error, totalBytes / (double) totalOps,
+                gcCount() - gcCountBefore, gcMillis() - gcTimeBefore);
+    }
+
+    // All the benchmark cases (fresh objects per size/density)
+    private List<Case> buildCases(double density)
+    {
+        List<Case> cases = new ArrayList<>();
+
+        cases.add(new FieldCase("Field.getAdjacentLocations", density) {
+            long op(Location loc) { return field.getAdjacentLocations(loc).size(); }
+        });
+        cases.add(new FieldCase("Field.getFreeAdjacentLocations", density) {
+            long op(Location loc) { return field.getFreeAdjacentLocations(loc).size(); }
+        });
+        cases.add(new FieldCase("Field.getLocationsWithinRadius", density) {
+            long op(Location loc) { return field.getLocationsWithinRadius(loc, 2).size(); }
+        });
+
+        cases.add(new WorldCase("Field.regrowVegetation", density) {
+            long runIteration()
+            {
+                sim.getField().regrowVegetation(TimeOfDay.DAY, WeatherState.CLEAR);
+                return 1;
+            }
+        });
+
+        cases.add(new WorldCase("Field.copyVegetationFrom", density) {
+            Field target;
+
+            void setUp(int depth, int width)
+            {
+                super.setUp(depth, width);
+                target = new Field(depth, width);
+            }
+
+            long runIteration()
+            {
+                target.copyVegetationFrom(sim.getField());
+                return 1;
+            }
+        });
+
+        cases.add(new WorldCase("Dinosaur.tickDisease", density) {
+            void beforeIteration()
+            {
+                // keep a steady share of infected dinos or it all burns out after ~70 ticks
+                refreshIfNeeded();
+                List<Dinosaur> dinos = sim.getField().getDinosaurs();
+                Random rand = Randomizer.getRandom();
+                for(int i = 0; i < dinos.size() / 10; i++) {
+                    Dinosaur d = dinos.get(rand.nextInt(dinos.size()));
+                    if(d.canBeInfected()) d.infect(DiseaseManager.randomInfectionDuration());
+                }
+            }
+
+            long runIteration()
+            {
+                Field field = sim.getField();
+                List<Dinosaur> dinos = field.getDinosaurs();
+                int n = Math.min(dinos.size(), MAX_ACTORS_PER_ITERATION);
+                for(int i = 0; i < n; i++) {
+                    dinos.get(i).tickDisease(field);
+                }
+                return n;
+            }
+        });
+
+        for(SpeciesType type : SpeciesType.values()) {
+            cases.add(new ActCase(type, density));
+        }
+
+        cases.add(new WorldCase("Simulator.simulateOneStep", density) {
+            void beforeIteration()
+            {
+                refreshIfNeeded();
+            }
+
+            long runIteration()
+            {
+                sim.simulateOneStep();
+                return 1;
+            }
+        });
+
+        return cases;
+    }
+
+    /*
+     * Case that needs a populated headless world at the given density.
+     */
+    private static class WorldCase extends Case
+    {
+        final double density;
+        Simulator sim;
+        int startPopulation;
+
+        WorldCase(String name, double density)
+        {
+            super(name);
+            this.density = density;
+        }
+
+        void setUp(int depth, int width)
+        {
+            Randomizer.reset();
+            double[] saved = Tuning.scaleSpawnChances(density);
+            try {
+                sim = new Simulator(depth, width, true);
+            }
+            finally {
+                Tuning.setSpawnChances(saved);
+            }
+            sim.setStatsSink(null);
+            startPopulation = sim.getField().getDinosaurs().size();
+        }
+
+        // Repopulates if the world has died out or shrunk a lot
+        void refreshIfNeeded()
+        {
+            Field field = sim.getField();
+            if(!field.isViable() || field.getDinosaurs().size() < startPopulation / 4) repopulate();
+        }
+
+        // Fresh world at this case's density
+        void repopulate()
+        {
+            double[] saved = Tuning.scaleSpawnChances(density);
+            try {
+                sim.reset();
+            }
+            finally {
+                Tuning.setSpawnChances(saved);
+            }
+        }
+
+        long runIteration()
+        {
+            return 0;
+        }
+    }
+
+    /*
+     * Field query case: one op = one call at a location picked from a fixed pool.
+     */
+    private abstract static class FieldCase extends WorldCase
+    {
+        Field field;
+        Location[] pool;
+
+        FieldCase(String name, double density)
+        {
+            super(name, density);
+        }
+
+        void setUp(int depth, int width)
+        {
+            super.setUp(depth, width);
+            field = sim.getField();
+
+            Random rand = new Random(42);
+            pool = new Location[LOCATION_POOL];
+            for(int i = 0; i < pool.length; i++) {
+                pool[i] = new Location(rand.nextInt(depth), rand.nextInt(width));
+            }
+        }
+
+        abstract long op(Location loc);
+
+        long runIteration()
+        {
+            long sum = 0;
+            for(Location loc : pool) sum += op(loc);
+            blackhole += sum;
+            return pool.length;
+        }
+    }
+
+    /*
+     * One species' act(): every live dino of that species acts from the current field into
+     * a fresh next field (the next field is made untimed). One op = one act call.
+     */
+    private static class ActCase extends WorldCase
+    {
+        private final SpeciesType type;
+        private final List<Dinosaur> actors = new ArrayList<>();
+        private Field next;
+
+        ActCase(SpeciesType type, double density)
+        {
+            super(type.name().charAt(0) + type.name().substring(1).toLowerCase() + ".act", density);
+            this.type = type;
+        }
+
+        void beforeIteration()
+        {
+            refreshIfNeeded();
+            collectActors();
+
+            // acting ages/kills them, so start over once this species gets thin
+            for(int resets = 0; actors.size() < 10; resets++) {
+                if(resets == MAX_RESETS) {
+                    skipReason = "fewer than 10 " + name.substring(0, name.length() - ".act".length())
+                            + " in " + MAX_RESETS + " fresh worlds";
+                    return;
+                }
+                repopulate();
+                collectActors();
+            }
+            Field field = sim.getField();
+            next = new Field(field.getDepth(), field.getWidth());
+        }
+
+        private void collectActors()
+        {
+            actors.clear();
+            for(Dinosaur d : sim.getField().getDinosaurs()) {
+                if(d.getSpeciesType() == type && d.isAlive()) actors.add(d);
+                if(actors.size() >= MAX_ACTORS_PER_ITERATION) break;
+            }
+        }
+
+        long runIteration()
+        {
+            Field field = sim.getField();
+            for(Dinosaur d : actors) {
+                if(d.isAlive()) d.act(field, next);
+            }
+            return actors.size();
+        }
+    }
+
+    private static boolean matches(String filter, String name)
+    {
+        for(String f : filter.split(",")) {
+            if(name.toLowerCase().contains(f.trim().toLowerCase())) return true;
+        }
+        return false;
+    }
+
+    private long gcCount()
+    {
+        long total = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    private long gcMillis()
+    {
+        long total = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    // --key=value style args
+    private static Map<String, String> parseArgs(String[] args)
+    {
+        Map<String, String> opts = new HashMap<>();
+        for(String arg : args) {
+            if(!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            if(eq < 0) opts.put(arg.substring(2), "true");
+            else opts.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return opts;
+    }
+
+    private static void printTable(List<Result> results)
+    {
+        System.out.printf("%n%-34s %-10s %7s %16s %12s %14s %6s %8s%n",
+                "Benchmark", "Size", "Density", "ops/s", "error", "alloc B/op", "GCs", "GC ms");
+        for(Result r : results) {
+            System.out.printf("%-34s %-10s %7.2f %16.1f %12.1f %14.1f %6d %8d%n",
+                    r.bench(), r.size(), r.density(), r.opsPerSec(), r.error(), r.bytesPerOp(), r.gcCount(), r.gcMillis());
+        }
+    }
+
+    private static void writeCsv(List<Result> results, String path) throws IOException
+    {
+        try(PrintWriter out = new PrintWriter(new FileWriter(path))) {
+            out.println("benchmark,size,density,ops_per_sec,error,alloc_bytes_per_op,gc_count,gc_ms");
+            for(Result r : results) {
+                out.printf("%s,%s,%.3f,%.3f,%.3f,%.1f,%d,%d%n",
+                        r.bench(), r.size(), r.density(), r.opsPerSec(), r.error(), r.bytesPerOp(), r.gcCount(), r.gcMillis());
+            }
+        }
+    }
+}
@@ -0,0 +1,285 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/*
+ * Checks that a candidate engine behaves like the reference one when it can't be bit-for-bit
+ * identical (it uses the rng differently, so DivergenceFinder would flag it at step 1).
+ * Both run the same worlds over many seeds, in parallel worker processes (HeadlessWorker),
+ * and their outcomes are compared as distributions:
+ *   - per species: final count, mean count over the run, and extinction step (KS tests),
+ *     plus how often the two mean trajectories' 95% bands overlap
+ *   - infections: peak infected, infected-steps over the run (KS), and band overlap
+ * KS tests share alpha (Bonferroni), so more tests don't mean more false failures.
+ * The candidate is given as tuning settings for now (the tree has one engine); a new engine
+ * just needs a setting that switches it on.
+ *
+ * Usage: java EquivalenceHarness [--size=90x60] [--steps=400] [--seeds=32] [--first-seed=1]
+ *                                [--candidate-first-seed=N] [--workers=N] [--alpha=0.05]
+ *                                [--band-overlap=0.95] [--report=equivalence.txt] [key=value ...]
+ * key=value settings apply to the candidate only. Exits with 1 if anything failed.
+ * The candidate's seeds follow on from the reference's unless --candidate-first-seed says
+ * otherwise: the KS tests assume two independent samples, and the same seeds on both sides
+ * aren't (with no settings they'd be identical runs, not just similar ones).
+ */
+public class EquivalenceHarness
+{
+    // One test and how it came out
+    public record Check(String name, String detail, boolean passed) {}
+
+    private final int depth, width, steps, workers;
+
+    public EquivalenceHarness(int depth, int width, int steps, int workers)
+    {
+        this.depth = depth;
+        this.width = width;
+        this.steps = steps;
+        this.workers = workers;
+    }
+
+    // Runs both engines over their seeds (all at once, spread over the workers)
+    public List<List<RunHistory>> runBoth(long[] referenceSeeds, long[] candidateSeeds, List<String> candidateSettings)
+            throws IOException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<List<RunHistory>>> reference = submit(pool, referenceSeeds, List.of());
+            List<Future<List<RunHistory>>> candidate = submit(pool, candidateSeeds, candidateSettings);
+            return List.of(collect(reference), collect(candidate));
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Compares the two sets of runs; alpha is shared by all the KS tests
+    public List<Check> compare(List<RunHistory> reference, List<RunHistory> candidate, double alpha, double bandOverlap)
+    {
+        SpeciesType[] types = SpeciesType.values();
+        Map<String, double[][]> samples = new LinkedHashMap<>();
+        for(SpeciesType type : types) {
+            samples.put(type + " final count", new double[][] {
+                    perRun(reference, r -> r.finalCount(type)), perRun(candidate, r -> r.finalCount(type)) });
+            samples.put(type + " mean count", new double[][] {
+                    perRun(reference, r -> r.meanCount(type)), perRun(candidate, r -> r.meanCount(type)) });
+            samples.put(type + " extinction step", new double[][] {
+                    perRun(reference, r -> r.extinctionStep(type)), perRun(candidate, r -> r.extinctionStep(type)) });
+        }
+        samples.put("peak infected", new double[][] {
+                perRun(reference, RunHistory::peakInfected), perRun(candidate, RunHistory::peakInfected) });
+        samples.put("infected-steps", new double[][] {
+                perRun(reference, RunHistory::infectedSteps), perRun(candidate, RunHistory::infectedSteps) });
+
+        List<Check> checks = new ArrayList<>();
+        double perTest = alpha / samples.size();
+        for(Map.Entry<String, double[][]> e : samples.entrySet()) {
+            double[] a = e.getValue()[0], b = e.getValue()[1];
+            double d = ksStatistic(a, b);
+            double p = ksPValue(d, a.length, b.length);
+            String detail = String.format("D=%.3f p=%.4f  means %.1f vs %.1f", d, p, mean(a), mean(b));
+            if(e.getKey().endsWith("extinction step")) {
+                detail += String.format("  (extinct in %d vs %d runs)", countBelow(a, steps + 1), countBelow(b, steps + 1));
+            }
+            checks.add(new Check("KS " + e.getKey(), detail, p >= perTest));
+        }
+
+        for(SpeciesType type : types) {
+            checks.add(bandCheck(type + " trajectory", reference, candidate, r -> r.trajectory(type), bandOverlap));
+        }
+        checks.add(bandCheck("infection curve", reference, candidate, RunHistory::infected, bandOverlap));
+        return checks;
+    }
+
+    // Plain-text report of the checks (pass/fail on the last line)
+    public static String report(List<Check> checks, String heading)
+    {
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        out.println(heading);
+        int failed = 0;
+        for(Check c : checks) {
+            out.printf("%-4s %-36s %s%n", c.passed() ? "ok" : "FAIL", c.name(), c.detail());
+            if(!c.passed()) failed++;
+        }
+        out.println((failed == 0) ? "PASS: candidate is statistically equivalent"
+                                  : "FAIL: " + failed + " of " + checks.size() + " checks failed");
+        out.flush();
+        return text.toString();
+    }
+
+    // Two-sample Kolmogorov-Smirnov statistic: biggest gap between the empirical CDFs
+    public static double ksStatistic(double[] a, double[] b)
+    {
+        double[] x = a.clone(), y = b.clone();
+        Arrays.sort(x);
+        Arrays.sort(y);
+        int i = 0, j = 0;
+        double d = 0;
+        while(i < x.length && j < y.length) {
+            double v = Math.min(x[i], y[j]);
+            // step past ties on both sides before comparing
+            while(i < x.length && x[i] == v) i++;
+            while(j < y.length && y[j] == v) j++;
+            d = Math.max(d, Math.abs((double) i / x.length - (double) j / y.length));
+        }
+        return d;
+    }
+
+    // Asymptotic p-value for a KS statistic (Stephens' small-sample correction)
+    public static double ksPValue(double d, int n, int m)
+    {
+        double ne = (double) n * m / (n + m);
+        double lambda = (Math.sqrt(ne) + 0.12 + 0.11 / Math.sqrt(ne)) * d;
+        if(lambda < 0.2) return 1.0;
+
+        double sum = 0;
+        for(int k = 1; k <= 100; k++) {
+            double term = Math.exp(-2.0 * k * k * lambda * lambda);
+            sum += (k % 2 == 1) ? term : -term;
+            if(term < 1e-12) break;
+        }
+        return Math.max(0, Math.min(1, 2 * sum));
+    }
+
+    // Fraction of steps where the 95% confidence bands of the two mean curves overlap
+    private Check bandCheck(String name, List<RunHistory> reference, List<RunHistory> candidate,
+                            Function<RunHistory, int[]> curve, double needed)
+    {
+        int overlapping = 0;
+        for(int t = 0; t <= steps; t++) {
+            double[] a = new double[reference.size()], b = new double[candidate.size()];
+            for(int i = 0; i < a.length; i++) a[i] = curve.apply(reference.get(i))[t];
+            for(int i = 0; i < b.length; i++) b[i] = curve.apply(candidate.get(i))[t];
+            double ma = mean(a), mb = mean(b);
+            double ha = 1.96 * standardError(a), hb = 1.96 * standardError(b);
+            if(ma - ha <= mb + hb && mb - hb <= ma + ha) overlapping++;
+        }
+        double fraction = (double) overlapping / (steps + 1);
+        return new Check("bands " + name, String.format("%.1f%% of steps overlap (need %.1f%%)", fraction * 100, needed * 100),
+                fraction >= needed);
+    }
+
+    private List<Future<List<RunHistory>>> submit(ExecutorService pool, long[] seeds, List<String> settings)
+    {
+        // a handful of seeds per process, so JVM start-up doesn't dominate
+        int perProcess = Math.max(1, (int) Math.ceil(seeds.length / (double) (workers * 2)));
+        List<Future<List<RunHistory>>> futures = new ArrayList<>();
+        for(int from = 0; from < seeds.length; from += perProcess) {
+            long[] chunk = Arrays.copyOfRange(seeds, from, Math.min(seeds.length, from + perProcess));
+            futures.add(pool.submit(() -> runWorker(chunk, settings)));
+        }
+        return futures;
+    }
+
+    private static List<RunHistory> collect(List<Future<List<RunHistory>>> futures) throws IOException
+    {
+        List<RunHistory> runs = new ArrayList<>();
+        try {
+            for(Future<List<RunHistory>> f : futures) runs.addAll(f.get());
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for workers", e);
+        }
+        catch(ExecutionException e) {
+            if(e.getCause() instanceof UncheckedIOException u) throw u.getCause();
+            throw new IOException("Worker failed", e.getCause());
+        }
+        return runs;
+    }
+
+    private List<RunHistory> runWorker(long[] seeds, List<String> settings)
+    {
+        try {
+            return HeadlessWorker.run(depth, width, steps, seeds, settings);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static double[] perRun(List<RunHistory> runs, ToDoubleFunction<RunHistory> value)
+    {
+        return runs.stream().mapToDouble(value).toArray();
+    }
+
+    private static double mean(double[] values)
+    {
+        return Arrays.stream(values).average().orElse(0);
+    }
+
+    private static double standardError(double[] values)
+    {
+        if(values.length < 2) return 0;
+        double m = mean(values), ss = 0;
+        for(double v : values) ss += (v - m) * (v - m);
+        return Math.sqrt(ss / (values.length - 1) / values.length);
+    }
+
+    private static int countBelow(double[] values, double limit)
+    {
+        int n = 0;
+        for(double v : values) if(v < limit) n++;
+        return n;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        Map<String, String> opts = new LinkedHashMap<>();
+        List<String> settings = new ArrayList<>();
+        for(String arg : args) {
+            if(!arg.startsWith("--")) {
+                settings.add(arg);
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if(eq < 0) opts.put(arg.substring(2), "true");
+            else opts.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        String[] size = opts.getOrDefault("size", "90x60").toLowerCase().split("x");
+        int width = Integer.parseInt(size[0]);
+        int depth = Integer.parseInt(size[1]);
+        int steps = Integer.parseInt(opts.getOrDefault("steps", "400"));
+        int seeds = Integer.parseInt(opts.getOrDefault("seeds", "32"));
+        long firstSeed = Long.parseLong(opts.getOrDefault("first-seed", "1"));
+        long candidateFirstSeed = Long.parseLong(opts.getOrDefault("candidate-first-seed", String.valueOf(firstSeed + seeds)));
+        int workers = Integer.parseInt(opts.getOrDefault("workers", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        double alpha = Double.parseDouble(opts.getOrDefault("alpha", "0.05"));
+        double bandOverlap = Double.parseDouble(opts.getOrDefault("band-overlap", "0.95"));
+
+        long[] referenceSeeds = new long[seeds], candidateSeeds = new long[seeds];
+        for(int i = 0; i < seeds; i++) {
+            referenceSeeds[i] = firstSeed + i;
+            candidateSeeds[i] = candidateFirstSeed + i;
+        }
+
+        EquivalenceHarness harness = new EquivalenceHarness(depth, width, steps, workers);
+        long start = System.nanoTime();
+        List<List<RunHistory>> runs = harness.runBoth(referenceSeeds, candidateSeeds, settings);
+        List<Check> checks = harness.compare(runs.get(0), runs.get(1), alpha, bandOverlap);
+
+        String heading = String.format("%dx%d, %d steps, %d seeds per engine, candidate %s (%.1f s)",
+                width, depth, steps, seeds, settings.isEmpty() ? "= reference" : String.join(" ", settings),
+                (System.nanoTime() - start) / 1e9);
+        String text = report(checks, heading);
+        System.out.print(text);
+        if(opts.containsKey("report")) Files.writeString(Paths.get(opts.get("report")), text);
+
+        if(checks.stream().anyMatch(c -> !c.passed())) System.exit(1);
+    }
+}
@@ -3,18 +3,27 @@ import java.util.*;
 /*
  * Represents the simulation grid.
  * Stores dinos by Location + also has vegetation (0..100) per tile.
- * Simulator builds a new Field each step, so there's also copyVegetationFrom.
+ * Simulator builds a new Field each step, so there's also copyVegetationFrom (the grid
+ * is copy-on-write, see VegetationGrid, so that only copies what the next step changes).
+ * After a step the new field can also say which cells look different from the old one
+ * (markChangesFrom), so the view only has to redraw those.
  */
 public class Field
 {
     private static final Random rand = Randomizer.getRandom();
 
+    // vegetation is drawn in steps of this size, smaller changes don't count as dirty
+    public static final int VEG_BUCKET_SIZE = 5;
+
     private final int depth, width;
 
     private final Map<Location, Dinosaur> field = new HashMap<>();
     private final List<Dinosaur> dinosaurs = new ArrayList<>();
 
-    private final int[][] vegetation;
+    private final VegetationGrid vegetation;
+
+    // cells that changed since the previous step (null = treat everything as changed)
+    private BitSet dirtyCells;
 
     // Makes a field with random vegetation to start
     public Field(int depth, int width)
@@ -22,10 +31,18 @@ public class Field
         this.depth = depth;
         this.width = width;
 
-        vegetation = new int[depth][width];
+        vegetation = new VegetationGrid(depth, width);
         randomizeVegetation();
     }
 
+    // Makes an empty field on top of existing vegetation (no randomising, e.g. loading a checkpoint)
+    public Field(VegetationGrid vegetation)
+    {
+        this.depth = vegetation.getDepth();
+        this.width = vegetation.getWidth();
+        this.vegetation = vegetation;
+    }
+
     // Places a dino (and keeps the list in sync)
     public void placeDinosaur(Dinosaur anDinosaur, Location location)
     {
@@ -118,29 +135,7 @@ public class Field
     // Console stats (quick sanity check)
     public void fieldStats()
     {
-        int numAllosaurs = 0, numIguanadons = 0;
-        int numCarnotaurus = 0, numDilophosaurus = 0;
-        int numDiabloceratops = 0, numAnkylosaurus = 0;
-
-        for(Dinosaur d : field.values()) {
-            if(d == null || !d.isAlive()) continue;
-
-            if(d instanceof Allosaurus) numAllosaurs++;
-            else if(d instanceof Iguanadon) numIguanadons++;
-            else if(d instanceof Carnotaurus) numCarnotaurus++;
-            else if(d instanceof Dilophosaurus) numDilophosaurus++;
-            else if(d instanceof Diabloceratops) numDiabloceratops++;
-            else if(d instanceof Ankylosaurus) numAnkylosaurus++;
-        }
-
-        System.out.println(
-            "Iguanadons: " + numIguanadons +
-            " Diabloceratops: " + numDiabloceratops +
-            " Ankylosaurus: " + numAnkylosaurus +
-            " | Allosaurs: " + numAllosaurs +
-            " Carnotaurus: " + numCarnotaurus +
-            " Dilophosaurus: " + numDilophosaurus
-        );
+        System.out.println(StepStats.of(0, this).toConsoleLine());
     }
 
     // Clears all dinos and resets veg
@@ -149,6 +144,69 @@ public class Field
         field.clear();
         dinosaurs.clear();
         randomizeVegetation();
+        dirtyCells = null;
+    }
+
+    // Works out which cells look different compared to the previous step's field:
+    // occupant moved/died/was born, infection toggled, or vegetation changed bucket
+    public void markChangesFrom(Field previous)
+    {
+        // previous field is finished with, so reuse its bitset instead of allocating one per step
+        BitSet dirty = (previous.dirtyCells != null) ? previous.dirtyCells : new BitSet(depth * width);
+        previous.dirtyCells = null;
+        dirty.clear();
+
+        for(Map.Entry<Location, Dinosaur> entry : previous.field.entrySet()) {
+            if(field.get(entry.getKey()) != entry.getValue()) {
+                dirty.set(indexOf(entry.getKey()));
+            }
+        }
+
+        for(Map.Entry<Location, Dinosaur> entry : field.entrySet()) {
+            boolean toggled = entry.getValue().takeInfectionChange();
+            if(toggled || previous.field.get(entry.getKey()) != entry.getValue()) {
+                dirty.set(indexOf(entry.getKey()));
+            }
+        }
+
+        // chunks still shared with the previous field can't have changed
+        for(int k = 0; k < vegetation.getChunkCount(); k++) {
+            if(vegetation.sharesChunk(previous.vegetation, k)) continue;
+
+            byte[] before = previous.vegetation.readableChunk(k);
+            byte[] after = vegetation.readableChunk(k);
+            int first = k * VegetationGrid.CHUNK_ROWS * width;
+            for(int i = 0; i < after.length; i++) {
+                if(vegetationBucket(before[i] & 0xFF) != vegetationBucket(after[i] & 0xFF)) {
+                    dirty.set(first + i);
+                }
+            }
+        }
+
+        dirtyCells = dirty;
+    }
+
+    // Everything needs redrawing (e.g. day/night flip changes every colour)
+    public void markAllDirty()
+    {
+        dirtyCells = null;
+    }
+
+    // Cells changed by the last step as row * width + col, or null if everything should be redrawn
+    public BitSet getDirtyCells()
+    {
+        return dirtyCells;
+    }
+
+    // Which colour band a vegetation amount falls in
+    public static int vegetationBucket(int veg)
+    {
+        return veg / VEG_BUCKET_SIZE;
+    }
+
+    private int indexOf(Location location)
+    {
+        return location.row() * width + location.col();
     }
 
     // Checks if sim should keep going (needs at least 1 herb + 1 carn)
@@ -189,7 +247,31 @@ public class Field
     // Gets vegetation 0..100 at a tile
     public int getVegetationAt(Location location)
     {
-        return vegetation[location.row()][location.col()];
+        return vegetation.get(location.row(), location.col());
+    }
+
+    // Copies one row of vegetation into dest (bulk access for checkpoints)
+    public void getVegetationRow(int row, int[] dest)
+    {
+        vegetation.getRow(row, dest);
+    }
+
+    // Overwrites one row of vegetation from src
+    public void setVegetationRow(int row, int[] src)
+    {
+        vegetation.setRow(row, src);
+    }
+
+    // Read-only view of cell -> occupant (can include dinos that died after being placed)
+    public Map<Location, Dinosaur> getOccupants()
+    {
+        return Collections.unmodifiableMap(field);
+    }
+
+    // Average vegetation over the whole field
+    public double getMeanVegetation()
+    {
+        return vegetation.total() / (double) (depth * width);
     }
 
     // Takes vegetation from a tile, returns how much we actually managed to eat
@@ -198,10 +280,10 @@ public class Field
         int r = loc.row();
         int c = loc.col();
 
-        int available = vegetation[r][c];
+        int available = vegetation.get(r, c);
         int taken = Math.min(available, Math.max(0, amount));
 
-        vegetation[r][c] = available - taken;
+        if(taken > 0) vegetation.set(r, c, available - taken);
         return taken;
     }
 
@@ -222,34 +304,41 @@ public class Field
         if(mult >= 1.4) grow = baseGrow + 1;
         if(mult <= 0.60) grow = 0;
 
-        for(int r = 0; r < depth; r++) {
-            for(int c = 0; c < width; c++) {
+        // chunk by chunk is still row by row, so the rng gets used in the same order
+        for(int k = 0; k < vegetation.getChunkCount(); k++) {
+            byte[] cells = vegetation.writableChunk(k);
+            for(int i = 0; i < cells.length; i++) {
+                int v = cells[i] & 0xFF;
 
                 // heatwave pushes high veg down towards cap
-                if(weather == WeatherState.HEATWAVE && vegetation[r][c] > cap) {
-                    vegetation[r][c] = Math.max(cap, vegetation[r][c] - 1);
+                if(weather == WeatherState.HEATWAVE && v > cap) {
+                    v = Math.max(cap, v - 1);
                 }
 
                 if(rand.nextDouble() < pScaled) {
-                    int v = vegetation[r][c] + grow;
+                    v = v + grow;
                     if(v > cap) v = cap;
-                    vegetation[r][c] = v;
                 }
 
                 // tiny recovery even in heatwaves (otherwise it can go dead forever)
-                if(weather == WeatherState.HEATWAVE && vegetation[r][c] < cap && rand.nextDouble() < 0.05) {
-                    vegetation[r][c] = Math.min(cap, vegetation[r][c] + 1);
+                if(weather == WeatherState.HEATWAVE && v < cap && rand.nextDouble() < 0.05) {
+                    v = Math.min(cap, v + 1);
                 }
+                cells[i] = (byte) v;
             }
         }
     }
 
-    // Copies vegetation grid from old field into new one
+    // Copies vegetation grid from old field into new one (shared until either side writes)
     public void copyVegetationFrom(Field other)
     {
-        for(int r = 0; r < depth; r++) {
-            System.arraycopy(other.vegetation[r], 0, this.vegetation[r], 0, width);
-        }
+        vegetation.shareFrom(other.vegetation);
+    }
+
+    // The vegetation grid itself (checkpoints/forks share it rather than copying)
+    public VegetationGrid getVegetation()
+    {
+        return vegetation;
     }
 
     // Random start veg (so herbivores don't instantly die)
@@ -261,7 +350,7 @@ public class Field
 
         for(int r = 0; r < depth; r++) {
             for(int c = 0; c < width; c++) {
-                vegetation[r][c] = min + rand.nextInt(range);
+                vegetation.set(r, c, min + rand.nextInt(range));
             }
         }
 
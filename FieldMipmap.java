@@ -0,0 +1,245 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/*
+ * Zoomed-out summary of the field, used by the view when cells get smaller than a pixel.
+ * Level L groups 2^L x 2^L cells into one block and keeps per-species counts and the
+ * vegetation total, so a block can be drawn as "dominant species over mean vegetation".
+ * Only levels from BASE_LEVEL up are stored (finer than that the view just samples cells).
+ * It can be filled in one pass (clear/addCell/buildUpperLevels) or patched from a field's
+ * dirty cells (refresh), which only recomputes the blocks above those cells.
+ */
+public class FieldMipmap
+{
+    public static final int BASE_LEVEL = 2;
+
+    private static final int SPECIES = SpeciesType.values().length;
+
+    private final int depth, width;
+    private final int topLevel;
+
+    // all indexed [level][block] (species counts are [level][block * SPECIES + type])
+    private final int[] blockRows, blockCols;
+    private final int[][] speciesCounts;
+    private final int[][] occupied;
+    // long: a full-field sum of up to 100 a cell passes int at about 21 million cells
+    private final long[][] vegSum;
+    private final int[][] cellCount;
+
+    // scratch sets for refresh, one per level (kept so refresh doesn't allocate)
+    private final BitSet[] dirtyBlocks;
+
+    // Sets up every level for a field of this size
+    public FieldMipmap(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+
+        int top = BASE_LEVEL;
+        while((1 << top) < Math.max(depth, width)) top++;
+        topLevel = top;
+
+        blockRows = new int[top + 1];
+        blockCols = new int[top + 1];
+        speciesCounts = new int[top + 1][];
+        occupied = new int[top + 1][];
+        vegSum = new long[top + 1][];
+        cellCount = new int[top + 1][];
+        dirtyBlocks = new BitSet[top + 1];
+
+        for(int level = BASE_LEVEL; level <= top; level++) {
+            int size = 1 << level;
+            int rows = (depth + size - 1) / size;
+            int cols = (width + size - 1) / size;
+            blockRows[level] = rows;
+            blockCols[level] = cols;
+
+            speciesCounts[level] = new int[rows * cols * SPECIES];
+            occupied[level] = new int[rows * cols];
+            vegSum[level] = new long[rows * cols];
+            cellCount[level] = new int[rows * cols];
+            dirtyBlocks[level] = new BitSet(rows * cols);
+
+            // edge blocks can hang off the field so they cover fewer real cells
+            for(int br = 0; br < rows; br++) {
+                int h = Math.min(size, depth - br * size);
+                for(int bc = 0; bc < cols; bc++) {
+                    int w = Math.min(size, width - bc * size);
+                    cellCount[level][br * cols + bc] = h * w;
+                }
+            }
+        }
+    }
+
+    // Zeros the base level before a full refill with addCell
+    public void clear()
+    {
+        Arrays.fill(speciesCounts[BASE_LEVEL], 0);
+        Arrays.fill(occupied[BASE_LEVEL], 0);
+        Arrays.fill(vegSum[BASE_LEVEL], 0);
+    }
+
+    // Adds one cell into its base block (type is a SpeciesType ordinal, or -1 for empty)
+    public void addCell(int row, int col, int type, int veg)
+    {
+        int block = (row >> BASE_LEVEL) * blockCols[BASE_LEVEL] + (col >> BASE_LEVEL);
+
+        vegSum[BASE_LEVEL][block] += Math.max(0, Math.min(100, veg));
+        if(type >= 0) {
+            speciesCounts[BASE_LEVEL][block * SPECIES + type]++;
+            occupied[BASE_LEVEL][block]++;
+        }
+    }
+
+    // Rebuilds every level above the base from its four children
+    public void buildUpperLevels()
+    {
+        for(int level = BASE_LEVEL + 1; level <= topLevel; level++) {
+            for(int br = 0; br < blockRows[level]; br++) {
+                for(int bc = 0; bc < blockCols[level]; bc++) {
+                    combineChildren(level, br, bc);
+                }
+            }
+        }
+    }
+
+    // Recomputes only the blocks that contain one of the dirty cells (row * width + col)
+    public void refresh(Field field, BitSet dirtyCells)
+    {
+        BitSet base = dirtyBlocks[BASE_LEVEL];
+        base.clear();
+        for(int i = dirtyCells.nextSetBit(0); i >= 0; i = dirtyCells.nextSetBit(i + 1)) {
+            int row = i / width;
+            int col = i % width;
+            base.set((row >> BASE_LEVEL) * blockCols[BASE_LEVEL] + (col >> BASE_LEVEL));
+        }
+
+        for(int b = base.nextSetBit(0); b >= 0; b = base.nextSetBit(b + 1)) {
+            recountBaseBlock(field, b / blockCols[BASE_LEVEL], b % blockCols[BASE_LEVEL]);
+        }
+
+        for(int level = BASE_LEVEL + 1; level <= topLevel; level++) {
+            BitSet below = dirtyBlocks[level - 1];
+            BitSet here = dirtyBlocks[level];
+            here.clear();
+
+            for(int b = below.nextSetBit(0); b >= 0; b = below.nextSetBit(b + 1)) {
+                int br = (b / blockCols[level - 1]) >> 1;
+                int bc = (b % blockCols[level - 1]) >> 1;
+                here.set(br * blockCols[level] + bc);
+            }
+
+            for(int b = here.nextSetBit(0); b >= 0; b = here.nextSetBit(b + 1)) {
+                combineChildren(level, b / blockCols[level], b % blockCols[level]);
+            }
+        }
+    }
+
+    // Recounts one base block straight from the field
+    private void recountBaseBlock(Field field, int br, int bc)
+    {
+        int block = br * blockCols[BASE_LEVEL] + bc;
+        int size = 1 << BASE_LEVEL;
+
+        Arrays.fill(speciesCounts[BASE_LEVEL], block * SPECIES, (block + 1) * SPECIES, 0);
+        occupied[BASE_LEVEL][block] = 0;
+        vegSum[BASE_LEVEL][block] = 0;
+
+        int rowEnd = Math.min(depth, (br + 1) * size);
+        int colEnd = Math.min(width, (bc + 1) * size);
+        for(int row = br * size; row < rowEnd; row++) {
+            for(int col = bc * size; col < colEnd; col++) {
+                Location loc = new Location(row, col);
+                Dinosaur d = field.getDinosaurAt(loc);
+                addCell(row, col, (d != null) ? d.getSpeciesType().ordinal() : -1, field.getVegetationAt(loc));
+            }
+        }
+    }
+
+    // Sums the (up to) four child blocks of one block
+    private void combineChildren(int level, int br, int bc)
+    {
+        int child = level - 1;
+        int block = br * blockCols[level] + bc;
+
+        int occ = 0;
+        long veg = 0;
+        int base = block * SPECIES;
+        Arrays.fill(speciesCounts[level], base, base + SPECIES, 0);
+
+        for(int dr = 0; dr < 2; dr++) {
+            int cr = br * 2 + dr;
+            if(cr >= blockRows[child]) continue;
+
+            for(int dc = 0; dc < 2; dc++) {
+                int cc = bc * 2 + dc;
+                if(cc >= blockCols[child]) continue;
+
+                int cb = cr * blockCols[child] + cc;
+                occ += occupied[child][cb];
+                veg += vegSum[child][cb];
+                for(int t = 0; t < SPECIES; t++) {
+                    speciesCounts[level][base + t] += speciesCounts[child][cb * SPECIES + t];
+                }
+            }
+        }
+
+        occupied[level][block] = occ;
+        vegSum[level][block] = veg;
+    }
+
+    public int getBaseLevel()
+    {
+        return BASE_LEVEL;
+    }
+
+    // Coarsest level (one block covers the whole field)
+    public int getTopLevel()
+    {
+        return topLevel;
+    }
+
+    // Most common species in a block (SpeciesType ordinal), -1 if the block is empty
+    public int getDominantSpecies(int level, int br, int bc)
+    {
+        int base = (br * blockCols[level] + bc) * SPECIES;
+        int best = -1, bestCount = 0;
+        for(int t = 0; t < SPECIES; t++) {
+            int n = speciesCounts[level][base + t];
+            if(n > bestCount) {
+                bestCount = n;
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    // How many cells in the block have a dinosaur
+    public int getOccupied(int level, int br, int bc)
+    {
+        return occupied[level][br * blockCols[level] + bc];
+    }
+
+    // How many real cells the block covers
+    public int getCellCount(int level, int br, int bc)
+    {
+        return cellCount[level][br * blockCols[level] + bc];
+    }
+
+    // Mean vegetation (0..100) over the block
+    public int getMeanVegetation(int level, int br, int bc)
+    {
+        int block = br * blockCols[level] + bc;
+        return (int)(vegSum[level][block] / cellCount[level][block]);
+    }
+
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+}
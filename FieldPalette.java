@@ -0,0 +1,168 @@
+import java.awt.Color;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Colours used to draw the field (shared by the window and the offscreen exporter).
+ * Dino colour = species colour + sex brightness + infection tint, vegetation goes
+ * brown -> green and is darker at night. Everything per-cell is handed out as packed RGB
+ * from small caches because it gets called for every cell.
+ */
+public class FieldPalette
+{
+    public static final Color GRID_BORDER_DAY = Color.lightGray;
+    public static final Color NIGHT_GRID_BORDER = new Color(40, 40, 40);
+
+    private static final Color INFECTION_TINT = new Color(160, 60, 200);
+    private static final float INFECTION_BLEND = 0.45f;
+
+    private final Map<Class<?>, Color> colors = new LinkedHashMap<>();
+
+    // [male, female, male infected, female infected] per dinosaur class
+    private final Map<Class<?>, int[]> dinoColors = new HashMap<>();
+    private final int[] typeColors = new int[SpeciesType.values().length];
+    private final int[] vegColorsDay = new int[101];
+    private final int[] vegColorsNight = new int[101];
+
+    // Default colours (I just picked ones that look different)
+    public FieldPalette()
+    {
+        setColor(Iguanadon.class, Color.orange);
+        setColor(Allosaurus.class, Color.blue);
+        setColor(Carnotaurus.class, Color.red);
+        setColor(Dilophosaurus.class, Color.cyan);
+        setColor(Diabloceratops.class, Color.gray);
+        setColor(Ankylosaurus.class, Color.pink);
+
+        // vegetation is shown in bands (same bands the field uses for its dirty check)
+        for(int v = 0; v <= 100; v++) {
+            int band = Field.vegetationBucket(v) * Field.VEG_BUCKET_SIZE;
+            vegColorsDay[v] = getVegetationColor(band, false).getRGB();
+            vegColorsNight[v] = getVegetationColor(band, true).getRGB();
+        }
+    }
+
+    // Sets base colour for a species
+    public void setColor(Class<?> dinosaurClass, Color color)
+    {
+        colors.put(dinosaurClass, color);
+        dinoColors.clear();
+    }
+
+    // Gets base colour (fallback to grey if missing)
+    public Color getColor(Class<?> dinosaurClass)
+    {
+        Color col = colors.get(dinosaurClass);
+        if(col == null) return Color.gray;
+        return col;
+    }
+
+    // Base colour by species (for charts, where there's no dino to ask)
+    public Color getColor(SpeciesType type)
+    {
+        switch(type) {
+            case ALLOSAURUS: return getColor(Allosaurus.class);
+            case CARNOTAURUS: return getColor(Carnotaurus.class);
+            case DILOPHOSAURUS: return getColor(Dilophosaurus.class);
+            case IGUANADON: return getColor(Iguanadon.class);
+            case DIABLOCERATOPS: return getColor(Diabloceratops.class);
+            case ANKYLOSAURUS: return getColor(Ankylosaurus.class);
+            default: return Color.gray;
+        }
+    }
+
+    // Final colour for a dino (cached per class)
+    public int getDinosaurRGB(Dinosaur dino)
+    {
+        int[] cached = dinoColors.get(dino.getClass());
+        if(cached == null) {
+            Color base = getColor(dino.getClass());
+            Color male = adjustBrightness(base, 0.80f);
+            Color female = adjustBrightness(base, 1.30f);
+
+            cached = new int[] {
+                male.getRGB(), female.getRGB(),
+                blend(male.getRGB(), INFECTION_TINT.getRGB(), INFECTION_BLEND),
+                blend(female.getRGB(), INFECTION_TINT.getRGB(), INFECTION_BLEND)
+            };
+            dinoColors.put(dino.getClass(), cached);
+            typeColors[dino.getSpeciesType().ordinal()] = base.getRGB();
+        }
+
+        int index = (dino.isFemale() ? 1 : 0) + (dino.isInfected() ? 2 : 0);
+        return cached[index];
+    }
+
+    // Vegetation colour for a tile (banded, from the lookup table)
+    public int getVegetationRGB(int veg, boolean night)
+    {
+        int v = Math.max(0, Math.min(100, veg));
+        return night ? vegColorsNight[v] : vegColorsDay[v];
+    }
+
+    // Colour of one cell of a field (dino if there is one, otherwise vegetation)
+    public int getCellRGB(Field field, Location loc, boolean night)
+    {
+        Dinosaur d = field.getDinosaurAt(loc);
+        if(d != null) return getDinosaurRGB(d);
+        return getVegetationRGB(field.getVegetationAt(loc), night);
+    }
+
+    // Zoomed-out block: mean vegetation with the dominant species blended in by how full it is
+    public int getBlockRGB(FieldMipmap mipmap, int level, int br, int bc, boolean night)
+    {
+        int color = getVegetationRGB(mipmap.getMeanVegetation(level, br, bc), night);
+
+        int type = mipmap.getDominantSpecies(level, br, bc);
+        if(type >= 0 && typeColors[type] != 0) {
+            float share = mipmap.getOccupied(level, br, bc) / (float) mipmap.getCellCount(level, br, bc);
+            color = blend(color, typeColors[type], share);
+        }
+        return color;
+    }
+
+    // Gap colour between cells
+    public int getBorderRGB(boolean night)
+    {
+        return (night ? NIGHT_GRID_BORDER : GRID_BORDER_DAY).getRGB();
+    }
+
+    // Turns veg amount (0..100) into a colour (night is darker)
+    public Color getVegetationColor(int veg, boolean night)
+    {
+        float t = Math.max(0f, Math.min(1f, veg / 100f));
+
+        float hue = 0.10f + (0.33f - 0.10f) * t;
+        float sat = 0.10f + 0.75f * t;
+        float bri = 0.10f + 0.80f * t;
+
+        if(night) bri *= 0.60f;
+
+        return Color.getHSBColor(hue, sat, clamp01(bri));
+    }
+
+    // Brightness helper (HSB makes it easy)
+    public static Color adjustBrightness(Color color, float factor)
+    {
+        float[] hsb = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), null);
+        float newB = clamp01(hsb[2] * factor);
+        return Color.getHSBColor(hsb[0], hsb[1], newB);
+    }
+
+    // Basic linear blend on packed RGB
+    public static int blend(int a, int b, float t)
+    {
+        t = clamp01(t);
+        int r = (int)(((a >> 16) & 0xff) * (1 - t) + ((b >> 16) & 0xff) * t);
+        int g = (int)(((a >> 8) & 0xff) * (1 - t) + ((b >> 8) & 0xff) * t);
+        int bl = (int)((a & 0xff) * (1 - t) + (b & 0xff) * t);
+        return 0xff000000 | (r << 16) | (g << 8) | bl;
+    }
+
+    // clamp 0..1
+    private static float clamp01(float v)
+    {
+        return Math.max(0f, Math.min(1f, v));
+    }
+}
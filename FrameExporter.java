@@ -0,0 +1,252 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+/*
+ * Renders frames offscreen (no window needed, works with java.awt.headless) and writes
+ * them out as numbered PNGs or as one animated GIF.
+ * Drawing happens on the sim thread because it has to read the field before the next step,
+ * but encoding runs on background threads. Frames come from a fixed pool of images, so if
+ * the encoders fall behind the sim waits for a free image instead of filling up memory.
+ *
+ * Command line: java FrameExporter depth width steps everyNth outDir [png|gif] [cellSize]
+ */
+public class FrameExporter implements StepListener, AutoCloseable
+{
+    public enum Format { PNG, GIF }
+
+    private static final int GIF_FRAME_DELAY_CS = 8;
+
+    private final File outputDir;
+    private final Format format;
+    private final int everyNth;
+    private final int cellSize;
+    private final int imageWidth, imageHeight;
+
+    private final FieldPalette palette = new FieldPalette();
+    private final ThreadPoolExecutor encoders;
+    private final BlockingQueue<BufferedImage> freeImages;
+    private final AtomicInteger framesWritten = new AtomicInteger();
+
+    // animated GIF output (only the single GIF encoder thread touches these)
+    private ImageWriter gifWriter;
+    private ImageOutputStream gifOut;
+    private boolean firstGifFrame = true;
+
+    private volatile IOException failure;
+    private boolean closed;
+
+    // Sets up the output folder, encoder threads and the image pool
+    public FrameExporter(File outputDir, Format format, int depth, int width,
+                         int everyNth, int cellSize, int encoderThreads, int queueSize) throws IOException
+    {
+        this.outputDir = outputDir;
+        this.format = format;
+        this.everyNth = Math.max(1, everyNth);
+        this.cellSize = Math.max(1, cellSize);
+        this.imageWidth = width * this.cellSize;
+        this.imageHeight = depth * this.cellSize;
+
+        if(!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Could not create " + outputDir);
+        }
+
+        // GIF frames have to go out in order, so only one encoder there
+        int threads = (format == Format.GIF) ? 1 : Math.max(1, encoderThreads);
+        int queue = Math.max(1, queueSize);
+
+        encoders = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queue), r -> {
+                    Thread t = new Thread(r, "frame-encoder");
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        // one image per queued or in-flight frame, so execute() can never be rejected
+        freeImages = new ArrayBlockingQueue<>(queue + threads);
+        for(int i = 0; i < queue + threads; i++) {
+            freeImages.add(new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB));
+        }
+
+        if(format == Format.GIF) {
+            gifWriter = ImageIO.getImageWritersByFormatName("gif").next();
+            gifOut = ImageIO.createImageOutputStream(new File(outputDir, "run.gif"));
+            gifWriter.setOutput(gifOut);
+            gifWriter.prepareWriteSequence(null);
+        }
+    }
+
+    // Renders every Nth step and hands it to the encoders
+    public void stepCompleted(int step, Field field)
+    {
+        if(step % everyNth != 0 || failure != null) return;
+
+        BufferedImage image;
+        try {
+            image = freeImages.take();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        render(field, image, TimeManager.isNight());
+
+        encoders.execute(() -> {
+            try {
+                encode(step, image);
+                framesWritten.incrementAndGet();
+            }
+            catch(IOException e) {
+                failure = e;
+            }
+            finally {
+                freeImages.add(image);
+            }
+        });
+    }
+
+    // Draws the field into the image (cellSize pixels per cell, gaps like the window when big enough)
+    private void render(Field field, BufferedImage image, boolean night)
+    {
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int border = palette.getBorderRGB(night);
+        boolean gridLines = cellSize >= 3;
+
+        for(int row = 0; row < field.getDepth(); row++) {
+            for(int col = 0; col < field.getWidth(); col++) {
+                int color = palette.getCellRGB(field, new Location(row, col), night);
+
+                for(int dy = 0; dy < cellSize; dy++) {
+                    int offset = (row * cellSize + dy) * imageWidth + col * cellSize;
+                    boolean edgeRow = gridLines && dy == cellSize - 1;
+
+                    for(int dx = 0; dx < cellSize; dx++) {
+                        boolean edge = edgeRow || (gridLines && dx == cellSize - 1);
+                        pixels[offset + dx] = edge ? border : color;
+                    }
+                }
+            }
+        }
+    }
+
+    // Writes one frame (runs on an encoder thread)
+    private void encode(int step, BufferedImage image) throws IOException
+    {
+        if(format == Format.PNG) {
+            ImageIO.write(image, "png", new File(outputDir, String.format("frame_%06d.png", step)));
+            return;
+        }
+
+        ImageWriteParam param = gifWriter.getDefaultWriteParam();
+        IIOMetadata metadata = gifWriter.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), param);
+        addGifFrameInfo(metadata);
+        gifWriter.writeToSequence(new IIOImage(image, null, metadata), param);
+    }
+
+    // Frame delay, plus the "loop forever" extension on the first frame
+    private void addGifFrameInfo(IIOMetadata metadata) throws IOException
+    {
+        String formatName = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(formatName);
+
+        IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+        control.setAttribute("disposalMethod", "none");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", Integer.toString(GIF_FRAME_DELAY_CS));
+        control.setAttribute("transparentColorIndex", "0");
+        root.appendChild(control);
+
+        if(firstGifFrame) {
+            IIOMetadataNode extensions = new IIOMetadataNode("ApplicationExtensions");
+            IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+            loop.setAttribute("applicationID", "NETSCAPE");
+            loop.setAttribute("authenticationCode", "2.0");
+            loop.setUserObject(new byte[] {1, 0, 0});
+            extensions.appendChild(loop);
+            root.appendChild(extensions);
+            firstGifFrame = false;
+        }
+
+        metadata.setFromTree(formatName, root);
+    }
+
+    // How many frames have been fully written so far
+    public int getFramesWritten()
+    {
+        return framesWritten.get();
+    }
+
+    // Waits for the encoders to drain and finishes the GIF (if any)
+    public void close() throws IOException
+    {
+        if(closed) return;
+        closed = true;
+
+        encoders.shutdown();
+        try {
+            encoders.awaitTermination(1, TimeUnit.HOURS);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if(gifWriter != null) {
+            gifWriter.endWriteSequence();
+            gifOut.close();
+            gifWriter.dispose();
+        }
+
+        if(failure != null) throw failure;
+    }
+
+    // Headless export run (no display needed)
+    public static void main(String[] args) throws IOException
+    {
+        System.setProperty("java.awt.headless", "true");
+
+        if(args.length < 5) {
+            System.out.println("Usage: FrameExporter depth width steps everyNth outDir [png|gif] [cellSize]");
+            return;
+        }
+
+        int depth = Integer.parseInt(args[0]);
+        int width = Integer.parseInt(args[1]);
+        int steps = Integer.parseInt(args[2]);
+        int everyNth = Integer.parseInt(args[3]);
+        File dir = new File(args[4]);
+        Format format = (args.length > 5) ? Format.valueOf(args[5].toUpperCase()) : Format.PNG;
+        int cellSize = (args.length > 6) ? Integer.parseInt(args[6]) : 4;
+
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        Simulator sim = new Simulator(depth, width, true);
+
+        long start = System.nanoTime();
+        FrameExporter exporter = new FrameExporter(dir, format, depth, width, everyNth, cellSize, threads, threads * 2);
+        try(exporter) {
+            exporter.stepCompleted(sim.getStep(), sim.getField());
+            sim.addStepListener(exporter);
+            sim.simulate(steps);
+            sim.removeStepListener(exporter);
+        }
+
+        // closing waited for the encoders, so every frame is on disk by now
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Exported %d frames to %s in %.1fs%n", exporter.getFramesWritten(), dir, secs);
+    }
+}
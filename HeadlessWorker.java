@@ -0,0 +1,215 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/*
+ * Runs seeded headless worlds and prints their populations, one line per step:
+ *   seed step count(per SpeciesType, in ordinal order) infected
+ * and "seed done REASON" after each world (a StopPolicy.Reason).
+ * Meant to be started as a separate process (HeadlessWorker.run does that): the sim keeps its
+ * rng, tuning and weather in statics, so one JVM can only run one world at a time.
+ *
+ * Usage: java HeadlessWorker depth width steps seed[,seed...] [--stop=rules] [--from=file] [key=value ...]
+ * key=value are tuning settings (keys as in Tuning.snapshot), applied before each world is made.
+ * Every world runs the full number of steps, even after one side has died out, unless --stop
+ * gives StopPolicy rules (e.g. --stop=viable,mateless,steady) for ending it sooner.
+ * --from starts every world from a WorldCheckpoint instead of a fresh one (depth and width are
+ * then ignored): the settings go on top of the checkpoint's own tuning, and the seed reseeds the
+ * rng, so each seed is a different future of the same world.
+ */
+public class HeadlessWorker
+{
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 4) {
+            System.err.println("Usage: java HeadlessWorker depth width steps seed[,seed...] [--stop=rules] [--from=file] [key=value ...]");
+            System.exit(2);
+        }
+        System.setProperty("java.awt.headless", "true");
+        int depth = Integer.parseInt(args[0]);
+        int width = Integer.parseInt(args[1]);
+        int steps = Integer.parseInt(args[2]);
+        List<String> settings = new ArrayList<>();
+        StopPolicy policy = new StopPolicy("");
+        Path from = null;
+        for(int i = 4; i < args.length; i++) {
+            if(args[i].startsWith("--stop=")) policy = new StopPolicy(args[i].substring("--stop=".length()));
+            else if(args[i].startsWith("--from=")) from = Paths.get(args[i].substring("--from=".length()));
+            else settings.add(args[i]);
+        }
+
+        // results go to the real stdout, anything the sim prints goes nowhere
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16));
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        for(String seedText : args[3].split(",")) {
+            long seed = Long.parseLong(seedText.trim());
+            Simulator sim;
+            if(from != null) {
+                int[] size = WorldCheckpoint.readSize(from);
+                sim = new Simulator(size[0], size[1], true);
+                // the checkpoint brings its own tuning and rng, so ours go on after
+                WorldCheckpoint.load(sim, from);
+                applySettings(settings);
+                Randomizer.reset(seed);
+            }
+            else {
+                applySettings(settings);
+                Randomizer.reset(seed);
+                sim = new Simulator(depth, width, true);
+            }
+            sim.setStatsSink(null);
+            StopPolicy world = policy.fresh();
+            print(out, seed, sim);
+            StopPolicy.Reason reason = world.check(sim.getField());
+            for(int n = 0; n < steps && reason == null; n++) {
+                sim.simulateOneStep();
+                print(out, seed, sim);
+                reason = world.check(sim.getField());
+            }
+            // flushed per world, so whoever's reading can give up on the rest early
+            out.println(seed + " done " + ((reason != null) ? reason : StopPolicy.Reason.COMPLETED));
+            out.flush();
+        }
+    }
+
+    /*
+     * Runs the seeds in a new worker process (same java and classpath as this one) and reads
+     * back one RunHistory per seed. Blocks until the process is done.
+     */
+    public static List<RunHistory> run(int depth, int width, int steps, long[] seeds, List<String> settings)
+            throws IOException
+    {
+        return run(depth, width, steps, seeds, settings, "", r -> true);
+    }
+
+    /*
+     * Same, ending each world early by the StopPolicy rules in stopRules ("" for never).
+     * keepGoing sees each world as it finishes; returning false kills the worker and returns
+     * the worlds done so far.
+     */
+    public static List<RunHistory> run(int depth, int width, int steps, long[] seeds, List<String> settings,
+                                       String stopRules, Predicate<RunHistory> keepGoing) throws IOException
+    {
+        List<String> options = new ArrayList<>();
+        if(!stopRules.isEmpty()) options.add("--stop=" + stopRules);
+        return run(depth, width, steps, seeds, options, settings, p -> {}, keepGoing);
+    }
+
+    /*
+     * Same, but every world starts from the checkpoint (a different future per seed) and runs
+     * the full number of steps. started is handed the worker process as soon as it's running,
+     * so whoever no longer wants the answer can destroy() it (run then throws an IOException).
+     */
+    public static List<RunHistory> run(Path from, int steps, long[] seeds, List<String> settings,
+                                       Consumer<Process> started, Predicate<RunHistory> keepGoing) throws IOException
+    {
+        return run(0, 0, steps, seeds, List.of("--from=" + from.toAbsolutePath()), settings, started, keepGoing);
+    }
+
+    private static List<RunHistory> run(int depth, int width, int steps, long[] seeds, List<String> options,
+                                        List<String> settings, Consumer<Process> started,
+                                        Predicate<RunHistory> keepGoing) throws IOException
+    {
+        List<String> command = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", classPath(), "-Djava.awt.headless=true", "HeadlessWorker",
+                String.valueOf(depth), String.valueOf(width), String.valueOf(steps),
+                String.join(",", Arrays.stream(seeds).mapToObj(String::valueOf).toArray(String[]::new))));
+        command.addAll(options);
+        command.addAll(settings);
+
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        try {
+            started.accept(process);
+            int species = SpeciesType.values().length;
+            List<RunHistory> runs = new ArrayList<>();
+            try(BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                for(long seed : seeds) {
+                    List<int[]> counts = new ArrayList<>();
+                    List<Integer> infected = new ArrayList<>();
+                    StopPolicy.Reason reason;
+                    while(true) {
+                        String line = in.readLine();
+                        if(line == null) throw new IOException("Worker for seed " + seed + " stopped early");
+                        String[] f = line.split(" ");
+                        if(f[1].equals("done")) {
+                            reason = StopPolicy.Reason.valueOf(f[2]);
+                            break;
+                        }
+                        int[] row = new int[species];
+                        for(int s = 0; s < species; s++) row[s] = Integer.parseInt(f[2 + s]);
+                        counts.add(row);
+                        infected.add(Integer.parseInt(f[2 + species]));
+                    }
+                    RunHistory run = new RunHistory(seed, counts.toArray(new int[0][]),
+                            infected.stream().mapToInt(Integer::intValue).toArray(), reason);
+                    runs.add(run);
+                    if(!keepGoing.test(run)) return runs;
+                }
+            }
+            int exit = process.waitFor();
+            if(exit != 0) throw new IOException("Worker exited with " + exit);
+            return runs;
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for worker", e);
+        }
+        finally {
+            process.destroy();
+        }
+    }
+
+    /*
+     * Where the sim's classes are, for the worker's -cp. java.class.path alone isn't enough
+     * inside BlueJ, which loads the project classes itself, so this class's own location goes first.
+     */
+    private static String classPath()
+    {
+        String path = System.getProperty("java.class.path");
+        CodeSource source = HeadlessWorker.class.getProtectionDomain().getCodeSource();
+        if(source == null || source.getLocation() == null) return path;
+        try {
+            String here = Paths.get(source.getLocation().toURI()).toString();
+            return path.isEmpty() ? here : here + File.pathSeparator + path;
+        }
+        catch(URISyntaxException | IllegalArgumentException e) {
+            return path;
+        }
+    }
+
+    private static void applySettings(List<String> settings)
+    {
+        for(String setting : settings) {
+            String[] kv = setting.split("=", 2);
+            if(kv.length != 2 || !Tuning.set(kv[0], kv[1])) {
+                System.err.println("Bad tuning setting: " + setting);
+                System.exit(2);
+            }
+        }
+    }
+
+    private static void print(PrintStream out, long seed, Simulator sim)
+    {
+        StepStats stats = StepStats.of(sim.getStep(), sim.getField());
+        StringBuilder line = new StringBuilder().append(seed).append(' ').append(stats.step());
+        for(int count : stats.counts()) line.append(' ').append(count);
+        out.println(line.append(' ').append(stats.infected()));
+    }
+}
@@ -14,12 +14,14 @@ public abstract class Herbivore extends Dinosaur
         super(location, maxEnergy);
     }
 
+    protected Herbivore(Location location, int maxEnergy, boolean female)
+    {
+        super(location, maxEnergy, female);
+    }
+
     // Herbivores have defence value used in carnivore kill chance
     public abstract int getDefence();
 
-    // Used to pull tuning values
-    public abstract SpeciesType getSpeciesType();
-
     // Eat vegetation at current position (uses tuning bite size etc)
     protected void eat(Field nextFieldState)
     {
@@ -74,6 +76,8 @@ public abstract class Herbivore extends Dinosaur
         if(cost > 0) consumeEnergy(cost);
 
         if(!isAlive()) return 0;
+
+        SimEvents.birth(this, births);
         return births;
     }
 
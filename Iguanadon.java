@@ -22,6 +22,12 @@ public class Iguanadon extends Herbivore
         // System.out.println("[spawn] igu age=" + age + " loc=" + location);
     }
 
+    // A saved dino being loaded (Dinosaur.create); restoreState fills in the rest
+    Iguanadon(Location location, boolean female)
+    {
+        super(location, Tuning.get(SpeciesType.IGUANADON).maxEnergy, female);
+    }
+
     // Defence used by carnivores for kill chance
     @Override
     public int getDefence()
@@ -0,0 +1,396 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * A world checkpoint laid out for memory mapping instead of parsing.
+ * Every section is fixed width and starts on a page boundary, so opening one just maps it.
+ * Starting a world from it doesn't read the vegetation at all: the new Field's VegetationGrid
+ * sits on the read-only mapping and copies a chunk onto the heap the first time something
+ * writes to it. One open checkpoint can start any number of worlds (e.g. lots of experiments
+ * from the same initial state) and they all share the same mapped pages.
+ * Dinosaurs still have to be real objects to be stepped, but they're made straight from the
+ * columns below with no decoding.
+ *
+ * Layout (big-endian, sections padded to PAGE_SIZE):
+ *   header     "DMAP", int version, int headerBytes, int depth, int width, int step,
+ *              byte timeOfDay, byte weather, int stepsUntilChange, int heatwaveCycles,
+ *              long rngState, int dinoCount, int tuningCount, (utf key, utf value) pairs
+ *   vegetation depth*width bytes, row by row
+ *   occupancy  depth*width ints, row by row: index of the dino in that cell + 1, 0 if empty
+ *   columns    one per dino field, in the field's list order: species (byte), flags (byte),
+ *              cell = row*width + col, maxEnergy, energy, age, infectionTimer, immunityTimer (ints)
+ * Each section has to fit in one mapping (2GB), so the limit is about 23000x23000.
+ *
+ * Saving writes to a temp file and renames it, so a checkpoint that's already open elsewhere
+ * is never changed underneath its mapping.
+ *
+ * Command line:
+ *   java MappedWorldCheckpoint save depth width steps file
+ *   java MappedWorldCheckpoint start file steps          map it, time the start, run more steps
+ */
+public class MappedWorldCheckpoint implements AutoCloseable
+{
+    public static final int PAGE_SIZE = 4096;
+
+    private static final int MAGIC = 0x444D4150;  // "DMAP"
+    private static final int VERSION = 1;
+
+    private static final int ALIVE = 1, FEMALE = 2, INFECTED = 4, INFECTION_CHANGED = 8;
+
+    // int columns after the two byte columns
+    private static final int CELL = 0, MAX_ENERGY = 1, ENERGY = 2, AGE = 3, INFECTION_TIMER = 4, IMMUNITY_TIMER = 5;
+    private static final int INT_COLUMNS = 6;
+
+    private final FileChannel channel;
+    private final int depth, width, step;
+    private final TimeOfDay timeOfDay;
+    private final WeatherState weather;
+    private final int stepsUntilChange, heatwaveCycles;
+    private final long rngState;
+    private final int dinoCount;
+    private final Map<String, String> tuning;
+
+    private final Layout layout;
+    private final MappedByteBuffer vegetation;
+    private final MappedByteBuffer columns;
+    private MappedByteBuffer occupancy;
+
+    /*
+     * Where each section goes, worked out from the header size, grid size and dino count.
+     */
+    private static class Layout
+    {
+        final long vegetation, occupancy, columns;
+        final long species, flags;
+        final long[] ints = new long[INT_COLUMNS];
+        final long end;
+
+        Layout(long headerBytes, int depth, int width, int dinos)
+        {
+            long cells = (long) depth * width;
+            vegetation = align(headerBytes);
+            occupancy = align(vegetation + cells);
+            columns = align(occupancy + cells * 4);
+
+            species = columns;
+            flags = align(species + dinos);
+            long at = align(flags + dinos);
+            for(int i = 0; i < INT_COLUMNS; i++) {
+                ints[i] = at;
+                at = align(at + dinos * 4L);
+            }
+            end = at;
+        }
+    }
+
+    // Opens and maps a checkpoint (close() when done; worlds already started keep working)
+    public MappedWorldCheckpoint(Path path) throws IOException
+    {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+            readFully(header, 0);
+            if(header.getInt() != MAGIC) throw new IOException("Not a mapped world checkpoint: " + path);
+            int version = header.getInt();
+            if(version != VERSION) throw new IOException("Unsupported checkpoint version " + version);
+
+            int headerBytes = header.getInt();
+            if(headerBytes > header.capacity()) {
+                header = ByteBuffer.allocate(headerBytes);
+                readFully(header, 0);
+                header.position(12);
+            }
+
+            depth = header.getInt();
+            width = header.getInt();
+            step = header.getInt();
+            timeOfDay = TimeOfDay.values()[header.get()];
+            weather = WeatherState.values()[header.get()];
+            stepsUntilChange = header.getInt();
+            heatwaveCycles = header.getInt();
+            rngState = header.getLong();
+            dinoCount = header.getInt();
+
+            int tuningCount = header.getInt();
+            tuning = new TreeMap<>();
+            for(int i = 0; i < tuningCount; i++) {
+                tuning.put(getUtf(header), getUtf(header));
+            }
+
+            layout = new Layout(headerBytes, depth, width, dinoCount);
+            if(channel.size() < layout.end) throw new IOException("Checkpoint is truncated: " + path);
+
+            vegetation = map(layout.vegetation, (long) depth * width);
+            columns = map(layout.columns, layout.end - layout.columns);
+        }
+        catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Writes the simulator's current world (call between steps)
+    public static void save(Simulator sim, Path path) throws IOException
+    {
+        Field field = sim.getField();
+        int depth = field.getDepth(), width = field.getWidth();
+        List<Dinosaur> dinos = field.getDinosaurs();
+        int n = dinos.size();
+
+        ByteBuffer header = buildHeader(sim, n);
+        Layout layout = new Layout(header.remaining(), depth, width, n);
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try(FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(header.hasRemaining()) out.write(header, header.position());
+
+            MappedByteBuffer veg = mapForWrite(out, layout.vegetation, (long) depth * width);
+            int[] row = new int[width];
+            for(int r = 0; r < depth; r++) {
+                field.getVegetationRow(r, row);
+                for(int c = 0; c < width; c++) veg.put((byte) row[c]);
+            }
+
+            // dead dinos have no location, so every dino's cell comes from the map
+            Map<Dinosaur, Location> cells = new IdentityHashMap<>();
+            for(Map.Entry<Location, Dinosaur> e : field.getOccupants().entrySet()) {
+                cells.put(e.getValue(), e.getKey());
+            }
+
+            // the file starts out as zeros, so only occupied cells need writing
+            MappedByteBuffer occupancy = mapForWrite(out, layout.occupancy, (long) depth * width * 4);
+            MappedByteBuffer cols = mapForWrite(out, layout.columns, layout.end - layout.columns);
+            for(int i = 0; i < n; i++) {
+                Dinosaur d = dinos.get(i);
+                Location loc = cells.get(d);
+                int cell = loc.row() * width + loc.col();
+                occupancy.putInt(cell * 4, i + 1);
+
+                int flags = (d.isAlive() ? ALIVE : 0) | (d.isFemale() ? FEMALE : 0)
+                        | (d.isInfected() ? INFECTED : 0) | (d.hasPendingInfectionChange() ? INFECTION_CHANGED : 0);
+                cols.put(column(layout, layout.species) + i, (byte) d.getSpeciesType().ordinal());
+                cols.put(column(layout, layout.flags) + i, (byte) flags);
+                putInt(cols, layout, CELL, i, cell);
+                putInt(cols, layout, MAX_ENERGY, i, d.getMaxEnergy());
+                putInt(cols, layout, ENERGY, i, d.getEnergy());
+                putInt(cols, layout, AGE, i, d.getAge());
+                putInt(cols, layout, INFECTION_TIMER, i, d.getInfectionTimer());
+                putInt(cols, layout, IMMUNITY_TIMER, i, d.getImmunityTimer());
+            }
+
+            veg.force();
+            occupancy.force();
+            cols.force();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /*
+     * Starts the simulator from this checkpoint: a new Field over the mapped vegetation, the
+     * dinos, and the time, weather, rng and tuning they were saved with.
+     */
+    public void start(Simulator sim)
+    {
+        Field field = new Field(VegetationGrid.over(depth, width, vegetation));
+
+        SpeciesType[] species = SpeciesType.values();
+        int speciesAt = column(layout, layout.species);
+        int flagsAt = column(layout, layout.flags);
+        for(int i = 0; i < dinoCount; i++) {
+            int flags = columns.get(flagsAt + i);
+            int cell = getInt(CELL, i);
+            Location loc = new Location(cell / width, cell % width);
+
+            Dinosaur d = Dinosaur.create(species[columns.get(speciesAt + i)], loc, (flags & FEMALE) != 0);
+            d.restoreState((flags & ALIVE) != 0, (flags & FEMALE) != 0, getInt(MAX_ENERGY, i), getInt(ENERGY, i),
+                    getInt(AGE, i), (flags & INFECTED) != 0, getInt(INFECTION_TIMER, i), getInt(IMMUNITY_TIMER, i),
+                    (flags & INFECTION_CHANGED) != 0);
+            field.placeDinosaur(d, loc);
+        }
+
+        // then the globals it was saved with (making the dinos above left the rng alone)
+        new SimGlobals(tuning, timeOfDay, weather, stepsUntilChange, heatwaveCycles, rngState).install();
+        sim.restoreWorld(field, step);
+    }
+
+    // A new headless Simulator started from this checkpoint
+    public Simulator startHeadless()
+    {
+        // headless worlds can change size, so don't populate a full-size world just to throw it away
+        Simulator sim = new Simulator(1, 1, true);
+        start(sim);
+        return sim;
+    }
+
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getStep()
+    {
+        return step;
+    }
+
+    public int getDinoCount()
+    {
+        return dinoCount;
+    }
+
+    // Vegetation straight from the file
+    public int getVegetationAt(int row, int col)
+    {
+        return vegetation.get(row * width + col) & 0xFF;
+    }
+
+    // Index (in list order) of the dino saved in that cell, or -1 (the occupancy section is mapped on first use)
+    public synchronized int getOccupantIndex(int row, int col) throws IOException
+    {
+        if(occupancy == null) occupancy = map(layout.occupancy, (long) depth * width * 4);
+        return occupancy.getInt((row * width + col) * 4) - 1;
+    }
+
+    public SpeciesType getSpecies(int index)
+    {
+        return SpeciesType.values()[columns.get(column(layout, layout.species) + index)];
+    }
+
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    private static ByteBuffer buildHeader(Simulator sim, int dinoCount)
+    {
+        Field field = sim.getField();
+        Map<String, String> tuning = Tuning.snapshot();
+
+        int size = 64;
+        for(Map.Entry<String, String> e : tuning.entrySet()) {
+            size += 4 + utfLength(e.getKey()) + utfLength(e.getValue());
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(size);
+        header.putInt(MAGIC).putInt(VERSION).putInt(0);
+        header.putInt(field.getDepth()).putInt(field.getWidth()).putInt(sim.getStep());
+        header.put((byte) TimeManager.getTimeOfDay().ordinal());
+        header.put((byte) WeatherManager.getWeather().ordinal());
+        header.putInt(WeatherManager.getStepsUntilChange());
+        header.putInt(WeatherManager.getConsecutiveHeatwaveCycles());
+        header.putLong(Randomizer.getState());
+        header.putInt(dinoCount);
+        header.putInt(tuning.size());
+        for(Map.Entry<String, String> e : tuning.entrySet()) {
+            putUtf(header, e.getKey());
+            putUtf(header, e.getValue());
+        }
+        header.putInt(8, header.position());
+        header.flip();
+        return header;
+    }
+
+    private int getInt(int column, int index)
+    {
+        return columns.getInt(column(layout, layout.ints[column]) + index * 4);
+    }
+
+    private static void putInt(ByteBuffer cols, Layout layout, int column, int index, int value)
+    {
+        cols.putInt(column(layout, layout.ints[column]) + index * 4, value);
+    }
+
+    // Offset of a column inside the mapped columns section
+    private static int column(Layout layout, long sectionOffset)
+    {
+        return (int) (sectionOffset - layout.columns);
+    }
+
+    private MappedByteBuffer map(long offset, long size) throws IOException
+    {
+        if(size > Integer.MAX_VALUE) throw new IOException("Section too large to map (" + size + " bytes)");
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+    }
+
+    private static MappedByteBuffer mapForWrite(FileChannel out, long offset, long size) throws IOException
+    {
+        if(size > Integer.MAX_VALUE) throw new IOException("World too large for a mapped checkpoint (" + size + " bytes)");
+        return out.map(FileChannel.MapMode.READ_WRITE, offset, size);
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException
+    {
+        while(buf.hasRemaining()) {
+            if(channel.read(buf, position + buf.position()) < 0) break;
+        }
+        buf.flip();
+    }
+
+    private static long align(long offset)
+    {
+        return (offset + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+    }
+
+    private static int utfLength(String s)
+    {
+        return s.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void putUtf(ByteBuffer buf, String s)
+    {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buf.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getUtf(ByteBuffer buf)
+    {
+        byte[] bytes = new byte[buf.getShort()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        System.setProperty("java.awt.headless", "true");
+
+        if(args.length >= 5 && args[0].equals("save")) {
+            Simulator sim = new Simulator(Integer.parseInt(args[1]), Integer.parseInt(args[2]), true);
+            sim.simulate(Integer.parseInt(args[3]));
+            long start = System.nanoTime();
+            save(sim, Paths.get(args[4]));
+            System.out.printf("Saved step %d (%d dinos) in %.2fs%n", sim.getStep(),
+                    sim.getField().getDinosaurs().size(), (System.nanoTime() - start) / 1e9);
+        }
+        else if(args.length >= 3 && args[0].equals("start")) {
+            long start = System.nanoTime();
+            try(MappedWorldCheckpoint checkpoint = new MappedWorldCheckpoint(Paths.get(args[1]))) {
+                Simulator sim = checkpoint.startHeadless();
+                System.out.printf("Started at step %d (%d dinos) in %.1fms%n",
+                        sim.getStep(), checkpoint.getDinoCount(), (System.nanoTime() - start) / 1e6);
+
+                sim.simulate(Integer.parseInt(args[2]));
+            }
+        }
+        else {
+            System.out.println("Usage: MappedWorldCheckpoint save depth width steps file");
+            System.out.println("       MappedWorldCheckpoint start file steps");
+        }
+    }
+}
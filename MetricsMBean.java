@@ -0,0 +1,140 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/*
+ * Shows a MetricsRegistry over JMX (read-only), so jconsole/VisualVM or a scraper can
+ * watch a long run without stopping it. Every counter and gauge is one attribute;
+ * a histogram "x" becomes x.count, x.mean, x.p50, x.p90, x.p99 and x.max.
+ * The attribute list is rebuilt on each getMBeanInfo, so metrics added later still show up.
+ */
+public class MetricsMBean implements DynamicMBean
+{
+    private static final String[] HISTOGRAM_PARTS = { "count", "mean", "p50", "p90", "p99", "max" };
+
+    private final MetricsRegistry registry;
+    private final String description;
+
+    public MetricsMBean(MetricsRegistry registry, String description)
+    {
+        this.registry = registry;
+        this.description = description;
+    }
+
+    // Registers on the platform MBean server, returns the name used (null if it failed)
+    public ObjectName register(String name)
+    {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if(server.isRegistered(objectName)) server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+            return objectName;
+        }
+        catch(JMException e) {
+            System.out.println("Could not register metrics MBean: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Removes it again (quietly, it might already be gone)
+    public static void unregister(ObjectName name)
+    {
+        if(name == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+        catch(JMException e) {
+            // already gone
+        }
+    }
+
+    public Object getAttribute(String name) throws AttributeNotFoundException
+    {
+        MetricsRegistry.LongCounter counter = registry.getCounters().get(name);
+        if(counter != null) return counter.get();
+
+        if(registry.getGauges().containsKey(name)) {
+            return registry.getGauges().get(name).getAsDouble();
+        }
+
+        int dot = name.lastIndexOf('.');
+        if(dot > 0) {
+            MetricsRegistry.Histogram h = registry.getHistograms().get(name.substring(0, dot));
+            if(h != null) {
+                switch(name.substring(dot + 1)) {
+                    case "count": return (double) h.getCount();
+                    case "mean": return h.getMean();
+                    case "p50": return (double) h.getPercentile(0.50);
+                    case "p90": return (double) h.getPercentile(0.90);
+                    case "p99": return (double) h.getPercentile(0.99);
+                    case "max": return (double) h.getMax();
+                    default: break;
+                }
+            }
+        }
+        throw new AttributeNotFoundException(name);
+    }
+
+    public AttributeList getAttributes(String[] names)
+    {
+        AttributeList list = new AttributeList();
+        for(String name : names) {
+            try {
+                list.add(new Attribute(name, getAttribute(name)));
+            }
+            catch(AttributeNotFoundException e) {
+                // JMX wants missing ones left out
+            }
+        }
+        return list;
+    }
+
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException
+    {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    public AttributeList setAttributes(AttributeList attributes)
+    {
+        return new AttributeList();
+    }
+
+    // There are no operations (getMBeanInfo lists none), so any name is an unknown one
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException
+    {
+        throw new ReflectionException(new NoSuchMethodException(actionName), "No operation " + actionName);
+    }
+
+    public MBeanInfo getMBeanInfo()
+    {
+        List<MBeanAttributeInfo> attrs = new ArrayList<>();
+        for(String name : registry.getCounters().keySet()) {
+            attrs.add(new MBeanAttributeInfo(name, "java.lang.Long", "counter", true, false, false));
+        }
+        for(String name : registry.getGauges().keySet()) {
+            attrs.add(new MBeanAttributeInfo(name, "java.lang.Double", "gauge", true, false, false));
+        }
+        for(Map.Entry<String, MetricsRegistry.Histogram> e : registry.getHistograms().entrySet()) {
+            for(String part : HISTOGRAM_PARTS) {
+                attrs.add(new MBeanAttributeInfo(e.getKey() + "." + part, "java.lang.Double",
+                        "histogram " + part, true, false, false));
+            }
+        }
+
+        return new MBeanInfo(getClass().getName(), description,
+                attrs.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+}
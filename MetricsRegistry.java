@@ -0,0 +1,150 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/*
+ * Tiny metrics registry (JDK only): counters, gauges and histograms by name.
+ * The sim thread writes, anything else (JMX, the http server) can read at the same time.
+ * Names are dotted like "population.ALLOSAURUS" and come back sorted.
+ */
+public class MetricsRegistry
+{
+    private final Map<String, LongCounter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, DoubleSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+
+    // Gets (or makes) a counter
+    public LongCounter counter(String name)
+    {
+        return counters.computeIfAbsent(name, n -> new LongCounter());
+    }
+
+    // Registers a gauge (read whenever someone asks, so keep it cheap)
+    public void gauge(String name, DoubleSupplier value)
+    {
+        gauges.put(name, value);
+    }
+
+    // Gets (or makes) a histogram
+    public Histogram histogram(String name)
+    {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    public Map<String, LongCounter> getCounters()
+    {
+        return counters;
+    }
+
+    public Map<String, DoubleSupplier> getGauges()
+    {
+        return gauges;
+    }
+
+    public Map<String, Histogram> getHistograms()
+    {
+        return histograms;
+    }
+
+    /*
+     * Counter that only goes up.
+     */
+    public static final class LongCounter
+    {
+        private final LongAdder value = new LongAdder();
+
+        public void increment()
+        {
+            value.increment();
+        }
+
+        public void add(long amount)
+        {
+            value.add(amount);
+        }
+
+        public long get()
+        {
+            return value.sum();
+        }
+    }
+
+    /*
+     * Histogram for positive longs (nanoseconds, bytes...) with HDR-style buckets:
+     * one group per power of two, split into SUB_BUCKETS linear slots, so every value is
+     * within about 1/SUB_BUCKETS of its bucket. Fixed size, recording never allocates.
+     */
+    public static final class Histogram
+    {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder total = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private volatile long max;
+
+        // Adds one value (negatives count as 0)
+        public void record(long value)
+        {
+            long v = Math.max(0, value);
+            counts.incrementAndGet(bucketOf(v));
+            total.increment();
+            sum.add(v);
+            if(v > max) max = v;
+        }
+
+        public long getCount()
+        {
+            return total.sum();
+        }
+
+        public double getMean()
+        {
+            long n = total.sum();
+            return n == 0 ? 0 : sum.sum() / (double) n;
+        }
+
+        public long getMax()
+        {
+            return max;
+        }
+
+        // Upper edge of the bucket holding the p-th percentile (p in 0..1)
+        public long getPercentile(double p)
+        {
+            long n = total.sum();
+            if(n == 0) return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(p * n));
+            long seen = 0;
+            for(int b = 0; b < BUCKETS; b++) {
+                seen += counts.get(b);
+                if(seen >= rank) return Math.min(max, bucketUpperEdge(b));
+            }
+            return max;
+        }
+
+        // Values below SUB_BUCKETS get their own slot, above that it's (exponent, top bits)
+        private static int bucketOf(long v)
+        {
+            if(v < SUB_BUCKETS) return (int) v;
+            int exponent = 63 - Long.numberOfLeadingZeros(v);
+            int shift = exponent - SUB_BITS;
+            int sub = (int)(v >>> shift) & (SUB_BUCKETS - 1);
+            return (shift + 1) * SUB_BUCKETS + sub;
+        }
+
+        private static long bucketUpperEdge(int bucket)
+        {
+            if(bucket < SUB_BUCKETS) return bucket;
+            int shift = bucket / SUB_BUCKETS - 1;
+            long sub = bucket % SUB_BUCKETS;
+            long lower = (SUB_BUCKETS + sub) << shift;
+            return lower + (1L << shift) - 1;
+        }
+    }
+}
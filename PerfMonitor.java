@@ -0,0 +1,172 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Cheap per-step timing for the simulator (shown by the perf overlay in the window).
+ * simulateOneStep calls beginStep, then mark(phase) after each chunk of work, then endStep.
+ * The last WINDOW steps are kept in ring buffers so the numbers are a sliding average.
+ * Allocation is the sim thread's allocated bytes (total and per phase), GC is collector time
+ * from the MXBeans.
+ */
+public class PerfMonitor
+{
+    public enum Phase { DISEASE, ACT, VEGETATION, RENDER }
+
+    private static final int WINDOW = 120;
+    private static final int PHASES = Phase.values().length;
+
+    // ring buffers (index = step slot)
+    private final long[][] phaseNanos = new long[PHASES][WINDOW];
+    private final long[][] phaseBytes = new long[PHASES][WINDOW];
+    private final long[] stepEndNanos = new long[WINDOW];
+    private final long[] allocatedBytes = new long[WINDOW];
+    private final long[] gcMillis = new long[WINDOW];
+    private int next;
+    private int filled;
+
+    // the step currently being timed
+    private final long[] current = new long[PHASES];
+    private final long[] currentBytes = new long[PHASES];
+    private long stepStartNanos;
+    private long lastMark;
+    private long lastMarkBytes;
+    private long allocAtStart;
+    private long gcAtStart;
+
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final List<GarbageCollectorMXBean> collectors;
+
+    public PerfMonitor()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(bean instanceof com.sun.management.ThreadMXBean sunBean && sunBean.isThreadAllocatedMemorySupported()) {
+            sunBean.setThreadAllocatedMemoryEnabled(true);
+            threadBean = sunBean;
+        }
+        else {
+            threadBean = null;
+        }
+        collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    }
+
+    // Start timing a step (call on the sim thread)
+    public void beginStep()
+    {
+        Arrays.fill(current, 0);
+        Arrays.fill(currentBytes, 0);
+        allocAtStart = allocatedSoFar();
+        lastMarkBytes = allocAtStart;
+        gcAtStart = gcTimeSoFar();
+        lastMark = System.nanoTime();
+        stepStartNanos = lastMark;
+    }
+
+    // Everything since the previous mark counts towards this phase
+    public void mark(Phase phase)
+    {
+        long now = System.nanoTime();
+        long bytes = allocatedSoFar();
+        current[phase.ordinal()] += now - lastMark;
+        currentBytes[phase.ordinal()] += bytes - lastMarkBytes;
+        lastMark = now;
+        lastMarkBytes = bytes;
+    }
+
+    // Finish the step and push it into the window
+    public synchronized void endStep()
+    {
+        for(int p = 0; p < PHASES; p++) {
+            phaseNanos[p][next] = current[p];
+            phaseBytes[p][next] = currentBytes[p];
+        }
+        stepEndNanos[next] = System.nanoTime();
+        allocatedBytes[next] = allocatedSoFar() - allocAtStart;
+        gcMillis[next] = gcTimeSoFar() - gcAtStart;
+
+        next = (next + 1) % WINDOW;
+        if(filled < WINDOW) filled++;
+    }
+
+    // Steps per second over the window (wall clock, so includes the sim delay)
+    public synchronized double getStepsPerSecond()
+    {
+        if(filled < 2) return 0;
+        int newest = (next - 1 + WINDOW) % WINDOW;
+        int oldest = (next - filled + WINDOW) % WINDOW;
+        long span = stepEndNanos[newest] - stepEndNanos[oldest];
+        return span <= 0 ? 0 : (filled - 1) * 1e9 / span;
+    }
+
+    // How long the step being timed has been going (for listeners called inside the step)
+    public long getCurrentStepNanos()
+    {
+        return System.nanoTime() - stepStartNanos;
+    }
+
+    // Nanoseconds one phase took in the most recent step
+    public synchronized long getLastPhaseNanos(Phase phase)
+    {
+        if(filled == 0) return 0;
+        return phaseNanos[phase.ordinal()][(next - 1 + WINDOW) % WINDOW];
+    }
+
+    // Average milliseconds spent in one phase per step
+    public synchronized double getMeanPhaseMillis(Phase phase)
+    {
+        return mean(phaseNanos[phase.ordinal()]) / 1e6;
+    }
+
+    // Average bytes the sim thread allocated per step (-1 if the JVM can't tell us)
+    public synchronized double getMeanAllocatedBytes()
+    {
+        if(threadBean == null) return -1;
+        return mean(allocatedBytes);
+    }
+
+    // Average bytes allocated in one phase per step (-1 if the JVM can't tell us)
+    public synchronized double getMeanPhaseAllocatedBytes(Phase phase)
+    {
+        if(threadBean == null) return -1;
+        return mean(phaseBytes[phase.ordinal()]);
+    }
+
+    // Average GC pause time per step (all collectors, all threads)
+    public synchronized double getMeanGcMillis()
+    {
+        return mean(gcMillis);
+    }
+
+    // How many steps are in the window right now
+    public synchronized int getSampleCount()
+    {
+        return filled;
+    }
+
+    private double mean(long[] values)
+    {
+        if(filled == 0) return 0;
+        long sum = 0;
+        for(int i = 0; i < filled; i++) {
+            sum += values[(next - 1 - i + WINDOW) % WINDOW];
+        }
+        return sum / (double) filled;
+    }
+
+    private long allocatedSoFar()
+    {
+        if(threadBean == null) return 0;
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private long gcTimeSoFar()
+    {
+        long total = 0;
+        for(GarbageCollectorMXBean gc : collectors) {
+            long t = gc.getCollectionTime();
+            if(t > 0) total += t;
+        }
+        return total;
+    }
+}
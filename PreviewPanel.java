@@ -0,0 +1,130 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.Path2D;
+
+/*
+ * Small chart for a PreviewService.Projection: one line per species (ensemble mean) with a
+ * faint band for the lowest..highest run, in the same colours as the field.
+ * Click a species in the key to hide/show it (the big herbivore numbers squash the rest).
+ */
+public class PreviewPanel extends JPanel
+{
+    private static final int PAD = 28;
+
+    private final FieldPalette palette = new FieldPalette();
+    private final boolean[] hidden = new boolean[SpeciesType.values().length];
+    private final JLabel status = new JLabel("Change a value to preview it");
+    private final Chart chart = new Chart();
+    private PreviewService.Projection projection;
+
+    public PreviewPanel()
+    {
+        super(new BorderLayout());
+        setBorder(BorderFactory.createTitledBorder("Preview (not applied yet)"));
+        add(chart, BorderLayout.CENTER);
+        add(buildKey(), BorderLayout.NORTH);
+        add(status, BorderLayout.SOUTH);
+    }
+
+    // Safe to call from any thread
+    public void show(PreviewService.Projection p)
+    {
+        SwingUtilities.invokeLater(() -> {
+            projection = p;
+            chart.repaint();
+        });
+    }
+
+    // Safe to call from any thread
+    public void setStatus(String text)
+    {
+        SwingUtilities.invokeLater(() -> status.setText(text));
+    }
+
+    // Species toggles
+    private JPanel buildKey()
+    {
+        JPanel key = new JPanel(new GridLayout(2, 3, 4, 0));
+        for(SpeciesType type : SpeciesType.values()) {
+            String name = type.name().charAt(0) + type.name().substring(1).toLowerCase();
+            JCheckBox box = new JCheckBox(name, true);
+            box.setForeground(palette.getColor(type).darker());
+            box.addActionListener(e -> {
+                hidden[type.ordinal()] = !box.isSelected();
+                chart.repaint();
+            });
+            key.add(box);
+        }
+        return key;
+    }
+
+    private class Chart extends JComponent
+    {
+        Chart()
+        {
+            setPreferredSize(new Dimension(360, 220));
+        }
+
+        @Override
+        protected void paintComponent(Graphics g0)
+        {
+            Graphics2D g = (Graphics2D) g0.create();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(Color.white);
+            g.fillRect(0, 0, getWidth(), getHeight());
+            PreviewService.Projection p = projection;
+            if(p == null) {
+                g.dispose();
+                return;
+            }
+
+            int max = 1;
+            for(int s = 0; s < hidden.length; s++) {
+                if(hidden[s]) continue;
+                for(int v : p.high()[s]) max = Math.max(max, v);
+            }
+            int w = getWidth() - 2 * PAD, h = getHeight() - 2 * PAD;
+            int steps = Math.max(1, p.getSteps());
+
+            g.setColor(Color.lightGray);
+            g.drawRect(PAD, PAD, w, h);
+            g.setColor(Color.darkGray);
+            g.drawString(String.valueOf(max), 2, PAD + 4);
+            g.drawString("0", 2, PAD + h + 4);
+            g.drawString(String.valueOf(p.fromStep()), PAD, PAD + h + 16);
+            String end = String.valueOf(p.fromStep() + p.getSteps());
+            g.drawString(end, PAD + w - g.getFontMetrics().stringWidth(end), PAD + h + 16);
+
+            for(SpeciesType type : SpeciesType.values()) {
+                int s = type.ordinal();
+                if(hidden[s]) continue;
+                Color c = palette.getColor(type);
+
+                // range band: along the highs, back along the lows
+                Path2D band = new Path2D.Double();
+                for(int t = 0; t <= steps; t++) {
+                    double x = PAD + (double) w * t / steps, y = PAD + h - (double) h * p.high()[s][t] / max;
+                    if(t == 0) band.moveTo(x, y);
+                    else band.lineTo(x, y);
+                }
+                for(int t = steps; t >= 0; t--) {
+                    band.lineTo(PAD + (double) w * t / steps, PAD + h - (double) h * p.low()[s][t] / max);
+                }
+                band.closePath();
+                g.setColor(new Color(c.getRed(), c.getGreen(), c.getBlue(), 50));
+                g.fill(band);
+
+                Path2D line = new Path2D.Double();
+                for(int t = 0; t <= steps; t++) {
+                    double x = PAD + (double) w * t / steps, y = PAD + h - h * p.mean()[s][t] / max;
+                    if(t == 0) line.moveTo(x, y);
+                    else line.lineTo(x, y);
+                }
+                g.setColor(c.darker());
+                g.setStroke(new BasicStroke(1.6f));
+                g.draw(line);
+            }
+            g.dispose();
+        }
+    }
+}
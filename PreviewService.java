@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/*
+ * Look-ahead for tuning edits that haven't been applied yet. request(settings) checkpoints the
+ * running world (between two of its steps), then runs a small ensemble of short headless
+ * futures from it with those settings on top, in HeadlessWorker processes on the spare cores,
+ * one process per core with the futures shared out between them (the sim keeps its state in
+ * statics, so a fork in this JVM would stall the live run).
+ * The ensemble members always use the same seeds, so two previews differ because of the
+ * tuning rather than the dice.
+ *
+ * A newer request makes the older ones stale: their worlds that haven't started are skipped,
+ * ones already running have their worker process killed, and only the latest result is
+ * handed on.
+ */
+public class PreviewService
+{
+    // Projected counts per species: mean/low/high[species][t], t = 0 being the world as it is now
+    public record Projection(int fromStep, double[][] mean, int[][] low, int[][] high, int members)
+    {
+        public int getSteps()
+        {
+            return mean[0].length - 1;
+        }
+    }
+
+    private final Simulator simulator;
+    private final int horizon, members;
+    private final Consumer<Projection> onResult;
+    private final Consumer<String> onStatus;
+
+    // one preview at a time is set up here; its worlds go to the pool
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(daemon("preview"));
+    private final ExecutorService pool;
+    private final int processCount;
+    private final AtomicLong latest = new AtomicLong();
+    // worker processes of the preview in progress (killed when it goes stale)
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+
+    // Results and status messages are handed to the callbacks from a background thread
+    public PreviewService(Simulator simulator, int horizon, int members, Consumer<Projection> onResult,
+                          Consumer<String> onStatus)
+    {
+        this.simulator = simulator;
+        this.horizon = horizon;
+        this.members = members;
+        this.onResult = onResult;
+        this.onStatus = onStatus;
+        int spare = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.processCount = Math.min(spare, members);
+        this.pool = Executors.newFixedThreadPool(processCount, daemon("preview-world"));
+    }
+
+    // Starts a preview of the given tuning settings (key=value), making any earlier one stale
+    public void request(List<String> settings)
+    {
+        long id = latest.incrementAndGet();
+        killStale();
+        coordinator.submit(() -> {
+            try {
+                // handed on only once its checkpoint is cleared up
+                Projection p = preview(id, List.copyOf(settings));
+                if(p != null && id == latest.get()) {
+                    onResult.accept(p);
+                    onStatus.accept(String.format("Projected from step %d (%d runs)", p.fromStep(), p.members()));
+                }
+            }
+            catch(IOException | UncheckedIOException e) {
+                if(id == latest.get()) onStatus.accept("Preview failed: " + e.getMessage());
+            }
+        });
+    }
+
+    public void shutdown()
+    {
+        latest.incrementAndGet();
+        killStale();
+        coordinator.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    // The projection, or null if it went stale on the way
+    private Projection preview(long id, List<String> settings) throws IOException
+    {
+        if(id != latest.get()) return null;
+        onStatus.accept("Previewing " + horizon + " steps...");
+
+        Path checkpoint = Files.createTempFile("preview", ".ckp");
+        try {
+            int fromStep = snapshot(checkpoint);
+            if(id != latest.get()) return null;
+
+            // seeds 1..members dealt out round the processes
+            List<Future<List<RunHistory>>> worlds = new ArrayList<>();
+            for(int w = 0; w < processCount; w++) {
+                long[] seeds = new long[(members - w + processCount - 1) / processCount];
+                for(int i = 0; i < seeds.length; i++) seeds[i] = w + 1 + (long) i * processCount;
+                worlds.add(pool.submit(() -> {
+                    // still wanted by the time it got a core? (stale ones are skipped here)
+                    if(id != latest.get()) return null;
+                    Process[] mine = new Process[1];
+                    try {
+                        return HeadlessWorker.run(checkpoint, horizon, seeds, settings, p -> {
+                            mine[0] = p;
+                            processes.add(p);
+                            // went stale while it was starting: killStale() has been and gone
+                            if(id != latest.get()) p.destroy();
+                        }, r -> true);
+                    }
+                    finally {
+                        if(mine[0] != null) processes.remove(mine[0]);
+                    }
+                }));
+            }
+
+            // waits for stale worlds too (they end quickly once killed), so none are still
+            // reading the checkpoint when it's deleted
+            List<RunHistory> runs = new ArrayList<>();
+            IOException failed = null;
+            for(Future<List<RunHistory>> world : worlds) {
+                try {
+                    List<RunHistory> done = await(world);
+                    if(done != null) runs.addAll(done);
+                }
+                catch(IOException e) {
+                    failed = e;
+                }
+            }
+            if(id != latest.get()) return null;
+            if(failed != null) throw failed;
+            return (runs.size() < members) ? null : project(fromStep, runs);
+        }
+        finally {
+            Files.deleteIfExists(checkpoint);
+        }
+    }
+
+    // Kills the worker processes of the preview that's just gone stale
+    private void killStale()
+    {
+        for(Process p : processes) p.destroy();
+    }
+
+    // Saves the live world between two steps; returns the step it was at
+    private int snapshot(Path checkpoint) throws IOException
+    {
+        CompletableFuture<Integer> saved = new CompletableFuture<>();
+        simulator.runBetweenSteps(() -> {
+            try {
+                WorldCheckpoint.save(simulator, checkpoint);
+                saved.complete(simulator.getStep());
+            }
+            catch(IOException e) {
+                saved.completeExceptionally(e);
+            }
+        });
+        while(true) {
+            try {
+                return saved.get(200, TimeUnit.MILLISECONDS);
+            }
+            catch(TimeoutException e) {
+                // a run that stopped on its own (one side died out) won't reach its next step
+                simulator.runBetweenSteps(() -> {});
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted saving the world", e);
+            }
+            catch(ExecutionException e) {
+                if(e.getCause() instanceof IOException io) throw io;
+                throw new IOException("Couldn't save the world", e.getCause());
+            }
+        }
+    }
+
+    // A worker's worlds, or null if it was skipped as stale
+    private static List<RunHistory> await(Future<List<RunHistory>> world) throws IOException
+    {
+        try {
+            return world.get();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch(ExecutionException e) {
+            if(e.getCause() instanceof IOException io) throw io;
+            throw new IOException("Preview world failed", e.getCause());
+        }
+    }
+
+    // Mean and range over the ensemble at every step
+    private static Projection project(int fromStep, List<RunHistory> runs)
+    {
+        int species = SpeciesType.values().length;
+        int length = runs.get(0).counts().length;
+        double[][] mean = new double[species][length];
+        int[][] low = new int[species][length], high = new int[species][length];
+        for(int s = 0; s < species; s++) {
+            for(int t = 0; t < length; t++) {
+                int min = Integer.MAX_VALUE, max = 0;
+                double total = 0;
+                for(RunHistory run : runs) {
+                    int c = run.counts()[Math.min(t, run.counts().length - 1)][s];
+                    total += c;
+                    min = Math.min(min, c);
+                    max = Math.max(max, c);
+                }
+                mean[s][t] = total / runs.size();
+                low[s][t] = min;
+                high[s][t] = max;
+            }
+        }
+        return new Projection(fromStep, mean, low, high, runs.size());
+    }
+
+    private static ThreadFactory daemon(String name)
+    {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
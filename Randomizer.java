@@ -3,13 +3,15 @@ import java.util.Random;
 /*
  * Shared random generator.
  * Fixed seed means the sim is repeatable (which was super useful for testing).
+ * The generator is a plain java.util.Random sequence, but its state can be read and put
+ * back, which checkpoints need (Random keeps its seed private).
  */
 public class Randomizer
 {
     private static final int SEED = 6969;
 
     private static final boolean useShared = true;
-    private static final Random rand = new Random(SEED);
+    private static final TrackedRandom rand = new TrackedRandom(SEED);
 
     public Randomizer()
     {
@@ -33,4 +35,69 @@ public class Randomizer
             rand.setSeed(SEED);
         }
     }
-}
\ No newline at end of file
+
+    // Reset with a different seed (benchmarks/batch runs that want their own fixed seed)
+    public static void reset(long seed)
+    {
+        if(useShared) {
+            rand.setSeed(seed);
+        }
+    }
+
+    // Current internal state of the shared generator (for checkpoints)
+    public static long getState()
+    {
+        return rand.getState();
+    }
+
+    // Puts the shared generator back to a state from getState
+    public static void setState(long state)
+    {
+        rand.setState(state);
+    }
+
+    /*
+     * Same LCG as java.util.Random (so same numbers for the same seed), with the state
+     * kept where we can see it. Everything in Random goes through next(bits).
+     */
+    private static class TrackedRandom extends Random
+    {
+        private static final long MULTIPLIER = 0x5DEECE66DL;
+        private static final long ADDEND = 0xBL;
+        private static final long MASK = (1L << 48) - 1;
+
+        // no initialiser on purpose: Random's constructor calls setSeed before it would run
+        private long state;
+
+        TrackedRandom(long seed)
+        {
+            super(seed);
+        }
+
+        @Override
+        public synchronized void setSeed(long seed)
+        {
+            super.setSeed(seed);
+            state = (seed ^ MULTIPLIER) & MASK;
+        }
+
+        @Override
+        protected int next(int bits)
+        {
+            state = (state * MULTIPLIER + ADDEND) & MASK;
+            return (int) (state >>> (48 - bits));
+        }
+
+        long getState()
+        {
+            return state;
+        }
+
+        void setState(long newState)
+        {
+            // clears Random's cached nextGaussian too
+            super.setSeed(0);
+            state = newState & MASK;
+        }
+    }
+}
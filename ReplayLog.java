@@ -0,0 +1,202 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Records a run so it can be played back exactly later (see ReplayTool), e.g. to look at a
+ * collapse at step 48,000 without re-running the 48,000 steps before it.
+ *
+ * The sim is deterministic given its world, globals and tuning, so the log only needs:
+ * a checkpoint to start from, every tuning change and the step it came in at, and a
+ * checkpoint every so often so playback never has far to go.
+ *
+ *   ReplayLog log = new ReplayLog(sim, Paths.get("run.replay"), 1000);
+ *   sim.addStepListener(log);
+ *   ... run ...
+ *   log.close();
+ *
+ * Tuning changes must happen between steps to replay right (TuningWindow's Apply goes through
+ * Simulator.runBetweenSteps for that). A reset, rewind or loaded world (worldReplaced) starts
+ * a new "segment" with its own checkpoint, since the steps that follow aren't the old world's.
+ *
+ * File layout (big-endian):
+ *   header   "DRPL", int version, int depth, int width, long rngState at the start
+ *   records  byte type, int segment, int step, long payloadBytes, payload
+ *     CHECKPOINT  WorldCheckpoint bytes for the world after `step`
+ *     TUNING      int count, (utf key, utf value) pairs; in force from `step` on
+ *   footer   per checkpoint (int segment, int step, long offset), long indexOffset, int count, "DRPI"
+ * The footer is only written by close(); ReplayTool walks the records if a run died before that.
+ */
+public class ReplayLog implements StepListener, AutoCloseable
+{
+    static final int HEADER_MAGIC = 0x4452504C;  // "DRPL"
+    static final int FOOTER_MAGIC = 0x44525049;  // "DRPI"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 4 + 4 + 4 + 4 + 8;
+    static final int RECORD_HEADER_BYTES = 1 + 4 + 4 + 8;
+    static final byte CHECKPOINT = 1, TUNING = 2;
+
+    private final Simulator sim;
+    private final FileChannel channel;
+    private final int checkpointEvery;
+    private final List<long[]> index = new ArrayList<>();
+
+    private Map<String, String> tuning;
+    private int segment;
+    private int lastCheckpoint;
+    private boolean closed;
+
+    // Starts a log at the simulator's current step (call between steps); checkpoints every checkpointEvery steps
+    public ReplayLog(Simulator sim, Path path, int checkpointEvery) throws IOException
+    {
+        if(checkpointEvery <= 0) throw new IllegalArgumentException("checkpointEvery must be > 0");
+        this.sim = sim;
+        this.checkpointEvery = checkpointEvery;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        Field field = sim.getField();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(HEADER_MAGIC).putInt(VERSION).putInt(field.getDepth()).putInt(field.getWidth())
+                .putLong(Randomizer.getState());
+        writeFully(header.flip());
+
+        startSegment(sim.getStep());
+    }
+
+    // Records tuning changes made before this step, and a checkpoint if one is due
+    @Override
+    public synchronized void stepCompleted(int step, Field field)
+    {
+        if(closed) return;
+        try {
+            Map<String, String> now = Tuning.snapshot();
+            if(!now.equals(tuning)) {
+                Map<String, String> changed = new TreeMap<>();
+                for(Map.Entry<String, String> e : now.entrySet()) {
+                    if(!e.getValue().equals(tuning.get(e.getKey()))) changed.put(e.getKey(), e.getValue());
+                }
+                writeTuning(step, changed);
+                tuning = now;
+            }
+
+            if(step - lastCheckpoint >= checkpointEvery) writeCheckpoint(step);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Reset, rewind or a loaded world: carry on as a fresh segment from the new world
+    @Override
+    public synchronized void worldReplaced(int step, Field field)
+    {
+        if(closed) return;
+        try {
+            segment++;
+            startSegment(step);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Writes the index and closes the file (the log stays readable without it)
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if(closed) return;
+        closed = true;
+        try {
+            long indexOffset = channel.position();
+            ByteBuffer footer = ByteBuffer.allocate(index.size() * 16 + 16);
+            for(long[] entry : index) {
+                footer.putInt((int) entry[0]).putInt((int) entry[1]).putLong(entry[2]);
+            }
+            footer.putLong(indexOffset).putInt(index.size()).putInt(FOOTER_MAGIC);
+            writeFully(footer.flip());
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    public synchronized int getSegment()
+    {
+        return segment;
+    }
+
+    public synchronized int getCheckpointCount()
+    {
+        return index.size();
+    }
+
+    // New segment: everything the replay needs is in its first checkpoint
+    private void startSegment(int step) throws IOException
+    {
+        tuning = Tuning.snapshot();
+        writeCheckpoint(step);
+    }
+
+    private void writeCheckpoint(int step) throws IOException
+    {
+        long offset = channel.position();
+        writeRecordHeader(CHECKPOINT, step, 0);
+        WorldCheckpoint.save(sim, channel);
+
+        // now the size is known, go back and fill it in
+        long end = channel.position();
+        ByteBuffer size = ByteBuffer.allocate(8).putLong(end - offset - RECORD_HEADER_BYTES);
+        size.flip();
+        long at = offset + RECORD_HEADER_BYTES - 8;
+        while(size.hasRemaining()) {
+            at += channel.write(size, at);
+        }
+
+        index.add(new long[] { segment, step, offset });
+        lastCheckpoint = step;
+    }
+
+    private void writeTuning(int step, Map<String, String> changed) throws IOException
+    {
+        List<byte[]> parts = new ArrayList<>();
+        int bytes = 4;
+        for(Map.Entry<String, String> e : changed.entrySet()) {
+            byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] value = e.getValue().getBytes(StandardCharsets.UTF_8);
+            parts.add(key);
+            parts.add(value);
+            bytes += 2 + key.length + 2 + value.length;
+        }
+
+        writeRecordHeader(TUNING, step, bytes);
+        ByteBuffer payload = ByteBuffer.allocate(bytes);
+        payload.putInt(changed.size());
+        for(byte[] part : parts) {
+            payload.putShort((short) part.length).put(part);
+        }
+        writeFully(payload.flip());
+    }
+
+    private void writeRecordHeader(byte type, int step, long payloadBytes) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        header.put(type).putInt(segment).putInt(step).putLong(payloadBytes);
+        writeFully(header.flip());
+    }
+
+    private void writeFully(ByteBuffer buf) throws IOException
+    {
+        while(buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Plays back a ReplayLog: seeks to the last checkpoint at or before a step, then re-runs
+ * the steps after it (with the logged tuning changes coming in at the right steps), which
+ * gives exactly the world the original run had at that step.
+ *
+ *   try(ReplayTool replay = new ReplayTool(Paths.get("run.replay"))) {
+ *       Simulator at = replay.seek(48000);
+ *   }
+ *
+ * Seeking sets the statics (tuning, time, weather, rng) to the replayed run's, like loading
+ * a checkpoint does. Simulators it hands back are headless.
+ *
+ * Command line:
+ *   java ReplayTool info file                                 segments and checkpoints
+ *   java ReplayTool seek file step [segment] [saveTo.ckp]     replay to a step, maybe save it
+ */
+public class ReplayTool implements AutoCloseable
+{
+    // one checkpoint from the index
+    public record Checkpoint(int segment, int step, long offset) {}
+
+    private final FileChannel channel;
+    private final int depth, width;
+    private final List<Checkpoint> checkpoints;
+
+    public ReplayTool(Path path) throws IOException
+    {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, ReplayLog.HEADER_BYTES);
+            if(header.getInt() != ReplayLog.HEADER_MAGIC) throw new IOException("Not a replay log");
+            int version = header.getInt();
+            if(version != ReplayLog.VERSION) throw new IOException("Unsupported replay log version " + version);
+            depth = header.getInt();
+            width = header.getInt();
+
+            List<Checkpoint> found = readFooter();
+            checkpoints = Collections.unmodifiableList((found != null) ? found : scanCheckpoints());
+            if(checkpoints.isEmpty()) throw new IOException("Replay log has no checkpoints");
+        }
+        catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    // Every checkpoint in file order (segment, then step)
+    public List<Checkpoint> getCheckpoints()
+    {
+        return checkpoints;
+    }
+
+    // Replays to a step in the latest segment that has a checkpoint at or before it
+    public Simulator seek(int step) throws IOException
+    {
+        for(int i = checkpoints.size() - 1; i >= 0; i--) {
+            if(checkpoints.get(i).step() <= step) return seek(checkpoints.get(i).segment(), step);
+        }
+        throw new IllegalArgumentException("Nothing logged at or before step " + step);
+    }
+
+    // Replays to a step in one segment (each reset/rewind of the original run starts a new one)
+    public Simulator seek(int segment, int step) throws IOException
+    {
+        Checkpoint from = null;
+        for(Checkpoint c : checkpoints) {
+            if(c.segment() == segment && c.step() <= step) from = c;
+        }
+        if(from == null) throw new IllegalArgumentException("Segment " + segment + " has nothing at or before step " + step);
+
+        // tiny, since its own world gets swapped out straight away
+        Simulator sim = new Simulator(1, 1, true);
+        sim.setStatsSink(null);
+        channel.position(from.offset() + ReplayLog.RECORD_HEADER_BYTES);
+        WorldCheckpoint.load(sim, channel);
+
+        // walk the records after the checkpoint, stepping up to each tuning change
+        long offset = from.offset() + ReplayLog.RECORD_HEADER_BYTES + payloadSize(from.offset());
+        while(offset + ReplayLog.RECORD_HEADER_BYTES <= channel.size()) {
+            ByteBuffer record = read(offset, ReplayLog.RECORD_HEADER_BYTES);
+            byte type = record.get();
+            int recordSegment = record.getInt();
+            int recordStep = record.getInt();
+            long payload = record.getLong();
+            if(recordSegment != segment || recordStep > step || (type != ReplayLog.TUNING && type != ReplayLog.CHECKPOINT)) break;
+
+            if(type == ReplayLog.TUNING) {
+                // the change was in force for recordStep itself, so it goes in before that step runs
+                runTo(sim, recordStep - 1);
+                for(Map.Entry<String, String> e : readTuning(offset + ReplayLog.RECORD_HEADER_BYTES, (int) payload).entrySet()) {
+                    Tuning.set(e.getKey(), e.getValue());
+                }
+            }
+            offset += ReplayLog.RECORD_HEADER_BYTES + payload;
+        }
+
+        runTo(sim, step);
+        return sim;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    private static void runTo(Simulator sim, int step)
+    {
+        while(sim.getStep() < step) {
+            sim.simulateOneStep();
+        }
+    }
+
+    private long payloadSize(long recordOffset) throws IOException
+    {
+        return read(recordOffset + ReplayLog.RECORD_HEADER_BYTES - 8, 8).getLong();
+    }
+
+    private Map<String, String> readTuning(long offset, int bytes) throws IOException
+    {
+        ByteBuffer buf = read(offset, bytes);
+        int count = buf.getInt();
+        Map<String, String> changed = new TreeMap<>();
+        for(int i = 0; i < count; i++) {
+            changed.put(getUtf(buf), getUtf(buf));
+        }
+        return changed;
+    }
+
+    // The index from a closed log, or null if there isn't one
+    private List<Checkpoint> readFooter() throws IOException
+    {
+        long size = channel.size();
+        if(size < ReplayLog.HEADER_BYTES + 16) return null;
+        ByteBuffer tail = read(size - 16, 16);
+        long indexOffset = tail.getLong();
+        int count = tail.getInt();
+        if(tail.getInt() != ReplayLog.FOOTER_MAGIC || indexOffset + count * 16L + 16 != size) return null;
+
+        ByteBuffer entries = read(indexOffset, count * 16);
+        List<Checkpoint> found = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            found.add(new Checkpoint(entries.getInt(), entries.getInt(), entries.getLong()));
+        }
+        return found;
+    }
+
+    // No footer (the run died): walk the records, stopping at the first one that isn't all there
+    private List<Checkpoint> scanCheckpoints() throws IOException
+    {
+        List<Checkpoint> found = new ArrayList<>();
+        long size = channel.size();
+        long offset = ReplayLog.HEADER_BYTES;
+        while(offset + ReplayLog.RECORD_HEADER_BYTES <= size) {
+            ByteBuffer record = read(offset, ReplayLog.RECORD_HEADER_BYTES);
+            byte type = record.get();
+            int segment = record.getInt();
+            int step = record.getInt();
+            long payload = record.getLong();
+            long end = offset + ReplayLog.RECORD_HEADER_BYTES + payload;
+            if(end > size || (type != ReplayLog.CHECKPOINT && type != ReplayLog.TUNING)) break;
+            // a checkpoint that was cut off mid-write still has its size as 0
+            if(type == ReplayLog.CHECKPOINT && payload > 0) found.add(new Checkpoint(segment, step, offset));
+            offset = end;
+        }
+        return found;
+    }
+
+    private ByteBuffer read(long offset, int bytes) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(bytes);
+        while(buf.hasRemaining()) {
+            if(channel.read(buf, offset + buf.position()) < 0) throw new EOFException("Replay log is truncated");
+        }
+        return buf.flip();
+    }
+
+    private static String getUtf(ByteBuffer buf)
+    {
+        byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length >= 2 && args[0].equals("info")) {
+            try(ReplayTool replay = new ReplayTool(Paths.get(args[1]))) {
+                System.out.println("World " + replay.getDepth() + "x" + replay.getWidth()
+                        + ", " + replay.getCheckpoints().size() + " checkpoints");
+                int segment = -1;
+                for(Checkpoint c : replay.getCheckpoints()) {
+                    if(c.segment() != segment) {
+                        segment = c.segment();
+                        System.out.print("\nsegment " + segment + ":");
+                    }
+                    System.out.print(" " + c.step());
+                }
+                System.out.println();
+            }
+        }
+        else if(args.length >= 3 && args[0].equals("seek")) {
+            try(ReplayTool replay = new ReplayTool(Paths.get(args[1]))) {
+                int step = Integer.parseInt(args[2]);
+                long start = System.nanoTime();
+                Simulator sim = (args.length >= 4) ? replay.seek(Integer.parseInt(args[3]), step) : replay.seek(step);
+                System.out.printf("Step %d in %.1f s: %s%n", sim.getStep(), (System.nanoTime() - start) / 1e9,
+                        StepStats.of(sim.getStep(), sim.getField()).toConsoleLine());
+                if(args.length >= 5) {
+                    WorldCheckpoint.save(sim, Paths.get(args[4]));
+                    System.out.println("Saved to " + args[4]);
+                }
+            }
+        }
+        else {
+            System.out.println("Usage: java ReplayTool info file");
+            System.out.println("       java ReplayTool seek file step [segment] [saveTo.ckp]");
+        }
+    }
+}
@@ -0,0 +1,684 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Rewind history for a run: one compressed frame per step, so you can scrub back through the
+ * last few thousand steps and carry on from any of them. Every frame is a full WorldSnapshot
+ * when decoded (dinos, vegetation, tuning/time/weather/rng).
+ *
+ * Frames come in groups: a keyframe every keyframeInterval steps, then deltas against the
+ * frame before. So finding any step decodes at most keyframeInterval frames.
+ * A delta holds:
+ *   - vegetation XORed with the previous frame, as (zero run, literal run, literal bytes) tokens
+ *   - every dinosaur by a stable id: new ones in full, known ones as a bitmask of the fields
+ *     that changed plus the change itself (usually just age and energy, a few bytes)
+ *   - tuning only when it changed since the previous frame
+ *
+ * Memory is capped: once the encoded frames go over the cap, the oldest groups get written to
+ * temp files and read back when someone seeks into them. Groups older than maxSteps are
+ * thrown away. The history has to be continuous, so a step that doesn't follow the last one
+ * recorded (a reset, a loaded checkpoint) starts it again.
+ */
+public class RewindBuffer implements StepListener
+{
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 50;
+    public static final int DEFAULT_MAX_STEPS = 5000;
+    public static final long DEFAULT_MEMORY_BYTES = 64L << 20;
+
+    private static final int KEYFRAME = 1, DELTA = 2;
+
+    // per-dino change mask in a delta (NEW = not in the previous frame, sent in full)
+    private static final int FLAGS = 1, CELL = 2, MAX_ENERGY = 4, ENERGY = 8, AGE = 16,
+            INFECTION_TIMER = 32, IMMUNITY_TIMER = 64, NEW = 128;
+
+    // a literal vegetation run only ends after this many unchanged cells in a row
+    private static final int ZERO_RUN_BREAK = 3;
+
+    private final int keyframeInterval;
+    private final int maxSteps;
+    private final long memoryBytes;
+
+    private final List<Group> groups = new ArrayList<>();
+    private long bytesInMemory;
+    private int frameCount;
+
+    // what the next delta is against
+    private Frame last;
+    private Map<Dinosaur, Integer> lastIds = new IdentityHashMap<>();
+    private int nextId;
+
+    private ByteBuffer out = ByteBuffer.allocate(1 << 16);
+
+    /*
+     * A decoded frame: the snapshot plus the stable id of each dino in it.
+     */
+    private static class Frame
+    {
+        final WorldSnapshot snapshot;
+        final int[] ids;
+        int[] idSlots;
+        int idBase;
+
+        Frame(WorldSnapshot snapshot, int[] ids)
+        {
+            this.snapshot = snapshot;
+            this.ids = ids;
+        }
+
+        // Index of the dino with this id in the frame, or -1 (ids are dense-ish, so a plain array)
+        int indexOf(int id)
+        {
+            if(idSlots == null) {
+                int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+                for(int i : ids) {
+                    min = Math.min(min, i);
+                    max = Math.max(max, i);
+                }
+                idBase = (ids.length == 0) ? 0 : min;
+                idSlots = new int[(ids.length == 0) ? 0 : max - min + 1];
+                Arrays.fill(idSlots, -1);
+                for(int i = 0; i < ids.length; i++) idSlots[ids[i] - idBase] = i;
+            }
+            int slot = id - idBase;
+            return (slot >= 0 && slot < idSlots.length) ? idSlots[slot] : -1;
+        }
+    }
+
+    /*
+     * A keyframe and the deltas after it. Frames live in memory until spilled to spillFile.
+     */
+    private static class Group
+    {
+        final int firstStep;
+        List<byte[]> frames = new ArrayList<>();
+        int count;
+        long bytes;
+        Path spillFile;
+        int[] spilledLengths;
+
+        Group(int firstStep)
+        {
+            this.firstStep = firstStep;
+        }
+    }
+
+    public RewindBuffer()
+    {
+        this(DEFAULT_KEYFRAME_INTERVAL, DEFAULT_MAX_STEPS, DEFAULT_MEMORY_BYTES);
+    }
+
+    public RewindBuffer(int keyframeInterval, int maxSteps, long memoryBytes)
+    {
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        this.maxSteps = Math.max(1, maxSteps);
+        this.memoryBytes = memoryBytes;
+    }
+
+    // Records the step that just finished
+    public synchronized void stepCompleted(int step, Field field)
+    {
+        if(last != null && step != last.snapshot.getStep() + 1) clear();
+
+        WorldSnapshot snapshot = new WorldSnapshot(field, step, SimGlobals.capture());
+
+        List<Dinosaur> dinos = field.getDinosaurs();
+        int[] ids = new int[dinos.size()];
+        Map<Dinosaur, Integer> idsNow = new IdentityHashMap<>(dinos.size() * 2);
+        for(int i = 0; i < ids.length; i++) {
+            Integer id = lastIds.get(dinos.get(i));
+            ids[i] = (id != null) ? id : nextId++;
+            idsNow.put(dinos.get(i), ids[i]);
+        }
+        Frame frame = new Frame(snapshot, ids);
+
+        Group group = groups.isEmpty() ? null : groups.get(groups.size() - 1);
+        byte[] encoded;
+        if(group == null || group.count == keyframeInterval) {
+            encoded = encodeKeyframe(frame);
+            group = new Group(step);
+            groups.add(group);
+        }
+        else {
+            encoded = encodeDelta(last, frame);
+        }
+
+        group.frames.add(encoded);
+        group.count++;
+        group.bytes += encoded.length;
+        bytesInMemory += encoded.length;
+        frameCount++;
+
+        last = frame;
+        lastIds = idsNow;
+        trim();
+    }
+
+    // First step that can still be rewound to (-1 if empty)
+    public synchronized int getFirstStep()
+    {
+        return groups.isEmpty() ? -1 : groups.get(0).firstStep;
+    }
+
+    // Last recorded step (-1 if empty)
+    public synchronized int getLastStep()
+    {
+        return (last == null) ? -1 : last.snapshot.getStep();
+    }
+
+    // Encoded bytes held in memory / spilled to disk
+    public synchronized long getMemoryBytes()
+    {
+        return bytesInMemory;
+    }
+
+    public synchronized long getSpilledBytes()
+    {
+        long total = 0;
+        for(Group g : groups) if(g.spillFile != null) total += g.bytes;
+        return total;
+    }
+
+    // The world as it was at the end of a recorded step
+    public synchronized WorldSnapshot snapshotAt(int step)
+    {
+        return frameAt(step).snapshot;
+    }
+
+    /*
+     * Forgets everything after step, after the live world was put back to it.
+     * liveField must be the field made from snapshotAt(step), so its dinos can keep their ids.
+     */
+    public synchronized void truncateAfter(int step, Field liveField)
+    {
+        Frame frame = frameAt(step);
+        int g = groupIndexOf(step);
+
+        while(groups.size() > g + 1) dropGroup(groups.size() - 1);
+
+        // the group being cut comes back into memory (it's the one that'll be written to next)
+        Group group = groups.get(g);
+        List<byte[]> frames = framesOf(group);
+        if(group.spillFile == null) bytesInMemory -= group.bytes;
+        deleteSpill(group);
+        int keep = step - group.firstStep + 1;
+        group.frames = new ArrayList<>(frames.subList(0, keep));
+        frameCount -= group.count - keep;
+        group.count = keep;
+        group.bytes = 0;
+        for(byte[] f : group.frames) group.bytes += f.length;
+        bytesInMemory += group.bytes;
+
+        List<Dinosaur> dinos = liveField.getDinosaurs();
+        if(dinos.size() != frame.ids.length) throw new IllegalArgumentException("Field doesn't match step " + step);
+        lastIds = new IdentityHashMap<>();
+        for(int i = 0; i < frame.ids.length; i++) lastIds.put(dinos.get(i), frame.ids[i]);
+        last = frame;
+        trim();
+    }
+
+    // Throws the whole history away
+    public synchronized void clear()
+    {
+        while(!groups.isEmpty()) dropGroup(0);
+        bytesInMemory = 0;
+        frameCount = 0;
+        last = null;
+        lastIds = new IdentityHashMap<>();
+    }
+
+    // Drops old groups past maxSteps, then spills the oldest ones until under the memory cap
+    private void trim()
+    {
+        while(groups.size() > 1 && frameCount - groups.get(0).count >= maxSteps) {
+            dropGroup(0);
+        }
+
+        // never spill the group still being written
+        for(int g = 0; g < groups.size() - 1 && bytesInMemory > memoryBytes; g++) {
+            if(groups.get(g).spillFile == null) spill(groups.get(g));
+        }
+    }
+
+    private void dropGroup(int index)
+    {
+        Group group = groups.remove(index);
+        if(group.spillFile == null) bytesInMemory -= group.bytes;
+        frameCount -= group.count;
+        deleteSpill(group);
+    }
+
+    private void spill(Group group)
+    {
+        try {
+            Path file = Files.createTempFile("rewind", ".frames");
+            file.toFile().deleteOnExit();
+            try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                group.spilledLengths = new int[group.frames.size()];
+                for(int i = 0; i < group.frames.size(); i++) {
+                    ByteBuffer buf = ByteBuffer.wrap(group.frames.get(i));
+                    group.spilledLengths[i] = buf.remaining();
+                    while(buf.hasRemaining()) channel.write(buf);
+                }
+            }
+            group.spillFile = file;
+            group.frames = null;
+            bytesInMemory -= group.bytes;
+        }
+        catch(IOException e) {
+            // can't spill: just keep it in memory
+            System.err.println("Rewind buffer couldn't spill to disk: " + e.getMessage());
+        }
+    }
+
+    private void deleteSpill(Group group)
+    {
+        if(group.spillFile == null) return;
+        try {
+            Files.deleteIfExists(group.spillFile);
+        }
+        catch(IOException e) {
+            // temp file, deleteOnExit will have another go
+        }
+        group.spillFile = null;
+    }
+
+    // A group's encoded frames, from memory or its spill file
+    private List<byte[]> framesOf(Group group)
+    {
+        if(group.frames != null) return group.frames;
+
+        try(FileChannel channel = FileChannel.open(group.spillFile, StandardOpenOption.READ)) {
+            List<byte[]> frames = new ArrayList<>(group.spilledLengths.length);
+            for(int length : group.spilledLengths) {
+                ByteBuffer buf = ByteBuffer.allocate(length);
+                while(buf.hasRemaining()) {
+                    if(channel.read(buf) < 0) throw new IOException("Spill file is short: " + group.spillFile);
+                }
+                frames.add(buf.array());
+            }
+            return frames;
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int groupIndexOf(int step)
+    {
+        int lo = 0, hi = groups.size() - 1;
+        while(lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            Group g = groups.get(mid);
+            if(step < g.firstStep) hi = mid - 1;
+            else if(step >= g.firstStep + g.count) lo = mid + 1;
+            else return mid;
+        }
+        throw new IllegalArgumentException("Step " + step + " is not in the rewind buffer ("
+                + getFirstStep() + ".." + getLastStep() + ")");
+    }
+
+    // Keyframe, then deltas up to the step (at most keyframeInterval decodes)
+    private Frame frameAt(int step)
+    {
+        if(last != null && step == last.snapshot.getStep()) return last;
+
+        Group group = groups.get(groupIndexOf(step));
+        List<byte[]> frames = framesOf(group);
+
+        Frame frame = decodeKeyframe(frames.get(0));
+        for(int i = 1; i <= step - group.firstStep; i++) {
+            frame = decodeDelta(frame, frames.get(i));
+        }
+        return frame;
+    }
+
+    private byte[] encodeKeyframe(Frame frame)
+    {
+        WorldSnapshot s = frame.snapshot;
+        int n = s.getDinoCount();
+        out.clear();
+        ensure(64);
+        out.put((byte) KEYFRAME);
+        putHeader(s);
+        putTuning(s.getGlobals().tuning());
+
+        int cells = s.getDepth() * s.getWidth();
+        ensure(cells + 10);
+        for(int k = 0; k < s.vegetation.getChunkCount(); k++) {
+            out.put(s.vegetation.readableChunk(k));
+        }
+
+        ensure(5 + n * 40);
+        putVarint(n);
+        int previousId = 0;
+        for(int i = 0; i < n; i++) {
+            putVarint(TimeSeriesRecorder.zigzag(frame.ids[i] - previousId));
+            previousId = frame.ids[i];
+            putFullDino(s, i);
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    private byte[] encodeDelta(Frame before, Frame frame)
+    {
+        WorldSnapshot prev = before.snapshot, s = frame.snapshot;
+        int n = s.getDinoCount();
+        out.clear();
+        ensure(64);
+        out.put((byte) DELTA);
+        putHeader(s);
+
+        Map<String, String> tuning = s.getGlobals().tuning();
+        boolean tuningChanged = !tuning.equals(prev.getGlobals().tuning());
+        out.put((byte) (tuningChanged ? 1 : 0));
+        if(tuningChanged) putTuning(tuning);
+
+        putVegetationXor(prev.vegetation, s.vegetation);
+
+        ensure(5 + n * 40);
+        putVarint(n);
+        int previousId = 0;
+        for(int i = 0; i < n; i++) {
+            int id = frame.ids[i];
+            putVarint(TimeSeriesRecorder.zigzag(id - previousId));
+            previousId = id;
+
+            int j = before.indexOf(id);
+            if(j < 0) {
+                out.put((byte) NEW);
+                putFullDino(s, i);
+                continue;
+            }
+
+            int mask = 0;
+            if(s.flags[i] != prev.flags[j]) mask |= FLAGS;
+            if(s.cell[i] != prev.cell[j]) mask |= CELL;
+            if(s.maxEnergy[i] != prev.maxEnergy[j]) mask |= MAX_ENERGY;
+            if(s.energy[i] != prev.energy[j]) mask |= ENERGY;
+            if(s.age[i] != prev.age[j]) mask |= AGE;
+            if(s.infectionTimer[i] != prev.infectionTimer[j]) mask |= INFECTION_TIMER;
+            if(s.immunityTimer[i] != prev.immunityTimer[j]) mask |= IMMUNITY_TIMER;
+
+            out.put((byte) mask);
+            if((mask & FLAGS) != 0) out.put(s.flags[i]);
+            if((mask & CELL) != 0) putVarint(TimeSeriesRecorder.zigzag(s.cell[i] - prev.cell[j]));
+            if((mask & MAX_ENERGY) != 0) putVarint(TimeSeriesRecorder.zigzag(s.maxEnergy[i] - prev.maxEnergy[j]));
+            if((mask & ENERGY) != 0) putVarint(TimeSeriesRecorder.zigzag(s.energy[i] - prev.energy[j]));
+            if((mask & AGE) != 0) putVarint(TimeSeriesRecorder.zigzag(s.age[i] - prev.age[j]));
+            if((mask & INFECTION_TIMER) != 0) putVarint(TimeSeriesRecorder.zigzag(s.infectionTimer[i] - prev.infectionTimer[j]));
+            if((mask & IMMUNITY_TIMER) != 0) putVarint(TimeSeriesRecorder.zigzag(s.immunityTimer[i] - prev.immunityTimer[j]));
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    private Frame decodeKeyframe(byte[] bytes)
+    {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        in.get();
+        Header header = Header.read(in);
+        int depth = header.depth(), width = header.width();
+        SimGlobals globals = header.globals(getTuning(in));
+
+        byte[] veg = new byte[depth * width];
+        in.get(veg);
+
+        int n = (int) TimeSeriesRecorder.getVarint(in);
+        Columns c = new Columns(n);
+        int id = 0;
+        for(int i = 0; i < n; i++) {
+            id += (int) TimeSeriesRecorder.unzigzag(TimeSeriesRecorder.getVarint(in));
+            c.ids[i] = id;
+            getFullDino(in, c, i);
+        }
+        return c.toFrame(header.step(), globals, VegetationGrid.over(depth, width, ByteBuffer.wrap(veg)));
+    }
+
+    private Frame decodeDelta(Frame before, byte[] bytes)
+    {
+        WorldSnapshot prev = before.snapshot;
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        in.get();
+        Header header = Header.read(in);
+        int depth = header.depth(), width = header.width();
+        Map<String, String> tuning = (in.get() != 0) ? getTuning(in) : prev.getGlobals().tuning();
+        SimGlobals globals = header.globals(tuning);
+
+        byte[] veg = new byte[depth * width];
+        int at = 0;
+        for(int k = 0; k < prev.vegetation.getChunkCount(); k++) {
+            byte[] chunk = prev.vegetation.readableChunk(k);
+            System.arraycopy(chunk, 0, veg, at, chunk.length);
+            at += chunk.length;
+        }
+        for(int i = 0; i < veg.length; ) {
+            i += (int) TimeSeriesRecorder.getVarint(in);
+            int literal = (int) TimeSeriesRecorder.getVarint(in);
+            for(int end = i + literal; i < end; i++) veg[i] ^= in.get();
+        }
+
+        int n = (int) TimeSeriesRecorder.getVarint(in);
+        Columns c = new Columns(n);
+        int id = 0;
+        for(int i = 0; i < n; i++) {
+            id += (int) TimeSeriesRecorder.unzigzag(TimeSeriesRecorder.getVarint(in));
+            c.ids[i] = id;
+
+            int mask = in.get() & 0xFF;
+            if(mask == NEW) {
+                getFullDino(in, c, i);
+                continue;
+            }
+
+            int j = before.indexOf(id);
+            c.species[i] = prev.species[j];
+            c.flags[i] = ((mask & FLAGS) != 0) ? in.get() : prev.flags[j];
+            c.cell[i] = prev.cell[j] + (((mask & CELL) != 0) ? getDelta(in) : 0);
+            c.maxEnergy[i] = prev.maxEnergy[j] + (((mask & MAX_ENERGY) != 0) ? getDelta(in) : 0);
+            c.energy[i] = prev.energy[j] + (((mask & ENERGY) != 0) ? getDelta(in) : 0);
+            c.age[i] = prev.age[j] + (((mask & AGE) != 0) ? getDelta(in) : 0);
+            c.infectionTimer[i] = prev.infectionTimer[j] + (((mask & INFECTION_TIMER) != 0) ? getDelta(in) : 0);
+            c.immunityTimer[i] = prev.immunityTimer[j] + (((mask & IMMUNITY_TIMER) != 0) ? getDelta(in) : 0);
+        }
+        return c.toFrame(header.step(), globals, VegetationGrid.over(depth, width, ByteBuffer.wrap(veg)));
+    }
+
+    /*
+     * Column arrays being filled in by a decoder.
+     */
+    private static class Columns
+    {
+        final int[] ids;
+        final byte[] species, flags;
+        final int[] cell, maxEnergy, energy, age, infectionTimer, immunityTimer;
+
+        Columns(int n)
+        {
+            ids = new int[n];
+            species = new byte[n];
+            flags = new byte[n];
+            cell = new int[n];
+            maxEnergy = new int[n];
+            energy = new int[n];
+            age = new int[n];
+            infectionTimer = new int[n];
+            immunityTimer = new int[n];
+        }
+
+        Frame toFrame(int step, SimGlobals globals, VegetationGrid vegetation)
+        {
+            return new Frame(new WorldSnapshot(step, globals, vegetation, species, flags, cell,
+                    maxEnergy, energy, age, infectionTimer, immunityTimer), ids);
+        }
+    }
+
+    // XOR against the previous frame; chunks still shared with it are known to be all zero
+    private void putVegetationXor(VegetationGrid before, VegetationGrid after)
+    {
+        int zeros = 0;
+        for(int k = 0; k < after.getChunkCount(); k++) {
+            byte[] b = before.readableChunk(k);
+            if(after.sharesChunk(before, k)) {
+                zeros += b.length;
+                continue;
+            }
+            byte[] a = after.readableChunk(k);
+            ensure(a.length * 2 + 20);
+
+            int i = 0;
+            while(i < a.length) {
+                if(a[i] == b[i]) {
+                    zeros++;
+                    i++;
+                    continue;
+                }
+
+                // literal run: keeps going over short unchanged stretches (a token costs more than they do)
+                int start = i, same = 0, end = i;
+                while(i < a.length && same < ZERO_RUN_BREAK) {
+                    if(a[i] == b[i]) same++;
+                    else {
+                        same = 0;
+                        end = i + 1;
+                    }
+                    i++;
+                }
+                i = end;
+
+                putVarint(zeros);
+                putVarint(end - start);
+                for(int p = start; p < end; p++) out.put((byte) (a[p] ^ b[p]));
+                zeros = 0;
+            }
+        }
+        ensure(20);
+        if(zeros > 0) {
+            putVarint(zeros);
+            putVarint(0);
+        }
+    }
+
+    private void putHeader(WorldSnapshot s)
+    {
+        SimGlobals g = s.getGlobals();
+        putVarint(s.getStep());
+        putVarint(s.getDepth());
+        putVarint(s.getWidth());
+        out.put((byte) g.timeOfDay().ordinal());
+        out.put((byte) g.weather().ordinal());
+        putVarint(g.stepsUntilChange());
+        putVarint(g.heatwaveCycles());
+        out.putLong(g.rngState());
+    }
+
+    /*
+     * Everything putHeader wrote; tuning comes separately.
+     */
+    private record Header(int step, int depth, int width, TimeOfDay timeOfDay, WeatherState weather,
+                          int stepsUntilChange, int heatwaveCycles, long rngState)
+    {
+        static Header read(ByteBuffer in)
+        {
+            return new Header((int) TimeSeriesRecorder.getVarint(in), (int) TimeSeriesRecorder.getVarint(in),
+                    (int) TimeSeriesRecorder.getVarint(in), TimeOfDay.values()[in.get()], WeatherState.values()[in.get()],
+                    (int) TimeSeriesRecorder.getVarint(in), (int) TimeSeriesRecorder.getVarint(in), in.getLong());
+        }
+
+        SimGlobals globals(Map<String, String> tuning)
+        {
+            return new SimGlobals(tuning, timeOfDay, weather, stepsUntilChange, heatwaveCycles, rngState);
+        }
+    }
+
+    private void putTuning(Map<String, String> tuning)
+    {
+        ensure(5);
+        putVarint(tuning.size());
+        for(Map.Entry<String, String> e : tuning.entrySet()) {
+            putUtf(e.getKey());
+            putUtf(e.getValue());
+        }
+    }
+
+    private void putUtf(String text)
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ensure(5 + bytes.length);
+        putVarint(bytes.length);
+        out.put(bytes);
+    }
+
+    private static Map<String, String> getTuning(ByteBuffer in)
+    {
+        int count = (int) TimeSeriesRecorder.getVarint(in);
+        Map<String, String> tuning = new TreeMap<>();
+        for(int i = 0; i < count; i++) {
+            tuning.put(getUtf(in), getUtf(in));
+        }
+        return tuning;
+    }
+
+    private static String getUtf(ByteBuffer in)
+    {
+        byte[] bytes = new byte[(int) TimeSeriesRecorder.getVarint(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // species, flags, then everything else as zigzag varints
+    private void putFullDino(WorldSnapshot s, int i)
+    {
+        out.put(s.species[i]);
+        out.put(s.flags[i]);
+        putVarint(TimeSeriesRecorder.zigzag(s.cell[i]));
+        putVarint(TimeSeriesRecorder.zigzag(s.maxEnergy[i]));
+        putVarint(TimeSeriesRecorder.zigzag(s.energy[i]));
+        putVarint(TimeSeriesRecorder.zigzag(s.age[i]));
+        putVarint(TimeSeriesRecorder.zigzag(s.infectionTimer[i]));
+        putVarint(TimeSeriesRecorder.zigzag(s.immunityTimer[i]));
+    }
+
+    private static void getFullDino(ByteBuffer in, Columns c, int i)
+    {
+        c.species[i] = in.get();
+        c.flags[i] = in.get();
+        c.cell[i] = getDelta(in);
+        c.maxEnergy[i] = getDelta(in);
+        c.energy[i] = getDelta(in);
+        c.age[i] = getDelta(in);
+        c.infectionTimer[i] = getDelta(in);
+        c.immunityTimer[i] = getDelta(in);
+    }
+
+    // One zigzag varint (deltas, and full values too)
+    private static int getDelta(ByteBuffer in)
+    {
+        return (int) TimeSeriesRecorder.unzigzag(TimeSeriesRecorder.getVarint(in));
+    }
+
+    private void putVarint(long value)
+    {
+        TimeSeriesRecorder.putVarint(value, out);
+    }
+
+    // Grows the output buffer so at least n more bytes fit
+    private void ensure(int n)
+    {
+        if(out.remaining() >= n) return;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + n));
+        out.flip();
+        bigger.put(out);
+        out = bigger;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Populations of one seeded headless world at every step (what a HeadlessWorker prints).
+ * counts[step][species ordinal] and infected[step], step 0 being the freshly populated world.
+ * Worlds ended early by a StopPolicy stop at that step, and stopReason says why.
+ */
+public record RunHistory(long seed, int[][] counts, int[] infected, StopPolicy.Reason stopReason)
+{
+    // Last step recorded
+    public int getSteps()
+    {
+        return counts.length - 1;
+    }
+
+    // One species' count at every step
+    public int[] trajectory(SpeciesType type)
+    {
+        int[] out = new int[counts.length];
+        for(int t = 0; t < counts.length; t++) out[t] = counts[t][type.ordinal()];
+        return out;
+    }
+
+    public int finalCount(SpeciesType type)
+    {
+        return counts[counts.length - 1][type.ordinal()];
+    }
+
+    // Average count over every step, including step 0
+    public double meanCount(SpeciesType type)
+    {
+        double total = 0;
+        for(int[] row : counts) total += row[type.ordinal()];
+        return total / counts.length;
+    }
+
+    // First step with none left (getSteps() + 1 if it never died out)
+    public int extinctionStep(SpeciesType type)
+    {
+        for(int t = 0; t < counts.length; t++) {
+            if(counts[t][type.ordinal()] == 0) return t;
+        }
+        return counts.length;
+    }
+
+    public int peakInfected()
+    {
+        int peak = 0;
+        for(int n : infected) peak = Math.max(peak, n);
+        return peak;
+    }
+
+    // Infected dinos summed over every step (the area under the infection curve)
+    public long infectedSteps()
+    {
+        long total = 0;
+        for(int n : infected) total += n;
+        return total;
+    }
+}
@@ -0,0 +1,266 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * End-to-end scaling run: fixed-seed headless worlds at a few sizes/densities, N steps each,
+ * recording steps/sec, p50/p99 step time, peak heap and total allocation.
+ * Results go to a CSV. If a baseline CSV is given the run is compared against it and the
+ * process exits with 1 when anything got worse by more than the threshold (so a script/CI
+ * job can just check the exit code).
+ *
+ * Usage: java ScalingBenchmark [--sizes=120x80,500x500] [--densities=0.5,1] [--steps=300]
+ *                              [--warmup-steps=50] [--seed=6969] [--out=scaling.csv]
+ *                              [--baseline=baseline.csv] [--threshold=0.15] [--update-baseline]
+ */
+public class ScalingBenchmark
+{
+    private static final String DEFAULT_SIZES = "120x80,500x500,1000x1000";
+    private static final String HEADER =
+            "mode,size,density,steps,seed,steps_per_sec,p50_ms,p99_ms,peak_heap_mb,alloc_mb,final_population";
+
+    // Only one stepping mode exists right now, but results are keyed on it so others can slot in
+    private static final String MODE_SEQUENTIAL = "sequential";
+
+    // One row of results
+    private record Result(String mode, String size, double density, int steps, long seed,
+                          double stepsPerSec, double p50Ms, double p99Ms,
+                          double peakHeapMb, double allocMb, int finalPopulation)
+    {
+        String key()
+        {
+            return mode + "|" + size + "|" + density + "|" + steps + "|" + seed;
+        }
+
+        String toCsv()
+        {
+            return String.format(Locale.ROOT, "%s,%s,%.3f,%d,%d,%.3f,%.4f,%.4f,%.2f,%.2f,%d",
+                    mode, size, density, steps, seed, stepsPerSec, p50Ms, p99Ms, peakHeapMb, allocMb, finalPopulation);
+        }
+
+        static Result fromCsv(String line)
+        {
+            String[] f = line.split(",");
+            return new Result(f[0], f[1], Double.parseDouble(f[2]), Integer.parseInt(f[3]), Long.parseLong(f[4]),
+                    Double.parseDouble(f[5]), Double.parseDouble(f[6]), Double.parseDouble(f[7]),
+                    Double.parseDouble(f[8]), Double.parseDouble(f[9]), Integer.parseInt(f[10]));
+        }
+    }
+
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException
+    {
+        System.setProperty("java.awt.headless", "true");
+
+        Map<String, String> opts = parseArgs(args);
+        String[] sizes = opts.getOrDefault("sizes", DEFAULT_SIZES).split(",");
+        String[] densities = opts.getOrDefault("densities", "1.0").split(",");
+        int steps = Integer.parseInt(opts.getOrDefault("steps", "300"));
+        int warmupSteps = Integer.parseInt(opts.getOrDefault("warmup-steps", "50"));
+        long seed = Long.parseLong(opts.getOrDefault("seed", "6969"));
+        String out = opts.getOrDefault("out", "scaling.csv");
+        String baseline = opts.get("baseline");
+        double threshold = Double.parseDouble(opts.getOrDefault("threshold", "0.15"));
+
+        ScalingBenchmark bench = new ScalingBenchmark();
+        List<Result> results = new ArrayList<>();
+        for(String size : sizes) {
+            for(String density : densities) {
+                Result r = bench.runOne(size.trim(), Double.parseDouble(density.trim()), steps, warmupSteps, seed);
+                System.out.printf("%-10s %-11s density %.2f  %8.2f steps/s  p50 %7.2fms  p99 %7.2fms  heap %7.1fMB  alloc %9.1fMB  pop %d%n",
+                        r.mode(), r.size(), r.density(), r.stepsPerSec(), r.p50Ms(), r.p99Ms(),
+                        r.peakHeapMb(), r.allocMb(), r.finalPopulation());
+                results.add(r);
+            }
+        }
+
+        writeCsv(results, out);
+        System.out.println("Wrote " + out);
+
+        if(baseline == null) return;
+
+        if(opts.containsKey("update-baseline")) {
+            writeCsv(results, baseline);
+            System.out.println("Baseline updated: " + baseline);
+            return;
+        }
+
+        int regressions = compare(results, readCsv(baseline), threshold);
+        if(regressions > 0) {
+            System.out.println(regressions + " regression(s) over " + Math.round(threshold * 100) + "%");
+            System.exit(1);
+        }
+        System.out.println("No regressions against " + baseline);
+    }
+
+    // Runs one fixed-seed world (warmup steps first, they aren't recorded)
+    private Result runOne(String size, double density, int steps, int warmupSteps, long seed)
+    {
+        String[] parts = size.toLowerCase().split("x");
+        int width = Integer.parseInt(parts[0]);
+        int depth = Integer.parseInt(parts[1]);
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Randomizer.reset(seed);
+            double[] saved = Tuning.scaleSpawnChances(density);
+            Simulator sim;
+            try {
+                sim = new Simulator(depth, width, true);
+            }
+            finally {
+                Tuning.setSpawnChances(saved);
+            }
+            sim.setStatsSink(null);
+
+            for(int i = 0; i < warmupSteps && sim.getField().isViable(); i++) {
+                sim.simulateOneStep();
+            }
+
+            System.gc();
+            resetPeakHeap();
+
+            long threadId = Thread.currentThread().getId();
+            long allocBefore = threadBean.getThreadAllocatedBytes(threadId);
+            long[] stepNanos = new long[steps];
+            int done = 0;
+
+            long start = System.nanoTime();
+            while(done < steps && sim.getField().isViable()) {
+                long t0 = System.nanoTime();
+                sim.simulateOneStep();
+                stepNanos[done++] = System.nanoTime() - t0;
+            }
+            long elapsed = System.nanoTime() - start;
+
+            double allocMb = (threadBean.getThreadAllocatedBytes(threadId) - allocBefore) / (1024.0 * 1024.0);
+            long[] sorted = Arrays.copyOf(stepNanos, done);
+            Arrays.sort(sorted);
+
+            return new Result(MODE_SEQUENTIAL, size, density, steps, seed,
+                    done * 1e9 / Math.max(1, elapsed),
+                    percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6,
+                    peakHeapMb(), allocMb, sim.getField().getDinosaurs().size());
+        }
+        finally {
+            System.setOut(console);
+        }
+    }
+
+    // Compares against the baseline, prints each regression, returns how many there were
+    private static int compare(List<Result> results, List<Result> baseline, double threshold)
+    {
+        Map<String, Result> byKey = new HashMap<>();
+        for(Result b : baseline) byKey.put(b.key(), b);
+
+        int regressions = 0;
+        for(Result r : results) {
+            Result b = byKey.get(r.key());
+            if(b == null) {
+                System.out.println("(no baseline for " + r.key() + ")");
+                continue;
+            }
+
+            // same seed and steps should mean the same world, if not the numbers aren't comparable
+            if(b.finalPopulation() != r.finalPopulation()) {
+                System.out.println("WARNING " + r.key() + ": final population " + r.finalPopulation()
+                        + " vs baseline " + b.finalPopulation() + " (behaviour changed?)");
+            }
+
+            regressions += check(r, "steps/s", b.stepsPerSec(), r.stepsPerSec(), threshold, false);
+            regressions += check(r, "p50 ms", b.p50Ms(), r.p50Ms(), threshold, true);
+            regressions += check(r, "p99 ms", b.p99Ms(), r.p99Ms(), threshold, true);
+            regressions += check(r, "peak heap MB", b.peakHeapMb(), r.peakHeapMb(), threshold, true);
+            regressions += check(r, "alloc MB", b.allocMb(), r.allocMb(), threshold, true);
+        }
+        return regressions;
+    }
+
+    // 1 if the metric moved the wrong way by more than threshold
+    private static int check(Result r, String metric, double base, double now, double threshold, boolean lowerIsBetter)
+    {
+        if(base <= 0) return 0;
+        double change = (now - base) / base;
+        boolean worse = lowerIsBetter ? change > threshold : change < -threshold;
+        if(!worse) return 0;
+
+        System.out.printf("REGRESSION %s %s: %.3f -> %.3f (%+.1f%%)%n", r.key(), metric, base, now, change * 100);
+        return 1;
+    }
+
+    private static double percentile(long[] sorted, double p)
+    {
+        if(sorted.length == 0) return 0;
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static void resetPeakHeap()
+    {
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    // Sum of heap pool peaks (an upper bound, pools don't all peak at the same moment)
+    private static double peakHeapMb()
+    {
+        long total = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                total += pool.getPeakUsage().getUsed();
+            }
+        }
+        return total / (1024.0 * 1024.0);
+    }
+
+    private static void writeCsv(List<Result> results, String path) throws IOException
+    {
+        try(PrintWriter out = new PrintWriter(new FileWriter(path))) {
+            out.println(HEADER);
+            for(Result r : results) out.println(r.toCsv());
+        }
+    }
+
+    private static List<Result> readCsv(String path) throws IOException
+    {
+        List<Result> results = new ArrayList<>();
+        try(BufferedReader in = new BufferedReader(new FileReader(path))) {
+            String line = in.readLine();
+            while((line = in.readLine()) != null) {
+                if(!line.isBlank()) results.add(Result.fromCsv(line));
+            }
+        }
+        return results;
+    }
+
+    // --key=value style args
+    private static Map<String, String> parseArgs(String[] args)
+    {
+        Map<String, String> opts = new LinkedHashMap<>();
+        for(String arg : args) {
+            if(!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            if(eq < 0) opts.put(arg.substring(2), "true");
+            else opts.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return opts;
+    }
+}
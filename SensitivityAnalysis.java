@@ -0,0 +1,267 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Which tuning values actually decide who survives? Sobol global sensitivity analysis over a
+ * TuningSpace, using Saltelli's design: two random sample matrices A and B (samples rows, one
+ * column per parameter) plus, for each parameter i, A with column i taken from B. That's
+ * samples * (parameters + 2) tunings, each run headless over the same seeds (common random
+ * numbers: every tuning sees the same worlds, so differences between them are down to the
+ * tuning rather than the luck of the draw, and far fewer seeds give stable indices).
+ *
+ * Outputs, one per species plus one overall, each the mean over the seeds:
+ *   SPECIES      fraction of the steps that species lasted (1 if it never died out)
+ *   coexistence  fraction of the steps before the first species died out
+ * Indices per parameter and output (Saltelli 2010 / Jansen estimators):
+ *   S1  first-order: share of the output's variance down to that parameter alone
+ *   ST  total effect: share it's involved in at all, interactions included
+ * ST near 0 means the parameter can be left alone; ST well above S1 means it matters through
+ * others. With few samples the estimates are rough (S1 can come out a little below 0).
+ *
+ * Usage: java SensitivityAnalysis [--size=90x60] [--steps=400] [--seeds=3] [--samples=32]
+ *                                 [--workers=N] [--seed=1] [--out=sensitivity.csv]
+ *                                 [--params=breedingProbability,maxLitterSize,maxAge,breedingAge,maxEnergy]
+ *                                 [key=low:high ...]
+ * --params works as for TuningOptimizer ("all" for every numeric SpeciesTuning field, which is a
+ * lot of worlds); key=low:high names exactly what to vary.
+ */
+public class SensitivityAnalysis
+{
+    private static final String DEFAULT_PARAMS = "breedingProbability,maxLitterSize,maxAge,breedingAge,maxEnergy";
+
+    // Indices for one parameter and one output
+    public record Index(String param, String output, double s1, double st) {}
+
+    private final TuningSpace space;
+    private final int depth, width, steps, samples, workers;
+    private final long[] seeds;
+    private final Random rand;
+
+    private int pointsRun;
+
+    public SensitivityAnalysis(TuningSpace space, int depth, int width, int steps, long[] seeds, int samples,
+                               int workers, long designSeed)
+    {
+        this.space = space;
+        this.depth = depth;
+        this.width = width;
+        this.steps = steps;
+        this.seeds = seeds;
+        this.samples = samples;
+        this.workers = workers;
+        this.rand = new Random(designSeed);
+    }
+
+    // Output names, in the order outputs() gives them
+    public static List<String> outputNames()
+    {
+        List<String> names = new ArrayList<>();
+        for(SpeciesType type : SpeciesType.values()) names.add(type.name());
+        names.add("coexistence");
+        return names;
+    }
+
+    // Runs the whole design and works out S1 and ST for every parameter and output
+    public List<Index> analyse(PrintWriter log) throws IOException
+    {
+        int k = space.size();
+        double[][] a = randomMatrix(), b = randomMatrix();
+        List<double[]> points = new ArrayList<>();
+        for(double[] row : a) points.add(space.fromUnit(row));
+        for(double[] row : b) points.add(space.fromUnit(row));
+        for(int i = 0; i < k; i++) {
+            for(int j = 0; j < samples; j++) {
+                double[] row = a[j].clone();
+                row[i] = b[j][i];
+                points.add(space.fromUnit(row));
+            }
+        }
+        log.printf("%d parameters, %d samples: %d tunings x %d seeds of %d steps%n",
+                k, samples, points.size(), seeds.length, steps);
+        log.flush();
+
+        double[][] y = evaluateAll(points, log);
+        List<String> names = outputNames();
+        List<Index> indices = new ArrayList<>();
+        for(int o = 0; o < names.size(); o++) {
+            double[] fA = column(y, 0, o), fB = column(y, samples, o);
+            double mean = mean(fA, fB), variance = variance(fA, fB, mean);
+            for(int i = 0; i < k; i++) {
+                double[] fAB = column(y, (2 + i) * samples, o);
+                double first = 0, total = 0;
+                for(int j = 0; j < samples; j++) {
+                    // centred, which leaves the estimate alone but makes it a lot less noisy
+                    first += (fB[j] - mean) * (fAB[j] - fA[j]);
+                    total += (fA[j] - fAB[j]) * (fA[j] - fAB[j]);
+                }
+                // a species that always (or never) survives has nothing to explain
+                double s1 = (variance > 0) ? first / samples / variance : Double.NaN;
+                double st = (variance > 0) ? total / (2.0 * samples) / variance : Double.NaN;
+                indices.add(new Index(space.get(i).key(), names.get(o), s1, st));
+            }
+        }
+        return indices;
+    }
+
+    // One tuning's outputs, averaged over the seeds
+    public double[] outputs(List<RunHistory> runs)
+    {
+        SpeciesType[] types = SpeciesType.values();
+        double[] out = new double[types.length + 1];
+        for(RunHistory run : runs) {
+            int first = steps;
+            for(SpeciesType type : types) {
+                int lasted = Math.min(steps, run.extinctionStep(type));
+                out[type.ordinal()] += (double) lasted / steps;
+                first = Math.min(first, lasted);
+            }
+            out[types.length] += (double) first / steps;
+        }
+        for(int o = 0; o < out.length; o++) out[o] /= runs.size();
+        return out;
+    }
+
+    // Every point over every seed, in parallel; y[point][output]
+    private double[][] evaluateAll(List<double[]> points, PrintWriter log) throws IOException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<double[]>> futures = new ArrayList<>();
+            for(double[] x : points) {
+                futures.add(pool.submit(() -> {
+                    try {
+                        double[] y = outputs(HeadlessWorker.run(depth, width, steps, seeds, space.settings(x)));
+                        progress(log, points.size());
+                        return y;
+                    }
+                    catch(IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+
+            double[][] y = new double[points.size()][];
+            for(int p = 0; p < y.length; p++) y[p] = futures.get(p).get();
+            return y;
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for workers", e);
+        }
+        catch(ExecutionException e) {
+            if(e.getCause() instanceof UncheckedIOException u) throw u.getCause();
+            throw new IOException("Worker failed", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // A line every tenth of the way through
+    private synchronized void progress(PrintWriter log, int total)
+    {
+        pointsRun++;
+        if(pointsRun == total || pointsRun % Math.max(1, total / 10) == 0) {
+            log.printf("  %d/%d tunings run%n", pointsRun, total);
+            log.flush();
+        }
+    }
+
+    private double[][] randomMatrix()
+    {
+        double[][] m = new double[samples][space.size()];
+        for(double[] row : m) {
+            for(int d = 0; d < row.length; d++) row[d] = rand.nextDouble();
+        }
+        return m;
+    }
+
+    private double[] column(double[][] y, int from, int output)
+    {
+        double[] out = new double[samples];
+        for(int j = 0; j < samples; j++) out[j] = y[from + j][output];
+        return out;
+    }
+
+    // Mean and variance of the A and B outputs together (both are plain random samples)
+    private static double mean(double[] fA, double[] fB)
+    {
+        double total = 0;
+        for(double v : fA) total += v;
+        for(double v : fB) total += v;
+        return total / (fA.length + fB.length);
+    }
+
+    private static double variance(double[] fA, double[] fB, double mean)
+    {
+        double ss = 0;
+        for(double v : fA) ss += (v - mean) * (v - mean);
+        for(double v : fB) ss += (v - mean) * (v - mean);
+        return ss / (fA.length + fB.length);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        Map<String, String> opts = new LinkedHashMap<>();
+        Map<String, String> ranges = new LinkedHashMap<>();
+        for(String arg : args) {
+            int eq = arg.indexOf('=');
+            if(arg.startsWith("--")) {
+                if(eq < 0) opts.put(arg.substring(2), "true");
+                else opts.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+            else if(eq > 0) {
+                ranges.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+
+        String[] size = opts.getOrDefault("size", "90x60").toLowerCase().split("x");
+        int width = Integer.parseInt(size[0]);
+        int depth = Integer.parseInt(size[1]);
+        int steps = Integer.parseInt(opts.getOrDefault("steps", "400"));
+        int seedCount = Integer.parseInt(opts.getOrDefault("seeds", "3"));
+        int samples = Integer.parseInt(opts.getOrDefault("samples", "32"));
+        int workers = Integer.parseInt(opts.getOrDefault("workers", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        long designSeed = Long.parseLong(opts.getOrDefault("seed", "1"));
+        String out = opts.getOrDefault("out", "sensitivity.csv");
+        if(samples < 2) throw new IllegalArgumentException("Need at least 2 samples");
+
+        // the same seeds for every tuning
+        long[] seeds = new long[seedCount];
+        for(int i = 0; i < seedCount; i++) seeds[i] = i + 1;
+
+        TuningSpace space = TuningSpace.parse(ranges, opts.getOrDefault("params", DEFAULT_PARAMS));
+        SensitivityAnalysis analysis = new SensitivityAnalysis(space, depth, width, steps, seeds, samples, workers, designSeed);
+        PrintWriter log = new PrintWriter(System.out, true);
+        long start = System.nanoTime();
+        List<Index> indices = analysis.analyse(log);
+        log.printf("Done in %.1f s%n", (System.nanoTime() - start) / 1e9);
+
+        List<String> lines = new ArrayList<>();
+        lines.add("parameter,output,S1,ST");
+        for(Index index : indices) lines.add(index.param() + "," + index.output() + "," + index.s1() + "," + index.st());
+        Files.write(Paths.get(out), lines, StandardCharsets.UTF_8);
+
+        for(String output : outputNames()) {
+            log.printf("%n%s%n  %-40s %7s %7s%n", output, "parameter", "S1", "ST");
+            for(Index index : indices) {
+                if(index.output().equals(output)) log.printf("  %-40s %7.3f %7.3f%n", index.param(), index.s1(), index.st());
+            }
+        }
+        log.println();
+        log.println("Written to " + out);
+    }
+}
@@ -0,0 +1,181 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/*
+ * Java Flight Recorder events for the sim, so a recording shows what the world was doing
+ * next to the method samples (look under "Dino Sim" in JDK Mission Control).
+ *
+ * Step and weather events are on by default. Kill/birth/outbreak can fire thousands of
+ * times a step, so they are off unless the recording enables them (e.g. a .jfc with
+ * dino.Kill#enabled=true), and then only every Nth one is kept (-Dsim.jfr.sampleEvery=N).
+ * When an event is disabled the cost is one isEnabled check.
+ */
+public final class SimEvents
+{
+    private static final int SAMPLE_EVERY = Math.max(1, Integer.getInteger("sim.jfr.sampleEvery", 1));
+
+    // only the sim thread fires these, so plain counters are fine
+    private static long kills, births, outbreaks;
+
+    private SimEvents() {}
+
+    @Name("dino.Step")
+    @Label("Simulation Step")
+    @Category("Dino Sim")
+    @Description("One simulateOneStep, with the population afterwards and time per phase")
+    @StackTrace(false)
+    public static class StepEvent extends Event
+    {
+        @Label("Step") int step;
+        @Label("Population") int population;
+        @Label("Carnivores") int carnivores;
+        @Label("Herbivores") int herbivores;
+        @Label("Infected") int infected;
+        @Label("Time Of Day") String timeOfDay;
+        @Label("Weather") String weather;
+        @Label("Disease") @Timespan(Timespan.NANOSECONDS) long diseaseTime;
+        @Label("Act") @Timespan(Timespan.NANOSECONDS) long actTime;
+        @Label("Vegetation") @Description("Vegetation copy, regrow and dirty-cell diff") @Timespan(Timespan.NANOSECONDS) long vegetationTime;
+        @Label("Render") @Description("Stats, view update and step listeners") @Timespan(Timespan.NANOSECONDS) long renderTime;
+    }
+
+    @Name("dino.WeatherChange")
+    @Label("Weather Change")
+    @Category("Dino Sim")
+    @StackTrace(false)
+    public static class WeatherChangeEvent extends Event
+    {
+        @Label("From") String from;
+        @Label("To") String to;
+        @Label("Heatwave Streak") int heatwaveStreak;
+    }
+
+    @Name("dino.Kill")
+    @Label("Kill")
+    @Category("Dino Sim")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class KillEvent extends Event
+    {
+        @Label("Predator") String predator;
+        @Label("Prey") String prey;
+        @Label("Prey Infected") boolean preyInfected;
+        @Label("Row") int row;
+        @Label("Column") int col;
+    }
+
+    @Name("dino.Birth")
+    @Label("Birth")
+    @Category("Dino Sim")
+    @Description("A successful breeding roll (babies only get placed if there is room)")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class BirthEvent extends Event
+    {
+        @Label("Species") String species;
+        @Label("Litter Size") int litterSize;
+        @Label("Row") int row;
+        @Label("Column") int col;
+    }
+
+    @Name("dino.Outbreak")
+    @Label("Disease Outbreak")
+    @Category("Dino Sim")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class OutbreakEvent extends Event
+    {
+        @Label("Species") String species;
+        @Label("Row") int row;
+        @Label("Column") int col;
+    }
+
+    // Fills in and commits a step event (begin() was called at the start of the step)
+    public static void commitStep(StepEvent event, int step, Field field, PerfMonitor perf)
+    {
+        event.end();
+        if(!event.shouldCommit()) return;
+
+        event.step = step;
+        for(Dinosaur d : field.getDinosaurs()) {
+            if(!d.isAlive()) continue;
+            event.population++;
+            if(d instanceof Carnivore) event.carnivores++;
+            else event.herbivores++;
+            if(d.isInfected()) event.infected++;
+        }
+        event.timeOfDay = TimeManager.getTimeOfDay().name();
+        event.weather = WeatherManager.getWeather().name();
+        event.diseaseTime = perf.getLastPhaseNanos(PerfMonitor.Phase.DISEASE);
+        event.actTime = perf.getLastPhaseNanos(PerfMonitor.Phase.ACT);
+        event.vegetationTime = perf.getLastPhaseNanos(PerfMonitor.Phase.VEGETATION);
+        event.renderTime = perf.getLastPhaseNanos(PerfMonitor.Phase.RENDER);
+        event.commit();
+    }
+
+    // WeatherManager rolled a new weather
+    public static void weatherChanged(WeatherState from, WeatherState to, int heatwaveStreak)
+    {
+        WeatherChangeEvent event = new WeatherChangeEvent();
+        if(!event.isEnabled()) return;
+
+        event.from = from.name();
+        event.to = to.name();
+        event.heatwaveStreak = heatwaveStreak;
+        event.commit();
+    }
+
+    // A carnivore's kill roll succeeded (sampled)
+    public static void kill(Dinosaur predator, Dinosaur prey)
+    {
+        KillEvent event = new KillEvent();
+        if(!event.isEnabled() || ++kills % SAMPLE_EVERY != 0) return;
+
+        event.predator = predator.getSpeciesType().name();
+        event.prey = prey.getSpeciesType().name();
+        event.preyInfected = prey.isInfected();
+        Location loc = prey.getLocation();
+        if(loc != null) {
+            event.row = loc.row();
+            event.col = loc.col();
+        }
+        event.commit();
+    }
+
+    // A breeding roll succeeded (sampled)
+    public static void birth(Dinosaur parent, int litterSize)
+    {
+        BirthEvent event = new BirthEvent();
+        if(!event.isEnabled() || ++births % SAMPLE_EVERY != 0) return;
+
+        event.species = parent.getSpeciesType().name();
+        event.litterSize = litterSize;
+        Location loc = parent.getLocation();
+        if(loc != null) {
+            event.row = loc.row();
+            event.col = loc.col();
+        }
+        event.commit();
+    }
+
+    // A spontaneous outbreak infected something (sampled)
+    public static void outbreak(Dinosaur patientZero)
+    {
+        OutbreakEvent event = new OutbreakEvent();
+        if(!event.isEnabled() || ++outbreaks % SAMPLE_EVERY != 0) return;
+
+        event.species = patientZero.getSpeciesType().name();
+        Location loc = patientZero.getLocation();
+        if(loc != null) {
+            event.row = loc.row();
+            event.col = loc.col();
+        }
+        event.commit();
+    }
+}
@@ -0,0 +1,50 @@
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Everything the sim keeps in statics (tuning, time of day, weather, the shared rng) as one
+ * value. Capture it, put it back later: that's how checkpoints restore a world and how forks
+ * take turns with the managers, since there's only one of each per JVM.
+ */
+public record SimGlobals(Map<String, String> tuning, TimeOfDay timeOfDay, WeatherState weather,
+                         int stepsUntilChange, int heatwaveCycles, long rngState)
+{
+    public SimGlobals
+    {
+        tuning = Collections.unmodifiableMap(new TreeMap<>(tuning));
+    }
+
+    // What the statics hold right now
+    public static SimGlobals capture()
+    {
+        return new SimGlobals(Tuning.snapshot(), TimeManager.getTimeOfDay(), WeatherManager.getWeather(),
+                WeatherManager.getStepsUntilChange(), WeatherManager.getConsecutiveHeatwaveCycles(),
+                Randomizer.getState());
+    }
+
+    // Puts these values into the statics
+    public void install()
+    {
+        Tuning.restore(tuning);
+        TimeManager.restore(timeOfDay);
+        WeatherManager.restore(weather, stepsUntilChange, heatwaveCycles);
+        Randomizer.setState(rngState);
+    }
+
+    // Same globals with one tuning value changed (key as in Tuning.snapshot)
+    public SimGlobals withTuning(String key, String value)
+    {
+        if(!tuning.containsKey(key)) throw new IllegalArgumentException("No tuning value " + key);
+
+        Map<String, String> changed = new TreeMap<>(tuning);
+        changed.put(key, value);
+        return new SimGlobals(changed, timeOfDay, weather, stepsUntilChange, heatwaveCycles, rngState);
+    }
+
+    // Same globals with a different rng state (e.g. to give branches different futures)
+    public SimGlobals withRngState(long state)
+    {
+        return new SimGlobals(tuning, timeOfDay, weather, stepsUntilChange, heatwaveCycles, state);
+    }
+}
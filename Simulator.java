@@ -1,22 +1,45 @@
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.swing.ButtonModel;
 
 /*
  * Runs the whole dinosaur simulation.
  * Keeps the current Field, steps time/weather/disease, and asks each dino to act.
  * Also has the continuous run stuff because the tuning window needed it.
+ * Can run headless (no window, no delays) for exports/benchmarks; anything that wants
+ * the per-step state can register a StepListener.
  */
 public class Simulator
 {
     private static final int DEFAULT_WIDTH = 120;
     private static final int DEFAULT_DEPTH = 80;
 
+    // Bump whenever a change makes a seeded run come out differently (cached sweep results use it)
+    public static final int ENGINE_VERSION = 1;
+
     private Field field;
     private int step;
     private final SimulatorView view;
+    private final List<StepListener> listeners = new CopyOnWriteArrayList<>();
+    private final PerfMonitor perf = new PerfMonitor();
+    private SimulatorMetrics metrics;
+
+    // last few thousand steps, for the window's timeline slider (windowed runs only)
+    private final RewindBuffer rewind;
+
+    // console stats are shared by every simulator (one writer thread), flushed at exit
+    private static StatsSink consoleStats;
+    private StatsSink statsSink = getConsoleStats();
+
+    // changes from other threads (tuning window) wait here so they land between two steps
+    private final ReentrantLock stepLock = new ReentrantLock();
+    private final Queue<Runnable> betweenSteps = new ConcurrentLinkedQueue<>();
 
-    // continuous run stuff for the tuning window
+    // continuous run stuff for the tuning window (stopRequested also ends a simulate(n))
     private volatile boolean running = false;
-    private Thread runnerThread;
+    private volatile boolean stopRequested = false;
 
     // Makes a simulator with default size
     public Simulator()
@@ -26,6 +49,12 @@ public class Simulator
 
     // Makes a simulator with a custom field size
     public Simulator(int depth, int width)
+    {
+        this(depth, width, false);
+    }
+
+    // Makes a simulator; headless means no window/tuning window and no delay between steps
+    public Simulator(int depth, int width, boolean headless)
     {
         if(width <= 0 || depth <= 0) {
             System.out.println("The dimensions must be >= zero.");
@@ -35,10 +64,45 @@ public class Simulator
         }
 
         field = new Field(depth, width);
-        view = new SimulatorView(depth, width);
+        view = headless ? null : new SimulatorView(depth, width);
+        rewind = headless ? null : new RewindBuffer();
+        if(view != null) {
+            view.setPerfMonitor(perf);
+            view.setTimelineHandlers(this::showRewindStep, this::rewindTo, this::showLiveStep);
+        }
 
         reset();
-        openTuningWindow();
+        if(!headless) {
+            getMetrics().register();
+            openTuningWindow();
+        }
+    }
+
+    // Registers something to be told after every step
+    public void addStepListener(StepListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    public void removeStepListener(StepListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    // True if there is no window (exports, benchmarks, batch runs)
+    public boolean isHeadless()
+    {
+        return view == null;
+    }
+
+    public Field getField()
+    {
+        return field;
+    }
+
+    public int getStep()
+    {
+        return step;
     }
 
     // Opens the tuning window (it manages itself)
@@ -52,23 +116,24 @@ public class Simulator
     {
         if(running) return;
         running = true;
+        stopRequested = false;
 
-        runnerThread = new Thread(() -> {
-            while(running && field.isViable()) {
-                simulateOneStep();
+        Thread runner = new Thread(() -> {
+            while(stepUnlessStopped()) {
                 delay(Tuning.simDelayMs);
             }
             running = false;
         });
 
-        runnerThread.setDaemon(true);
-        runnerThread.start();
+        runner.setDaemon(true);
+        runner.start();
     }
 
-    // Stops the continuous run loop
+    // Stops the continuous run loop (and a simulate(n) in progress) after the step it's on
     public void stopContinuous()
     {
         running = false;
+        stopRequested = true;
     }
 
     // Quick "long run" helper
@@ -81,22 +146,97 @@ public class Simulator
     public void simulate(int numSteps)
     {
         reportStats();
-        for(int n = 1; n <= numSteps && field.isViable(); n++) {
-            simulateOneStep();
-            delay(50);
+        stopRequested = false;
+        for(int n = 1; n <= numSteps && stepUnlessStopped(); n++) {
+            if(!isHeadless()) delay(50);
         }
     }
 
     // Does one step (time/weather/disease -> act -> regrow -> show)
     public void simulateOneStep()
     {
+        stepLock.lock();
+        try {
+            runPendingChanges();
+            doOneStep();
+        }
+        finally {
+            stepLock.unlock();
+        }
+    }
+
+    // One step, unless a stop came in while it waited for the lock (so nothing steps after a rewind)
+    private boolean stepUnlessStopped()
+    {
+        stepLock.lock();
+        try {
+            if(stopRequested || !field.isViable()) return false;
+            runPendingChanges();
+            doOneStep();
+            return true;
+        }
+        finally {
+            stepLock.unlock();
+        }
+    }
+
+    /*
+     * Runs a change (e.g. new tuning values) between two steps rather than halfway through one:
+     * straight away if the sim isn't running, otherwise just before the next step starts.
+     * Replay logs rely on this so a change always belongs to exactly one step.
+     */
+    public void runBetweenSteps(Runnable change)
+    {
+        betweenSteps.add(change);
+        if(!running) {
+            stepLock.lock();
+            try {
+                runPendingChanges();
+            }
+            finally {
+                stepLock.unlock();
+            }
+        }
+    }
+
+    /*
+     * Runs a read of the world from another thread right now, but only if no step is in
+     * progress (no step can start until it's done). Returns false, without running it, if one is.
+     */
+    public boolean readIfIdle(Runnable read)
+    {
+        if(!stepLock.tryLock()) return false;
+        try {
+            read.run();
+            return true;
+        }
+        finally {
+            stepLock.unlock();
+        }
+    }
+
+    private void runPendingChanges()
+    {
+        Runnable change;
+        while((change = betweenSteps.poll()) != null) {
+            change.run();
+        }
+    }
+
+    private void doOneStep()
+    {
+        SimEvents.StepEvent stepEvent = new SimEvents.StepEvent();
+        stepEvent.begin();
+        perf.beginStep();
         step++;
 
+        TimeOfDay timeBefore = TimeManager.getTimeOfDay();
         TimeManager.updateForStep(step);
         WeatherManager.updateOneStep();
 
         Field nextField = new Field(field.getDepth(), field.getWidth());
         nextField.copyVegetationFrom(field);
+        perf.mark(PerfMonitor.Phase.VEGETATION);
 
         // System.out.println("[step] " + step + " time=" + TimeManager.getTimeOfDay() + " weather=" + WeatherManager.getWeather());
 
@@ -109,19 +249,62 @@ public class Simulator
                 d.tickDisease(field);
             }
         }
+        perf.mark(PerfMonitor.Phase.DISEASE);
 
         for(Dinosaur d : dinos) {
             if(d != null && d.isAlive()) {
                 d.act(field, nextField);
             }
         }
+        perf.mark(PerfMonitor.Phase.ACT);
 
         nextField.regrowVegetation(TimeManager.getTimeOfDay(), WeatherManager.getWeather());
 
+        // tell the view what changed (day/night flip recolours everything)
+        nextField.markChangesFrom(field);
+        if(TimeManager.getTimeOfDay() != timeBefore) nextField.markAllDirty();
+        perf.mark(PerfMonitor.Phase.VEGETATION);
+
         field = nextField;
 
         reportStats();
-        view.showStatus(step, field, TimeManager.getTimeOfDay(), WeatherManager.getWeather());
+        if(rewind != null) rewind.stepCompleted(step, field);
+        if(view != null) {
+            view.showStatus(step, field, TimeManager.getTimeOfDay(), WeatherManager.getWeather());
+            view.setTimelineRange(rewind.getFirstStep(), rewind.getLastStep());
+        }
+
+        for(StepListener listener : listeners) {
+            listener.stepCompleted(step, field);
+        }
+        perf.mark(PerfMonitor.Phase.RENDER);
+        perf.endStep();
+        SimEvents.commitStep(stepEvent, step, field, perf);
+    }
+
+    // Step timing (phases, allocation, GC) over the last couple of hundred steps
+    public PerfMonitor getPerfMonitor()
+    {
+        return perf;
+    }
+
+    // Metrics registry for this run (made on first use; windowed runs also put it on JMX)
+    public synchronized SimulatorMetrics getMetrics()
+    {
+        if(metrics == null) metrics = new SimulatorMetrics(this);
+        return metrics;
+    }
+
+    // Shows/hides the perf numbers on top of the grid
+    public void setPerfOverlayVisible(boolean visible)
+    {
+        if(view != null) view.setPerfOverlayVisible(visible);
+    }
+
+    // Whether the perf overlay is on, as a model a checkbox can share (null when headless)
+    public ButtonModel getPerfOverlayModel()
+    {
+        return (view != null) ? view.getPerfOverlayModel() : null;
     }
 
     // Infects a random dino (mostly used to test the disease feature)
@@ -142,11 +325,116 @@ public class Simulator
     // Reset back to step 0 and repopulate
     public void reset()
     {
-        step = 0;
-        TimeManager.reset();
-        WeatherManager.reset();
-        populate();
+        stepLock.lock();
+        try {
+            runPendingChanges();
+            step = 0;
+            TimeManager.reset();
+            WeatherManager.reset();
+            populate();
+            if(rewind != null) rewind.clear();
+            showWorld();
+            tellWorldReplaced();
+        }
+        finally {
+            stepLock.unlock();
+        }
+    }
+
+    // Swaps in a world loaded from somewhere else (checkpoints); sizes must match a window
+    public void restoreWorld(Field newField, int newStep)
+    {
+        if(view != null && (newField.getDepth() != field.getDepth() || newField.getWidth() != field.getWidth())) {
+            throw new IllegalArgumentException("World is " + newField.getDepth() + "x" + newField.getWidth()
+                    + " but the window is " + field.getDepth() + "x" + field.getWidth());
+        }
+        stepLock.lock();
+        try {
+            field = newField;
+            step = newStep;
+            // the recorded steps were another world's
+            if(rewind != null) rewind.clear();
+            showWorld();
+            tellWorldReplaced();
+        }
+        finally {
+            stepLock.unlock();
+        }
+    }
+
+    // Shows the live world and how far back the timeline reaches (holding stepLock)
+    private void showWorld()
+    {
+        if(view == null) return;
         view.showStatus(step, field, TimeManager.getTimeOfDay(), WeatherManager.getWeather());
+        view.setTimelineRange(rewind.getFirstStep(), rewind.getLastStep());
+    }
+
+    // Lets the step listeners know the next step won't follow on from the last one (holding stepLock)
+    private void tellWorldReplaced()
+    {
+        for(StepListener listener : listeners) {
+            listener.worldReplaced(step, field);
+        }
+    }
+
+    // Rewind history (null when headless; add your own RewindBuffer as a StepListener there)
+    public RewindBuffer getRewindBuffer()
+    {
+        return rewind;
+    }
+
+    /*
+     * Shows an earlier step in the window without touching the live world. Stops any run first
+     * and waits for the step it's on (scrubbing and stepping both draw through the view).
+     * Steps the buffer doesn't have (e.g. from before a Reset) are ignored.
+     */
+    public void showRewindStep(int target)
+    {
+        if(rewind == null) return;
+        stopContinuous();
+        runBetweenSteps(() -> {
+            if(target == step) {
+                showWorld();
+                return;
+            }
+            if(!isRecorded(target)) return;
+
+            WorldSnapshot snapshot = rewind.snapshotAt(target);
+            SimGlobals globals = snapshot.getGlobals();
+            view.showStatus(target, snapshot.newField(), globals.timeOfDay(), globals.weather());
+        });
+    }
+
+    // Shows the live world again after scrubbing
+    public void showLiveStep()
+    {
+        if(view != null) runBetweenSteps(this::showWorld);
+    }
+
+    // Makes an earlier step the live world again; everything recorded after it is dropped
+    public void rewindTo(int target)
+    {
+        if(rewind == null) return;
+        stopContinuous();
+        runBetweenSteps(() -> {
+            if(!isRecorded(target)) return;
+
+            WorldSnapshot snapshot = rewind.snapshotAt(target);
+            Field restored = snapshot.newField();
+            snapshot.getGlobals().install();
+            rewind.truncateAfter(target, restored);
+            field = restored;
+            step = target;
+            showWorld();
+            tellWorldReplaced();
+        });
+    }
+
+    private boolean isRecorded(int target)
+    {
+        int first = rewind.getFirstStep();
+        return first >= 0 && target >= first && target <= rewind.getLastStep();
     }
 
     // Places dinos randomly using the spawn probabilities
@@ -187,10 +475,33 @@ public class Simulator
         }
     }
 
-    // Prints counts to the console
+    // Sends this step's counts to the stats sink (console by default)
     public void reportStats()
     {
-        field.fieldStats();
+        StatsSink sink = statsSink;
+        if(sink != null) sink.accept(StepStats.of(step, field));
+    }
+
+    // Where per-step stats go (null = nowhere). The caller owns the sink and closes it.
+    public void setStatsSink(StatsSink sink)
+    {
+        statsSink = sink;
+    }
+
+    public StatsSink getStatsSink()
+    {
+        return statsSink;
+    }
+
+    // The shared async console sink
+    public static synchronized StatsSink getConsoleStats()
+    {
+        if(consoleStats == null) {
+            StatsSink sink = new AsyncStatsSink(new ConsoleStatsSink());
+            Runtime.getRuntime().addShutdownHook(new Thread(sink::close, "stats-flush"));
+            consoleStats = sink;
+        }
+        return consoleStats;
     }
 
     // Small sleep helper (keeps UI usable)
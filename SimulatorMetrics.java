@@ -0,0 +1,100 @@
+import javax.management.ObjectName;
+
+/*
+ * Feeds a MetricsRegistry from a running Simulator (it's just a StepListener) and
+ * publishes it over JMX as dino.sim:type=Metrics,id=N.
+ *
+ * Metrics: steps, stepsPerSecond, stepLatencyNanos (histogram), population.<SPECIES>,
+ * population.total, infected, vegetationMean, allocatedBytesPerStep, gcMillisPerStep.
+ * Counting is done once per step on the sim thread; the gauges just read the last values.
+ */
+public class SimulatorMetrics implements StepListener
+{
+    // vegetation mean walks the whole grid, no need to do it every step
+    private static final int VEGETATION_EVERY = 10;
+
+    private static int nextId = 1;
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final PerfMonitor perf;
+    private final MetricsRegistry.LongCounter steps;
+    private final MetricsRegistry.Histogram stepLatency;
+
+    private final int[] population = new int[SpeciesType.values().length];
+    private volatile int totalPopulation;
+    private volatile int infected;
+    private volatile double vegetationMean;
+
+    private ObjectName objectName;
+
+    // Hooks into the simulator (call register() to also show it over JMX)
+    public SimulatorMetrics(Simulator simulator)
+    {
+        perf = simulator.getPerfMonitor();
+        steps = registry.counter("steps");
+        stepLatency = registry.histogram("stepLatencyNanos");
+
+        registry.gauge("stepsPerSecond", perf::getStepsPerSecond);
+        registry.gauge("allocatedBytesPerStep", perf::getMeanAllocatedBytes);
+        registry.gauge("gcMillisPerStep", perf::getMeanGcMillis);
+        registry.gauge("population.total", () -> totalPopulation);
+        registry.gauge("infected", () -> infected);
+        registry.gauge("vegetationMean", () -> vegetationMean);
+        for(SpeciesType type : SpeciesType.values()) {
+            registry.gauge("population." + type.name(), () -> population[type.ordinal()]);
+        }
+
+        countField(simulator.getField());
+        vegetationMean = simulator.getField().getMeanVegetation();
+        simulator.addStepListener(this);
+    }
+
+    // Publishes on the platform MBean server (each simulator gets its own id)
+    public synchronized void register()
+    {
+        if(objectName != null) return;
+        objectName = new MetricsMBean(registry, "Dinosaur simulation metrics")
+                .register("dino.sim:type=Metrics,id=" + nextId());
+    }
+
+    // Takes it off JMX again
+    public synchronized void unregister()
+    {
+        MetricsMBean.unregister(objectName);
+        objectName = null;
+    }
+
+    public MetricsRegistry getRegistry()
+    {
+        return registry;
+    }
+
+    public void stepCompleted(int step, Field field)
+    {
+        stepLatency.record(perf.getCurrentStepNanos());
+        steps.increment();
+        countField(field);
+        if(step % VEGETATION_EVERY == 0) vegetationMean = field.getMeanVegetation();
+    }
+
+    private void countField(Field field)
+    {
+        int[] counts = new int[population.length];
+        int total = 0, sick = 0;
+        for(Dinosaur d : field.getDinosaurs()) {
+            if(!d.isAlive()) continue;
+            counts[d.getSpeciesType().ordinal()]++;
+            total++;
+            if(d.isInfected()) sick++;
+        }
+
+        System.arraycopy(counts, 0, population, 0, counts.length);
+        totalPopulation = total;
+        infected = sick;
+    }
+
+    private static synchronized int nextId()
+    {
+        return nextId++;
+    }
+}
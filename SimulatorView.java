@@ -1,62 +1,104 @@
 import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import javax.swing.*;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.function.IntConsumer;
 
 /*
  * UI window that draws the field as a grid of colours.
  * Also shows a legend with counts and infected counts.
  * Night mode darkens everything and infected dinos get a purple-ish tint.
+ * The grid can be zoomed (mouse wheel) and panned (drag); double-click fits it back
+ * to the window. When cells get smaller than a pixel it draws from a FieldMipmap.
+ * Normally only the cells the field marked as dirty get recoloured and repainted.
+ * Pressing P over the grid toggles a perf overlay (steps/sec, phase times, alloc, GC); the
+ * on/off state is a ButtonModel, so a checkbox elsewhere can share it and stay in step.
+ * Under the step label there's a timeline slider for scrubbing back through recent steps
+ * (the Simulator hands it a RewindBuffer's range), hidden until something wires it up.
  */
 public class SimulatorView extends JFrame
 {
-    private static final Color GRID_BORDER_DAY = Color.lightGray;
-
     private static final Color NIGHT_EMPTY_COLOR = new Color(20, 20, 20);
-    private static final Color NIGHT_GRID_BORDER = new Color(40, 40, 40);
     private static final Color NIGHT_TEXT_COLOR = new Color(230, 230, 230);
 
-    private static final Color INFECTION_TINT = new Color(160, 60, 200);
-    private static final float INFECTION_BLEND = 0.45f;
-
     private final JLabel stepLabel;
     private final FieldView fieldView;
     private final JPanel legendPanel;
 
-    private final Map<Class<?>, Color> colors;
+    private final FieldPalette palette;
     private final FieldStats stats;
 
+    private final FieldMipmap mipmap;
+    private int lastShownStep = -1;
+
+    private PerfMonitor perfMonitor;
+    private final ButtonModel perfOverlayModel = new JToggleButton.ToggleButtonModel();
+    private volatile boolean perfOverlayVisible = false;
+
     private final Map<Class<?>, Integer> stepCounts = new HashMap<>();
     private final Map<Class<?>, Integer> infectedCounts = new HashMap<>();
 
+    // legend is built once, these are the bits that get recoloured/relabelled
+    private static final int[] VEG_KEY_VALUES = {0, 25, 50, 75, 100};
+    private final Map<Class<?>, LegendEntry> legendEntries = new LinkedHashMap<>();
+    private final List<JComponent> themedPanels = new ArrayList<>();
+    private final List<JLabel> themedLabels = new ArrayList<>();
+    private final List<JSeparator> legendSeparators = new ArrayList<>();
+    private final List<JLabel> vegKeySwatches = new ArrayList<>();
+    private Boolean legendNight = null;
+
+    // rewind timeline (scrubbing pauses the run, "Resume here" carries on from the shown step)
+    private final JPanel timelinePanel;
+    private final JSlider timeline = new JSlider(0, 0, 0);
+    private final JButton resumeButton = new JButton("Resume here");
+    private final JButton liveButton = new JButton("Live");
+    private boolean updatingTimeline = false;
+
     // Makes the window and sets up the grid + legend layout
     public SimulatorView(int height, int width)
     {
         stats = new FieldStats();
-        colors = new LinkedHashMap<>();
-
-        // base colours (I just picked ones that look different)
-        setColor(Iguanadon.class, Color.orange);
-        setColor(Allosaurus.class, Color.blue);
-        setColor(Carnotaurus.class, Color.red);
-        setColor(Dilophosaurus.class, Color.cyan);
-        setColor(Diabloceratops.class, Color.gray);
-        setColor(Ankylosaurus.class, Color.pink);
+        palette = new FieldPalette();
 
         setTitle("Dinosaur Ecosystem Simulation");
         stepLabel = new JLabel("Step: 0", JLabel.CENTER);
 
         setLocation(100, 50);
 
+        mipmap = new FieldMipmap(height, width);
         fieldView = new FieldView(height, width);
+        perfOverlayModel.addItemListener(e -> {
+            perfOverlayVisible = perfOverlayModel.isSelected();
+            fieldView.repaint();
+        });
 
         legendPanel = new JPanel();
         legendPanel.setLayout(new BoxLayout(legendPanel, BoxLayout.Y_AXIS));
         legendPanel.setOpaque(true);
+        buildLegend();
+
+        timelinePanel = buildTimeline();
+        timelinePanel.setVisible(false);
+
+        JPanel top = new JPanel(new BorderLayout());
+        top.add(stepLabel, BorderLayout.NORTH);
+        top.add(timelinePanel, BorderLayout.SOUTH);
 
         Container contents = getContentPane();
-        contents.add(stepLabel, BorderLayout.NORTH);
+        contents.add(top, BorderLayout.NORTH);
         contents.add(fieldView, BorderLayout.CENTER);
         contents.add(legendPanel, BorderLayout.SOUTH);
 
@@ -67,15 +109,88 @@ public class SimulatorView extends JFrame
     // Sets base colour for a species
     public void setColor(Class<?> dinosaurClass, Color color)
     {
-        colors.put(dinosaurClass, color);
+        palette.setColor(dinosaurClass, color);
     }
 
     // Gets base colour (fallback to grey if missing)
     private Color getColor(Class<?> dinosaurClass)
     {
-        Color col = colors.get(dinosaurClass);
-        if(col == null) return Color.gray;
-        return col;
+        return palette.getColor(dinosaurClass);
+    }
+
+    // Where the perf overlay gets its numbers from
+    public void setPerfMonitor(PerfMonitor monitor)
+    {
+        perfMonitor = monitor;
+    }
+
+    // Hooks the timeline up: onScrub shows a step, onResume carries on from it, onLive goes back to now
+    public void setTimelineHandlers(IntConsumer onScrub, IntConsumer onResume, Runnable onLive)
+    {
+        timeline.addChangeListener(e -> {
+            if(updatingTimeline) return;
+            onScrub.accept(timeline.getValue());
+        });
+        resumeButton.addActionListener(e -> {
+            onResume.accept(timeline.getValue());
+        });
+        liveButton.addActionListener(e -> {
+            setSliderValue(timeline.getMaximum());
+            onLive.run();
+        });
+        SwingUtilities.invokeLater(() -> timelinePanel.setVisible(true));
+    }
+
+    // Steps the timeline can reach (safe to call from the sim thread)
+    public void setTimelineRange(int first, int last)
+    {
+        SwingUtilities.invokeLater(() -> {
+            updatingTimeline = true;
+            timeline.setMinimum(Math.max(0, first));
+            timeline.setMaximum(Math.max(0, last));
+            updatingTimeline = false;
+
+            // a new step means the run is going again, so follow it (unless mid-drag)
+            if(!timeline.getValueIsAdjusting()) setSliderValue(timeline.getMaximum());
+        });
+    }
+
+    private void setSliderValue(int value)
+    {
+        updatingTimeline = true;
+        timeline.setValue(value);
+        updatingTimeline = false;
+    }
+
+    private JPanel buildTimeline()
+    {
+        JPanel panel = new JPanel(new BorderLayout(6, 0));
+        panel.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+        panel.add(new JLabel("Rewind:"), BorderLayout.WEST);
+        panel.add(timeline, BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 4, 0));
+        buttons.add(resumeButton);
+        buttons.add(liveButton);
+        panel.add(buttons, BorderLayout.EAST);
+        return panel;
+    }
+
+    // Shows/hides the perf overlay (safe from any thread)
+    public void setPerfOverlayVisible(boolean visible)
+    {
+        SwingUtilities.invokeLater(() -> perfOverlayModel.setSelected(visible));
+    }
+
+    // The overlay's on/off state, for a checkbox to use as its model
+    public ButtonModel getPerfOverlayModel()
+    {
+        return perfOverlayModel;
+    }
+
+    public boolean isPerfOverlayVisible()
+    {
+        return perfOverlayVisible;
     }
 
     // Simple overload (defaults)
@@ -99,195 +214,228 @@ public class SimulatorView extends JFrame
         stepCounts.clear();
         infectedCounts.clear();
 
-        fieldView.preparePaint(night);
-
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                Location loc = new Location(row, col);
-                Dinosaur d = field.getDinosaurAt(loc);
+        // counts come from the live list so a partial redraw doesn't need to visit every cell
+        for(Dinosaur d : field.getDinosaurs()) {
+            stats.incrementCount(d.getClass());
+            stepCounts.put(d.getClass(), stepCounts.getOrDefault(d.getClass(), 0) + 1);
 
-                if(d != null) {
-                    stats.incrementCount(d.getClass());
+            if(d.isInfected()) {
+                infectedCounts.put(d.getClass(), infectedCounts.getOrDefault(d.getClass(), 0) + 1);
+            }
+        }
 
-                    stepCounts.put(d.getClass(), stepCounts.getOrDefault(d.getClass(), 0) + 1);
+        // only redraw changed cells if we showed the step right before this one
+        BitSet dirty = field.getDirtyCells();
+        boolean partial = dirty != null && step == lastShownStep + 1 && night == fieldView.night;
+        lastShownStep = step;
 
-                    if(d.isInfected()) {
-                        infectedCounts.put(d.getClass(), infectedCounts.getOrDefault(d.getClass(), 0) + 1);
-                    }
+        synchronized(fieldView) {
+            fieldView.night = night;
 
-                    fieldView.drawMark(col, row, getColorForDino(d));
+            if(partial) {
+                for(int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+                    updateCell(field, i / field.getWidth(), i % field.getWidth(), night);
                 }
-                else {
-                    int veg = field.getVegetationAt(loc);
-                    fieldView.drawMark(col, row, getVegetationColor(veg, night));
+                mipmap.refresh(field, dirty);
+            }
+            else {
+                mipmap.clear();
+                for(int row = 0; row < field.getDepth(); row++) {
+                    for(int col = 0; col < field.getWidth(); col++) {
+                        int type = updateCell(field, row, col, night);
+                        mipmap.addCell(row, col, type, field.getVegetationAt(new Location(row, col)));
+                    }
                 }
+                mipmap.buildUpperLevels();
             }
         }
 
         stats.countFinished();
         updateLegend(night);
 
-        fieldView.repaint();
-    }
-
-    // Final colour for a dino = base colour + sex brightness + infection tint
-    private Color getColorForDino(Dinosaur dino)
-    {
-        Color base = getColor(dino.getClass());
-
-        float factor = dino.isFemale() ? 1.30f : 0.80f;
-        Color sexCol = adjustBrightness(base, factor);
-
-        if(dino.isInfected()) {
-            return blend(sexCol, INFECTION_TINT, INFECTION_BLEND);
+        if(partial) {
+            fieldView.renderCells(dirty);
         }
-        return sexCol;
+        else {
+            fieldView.render();
+            fieldView.repaint();
+        }
+
+        // partial repaints don't cover the overlay box, so ask for it separately
+        if(perfOverlayVisible) fieldView.repaintOverlay();
     }
 
-    // Turns veg amount (0..100) into a colour (night is darker)
-    private Color getVegetationColor(int veg, boolean night)
+    // Stores the colour of one cell, returns the species ordinal there (-1 if empty)
+    private int updateCell(Field field, int row, int col, boolean night)
     {
-        float t = Math.max(0f, Math.min(1f, veg / 100f));
+        Location loc = new Location(row, col);
+        Dinosaur d = field.getDinosaurAt(loc);
+        int index = row * field.getWidth() + col;
 
-        float hue = 0.10f + (0.33f - 0.10f) * t;
-        float sat = 0.10f + 0.75f * t;
-        float bri = 0.10f + 0.80f * t;
-
-        if(night) bri *= 0.60f;
+        if(d != null) {
+            fieldView.cellColors[index] = palette.getDinosaurRGB(d);
+            return d.getSpeciesType().ordinal();
+        }
 
-        return Color.getHSBColor(hue, sat, clamp01(bri));
+        fieldView.cellColors[index] = palette.getVegetationRGB(field.getVegetationAt(loc), night);
+        return -1;
     }
 
-    // Rebuilds the legend panel (counts change every frame)
-    private void updateLegend(boolean night)
+    // Builds the legend once (rows, swatches and labels are kept and updated in place)
+    private void buildLegend()
     {
-        legendPanel.removeAll();
-        legendPanel.setBackground(night ? NIGHT_EMPTY_COLOR : Color.white);
-
         JPanel carnRow = new JPanel(new GridLayout(1, 3, 12, 0));
         JPanel herbRow = new JPanel(new GridLayout(1, 3, 12, 0));
-
         carnRow.setOpaque(true);
         herbRow.setOpaque(true);
-        carnRow.setBackground(night ? NIGHT_EMPTY_COLOR : Color.white);
-        herbRow.setBackground(night ? NIGHT_EMPTY_COLOR : Color.white);
+        themedPanels.add(carnRow);
+        themedPanels.add(herbRow);
+
+        carnRow.add(makeLegendItem("Allosaurus", Allosaurus.class));
+        carnRow.add(makeLegendItem("Carnotaurus", Carnotaurus.class));
+        carnRow.add(makeLegendItem("Dilophosaurus", Dilophosaurus.class));
+
+        herbRow.add(makeLegendItem("Iguanadon", Iguanadon.class));
+        herbRow.add(makeLegendItem("Diabloceratops", Diabloceratops.class));
+        herbRow.add(makeLegendItem("Ankylosaurus", Ankylosaurus.class));
+
+        legendPanel.add(wrapWithPadding(carnRow, 4, 6, 4, 6));
+        legendPanel.add(makeLegendSeparator());
+        legendPanel.add(wrapWithPadding(herbRow, 4, 6, 4, 6));
+        legendPanel.add(makeLegendSeparator());
+        legendPanel.add(wrapWithPadding(makeVegetationLegendRow(), 4, 6, 6, 6));
+    }
 
-        carnRow.add(makeLegendItem("Allosaurus", Allosaurus.class, night));
-        carnRow.add(makeLegendItem("Carnotaurus", Carnotaurus.class, night));
-        carnRow.add(makeLegendItem("Dilophosaurus", Dilophosaurus.class, night));
+    // Updates legend counts/colours, only touching labels whose value actually changed
+    private void updateLegend(boolean night)
+    {
+        if(legendNight == null || legendNight != night) {
+            applyLegendTheme(night);
+            legendNight = night;
+        }
 
-        JSeparator sep1 = new JSeparator(SwingConstants.HORIZONTAL);
-        sep1.setForeground(night ? NIGHT_GRID_BORDER : GRID_BORDER_DAY);
-        sep1.setMaximumSize(new Dimension(Integer.MAX_VALUE, 1));
+        for(LegendEntry entry : legendEntries.values()) {
+            int count = stepCounts.getOrDefault(entry.speciesClass, 0);
+            int inf = infectedCounts.getOrDefault(entry.speciesClass, 0);
 
-        herbRow.add(makeLegendItem("Iguanadon", Iguanadon.class, night));
-        herbRow.add(makeLegendItem("Diabloceratops", Diabloceratops.class, night));
-        herbRow.add(makeLegendItem("Ankylosaurus", Ankylosaurus.class, night));
+            if(count != entry.shownCount || inf != entry.shownInfected) {
+                entry.shownCount = count;
+                entry.shownInfected = inf;
+                entry.text.setText(" " + entry.name + ": " + count + " (Inf: " + inf + ")");
+            }
+        }
+    }
 
-        JPanel vegRow = makeVegetationLegendRow(night);
+    // Day/night recolour of the legend (only runs when time of day flips)
+    private void applyLegendTheme(boolean night)
+    {
+        Color background = night ? NIGHT_EMPTY_COLOR : Color.white;
+        Color text = night ? NIGHT_TEXT_COLOR : Color.black;
+        Color border = night ? FieldPalette.NIGHT_GRID_BORDER : FieldPalette.GRID_BORDER_DAY;
 
-        legendPanel.add(wrapWithPadding(carnRow, 4, 6, 4, 6, night));
-        legendPanel.add(sep1);
-        legendPanel.add(wrapWithPadding(herbRow, 4, 6, 4, 6, night));
+        legendPanel.setBackground(background);
+        for(JComponent panel : themedPanels) panel.setBackground(background);
+        for(JLabel label : themedLabels) label.setForeground(text);
+        for(JSeparator sep : legendSeparators) sep.setForeground(border);
 
-        JSeparator sep2 = new JSeparator(SwingConstants.HORIZONTAL);
-        sep2.setForeground(night ? NIGHT_GRID_BORDER : GRID_BORDER_DAY);
-        sep2.setMaximumSize(new Dimension(Integer.MAX_VALUE, 1));
+        for(int i = 0; i < vegKeySwatches.size(); i++) {
+            vegKeySwatches.get(i).setForeground(palette.getVegetationColor(VEG_KEY_VALUES[i], night));
+        }
 
-        legendPanel.add(sep2);
-        legendPanel.add(wrapWithPadding(vegRow, 4, 6, 6, 6, night));
+        for(LegendEntry entry : legendEntries.values()) {
+            Color base = getColor(entry.speciesClass);
+            entry.text.setForeground(night ? adjustBrightness(base, 1.20f) : base);
+        }
 
-        legendPanel.revalidate();
         legendPanel.repaint();
     }
 
+    // Thin line between legend rows
+    private JSeparator makeLegendSeparator()
+    {
+        JSeparator sep = new JSeparator(SwingConstants.HORIZONTAL);
+        sep.setMaximumSize(new Dimension(Integer.MAX_VALUE, 1));
+        legendSeparators.add(sep);
+        return sep;
+    }
+
     // Builds the vegetation key row
-    private JPanel makeVegetationLegendRow(boolean night)
+    private JPanel makeVegetationLegendRow()
     {
         JPanel row = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 0));
         row.setOpaque(true);
-        row.setBackground(night ? NIGHT_EMPTY_COLOR : Color.white);
+        themedPanels.add(row);
 
         JLabel label = new JLabel("Vegetation:");
-        label.setForeground(night ? NIGHT_TEXT_COLOR : Color.black);
+        themedLabels.add(label);
         row.add(label);
 
-        addVegKey(row, 0, night);
-        addVegKey(row, 25, night);
-        addVegKey(row, 50, night);
-        addVegKey(row, 75, night);
-        addVegKey(row, 100, night);
+        for(int value : VEG_KEY_VALUES) {
+            addVegKey(row, value);
+        }
 
         return row;
     }
 
     // Adds a coloured square + number for one veg level
-    private void addVegKey(JPanel row, int value, boolean night)
+    private void addVegKey(JPanel row, int value)
     {
-        Color col = getVegetationColor(value, night);
-
-        JLabel swatch = new JLabel("■");
-        swatch.setForeground(col);
-        swatch.setFont(swatch.getFont().deriveFont(Font.BOLD, 14f));
+        JLabel swatch = makeSwatch(palette.getVegetationColor(value, false));
+        vegKeySwatches.add(swatch);
 
         JLabel text = new JLabel(String.valueOf(value));
-        text.setForeground(night ? NIGHT_TEXT_COLOR : Color.black);
+        themedLabels.add(text);
 
         JPanel item = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 0));
         item.setOpaque(true);
-        item.setBackground(night ? NIGHT_EMPTY_COLOR : Color.white);
+        themedPanels.add(item);
         item.add(swatch);
         item.add(text);
 
         row.add(item);
     }
 
-    // Creates one legend entry with male/female colour and counts
-    private JPanel makeLegendItem(String name, Class<?> speciesClass, boolean night)
+    // Creates one legend entry with male/female colour and a count label we update later
+    private JPanel makeLegendItem(String name, Class<?> speciesClass)
     {
         Color base = getColor(speciesClass);
-        Color maleColor = adjustBrightness(base, 0.80f);
-        Color femaleColor = adjustBrightness(base, 1.30f);
-
-        int count = stepCounts.getOrDefault(speciesClass, 0);
-        int inf = infectedCounts.getOrDefault(speciesClass, 0);
 
         JPanel item = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 0));
         item.setOpaque(true);
-        item.setBackground(night ? NIGHT_EMPTY_COLOR : Color.white);
-
-        JLabel maleSwatch = new JLabel("■");
-        maleSwatch.setForeground(maleColor);
-        maleSwatch.setFont(maleSwatch.getFont().deriveFont(Font.BOLD, 14f));
+        themedPanels.add(item);
 
         JLabel maleText = new JLabel("♂");
-        maleText.setForeground(night ? NIGHT_TEXT_COLOR : Color.black);
-
-        JLabel femaleSwatch = new JLabel("■");
-        femaleSwatch.setForeground(femaleColor);
-        femaleSwatch.setFont(femaleSwatch.getFont().deriveFont(Font.BOLD, 14f));
-
         JLabel femaleText = new JLabel("♀");
-        femaleText.setForeground(night ? NIGHT_TEXT_COLOR : Color.black);
+        themedLabels.add(maleText);
+        themedLabels.add(femaleText);
 
-        JLabel speciesText = new JLabel(" " + name + ": " + count + " (Inf: " + inf + ")");
-        speciesText.setForeground(night ? adjustBrightness(base, 1.20f) : base);
+        JLabel speciesText = new JLabel(" " + name + ": 0 (Inf: 0)");
 
-        item.add(maleSwatch);
+        item.add(makeSwatch(adjustBrightness(base, 0.80f)));
         item.add(maleText);
-        item.add(femaleSwatch);
+        item.add(makeSwatch(adjustBrightness(base, 1.30f)));
         item.add(femaleText);
         item.add(speciesText);
 
+        legendEntries.put(speciesClass, new LegendEntry(name, speciesClass, speciesText));
         return item;
     }
 
+    // Coloured square used in the legend
+    private JLabel makeSwatch(Color color)
+    {
+        JLabel swatch = new JLabel("■");
+        swatch.setForeground(color);
+        swatch.setFont(swatch.getFont().deriveFont(Font.BOLD, 14f));
+        return swatch;
+    }
+
     // Wraps rows so spacing looks less cramped
-    private JPanel wrapWithPadding(JPanel row, int top, int left, int bottom, int right, boolean night)
+    private JPanel wrapWithPadding(JPanel row, int top, int left, int bottom, int right)
     {
         JPanel wrapper = new JPanel(new BorderLayout());
         wrapper.setOpaque(true);
-        wrapper.setBackground(night ? NIGHT_EMPTY_COLOR : Color.white);
+        themedPanels.add(wrapper);
         wrapper.setBorder(BorderFactory.createEmptyBorder(top, left, bottom, right));
         wrapper.add(row, BorderLayout.CENTER);
         return wrapper;
@@ -296,93 +444,366 @@ public class SimulatorView extends JFrame
     // Brightness helper (HSB makes it easy)
     private Color adjustBrightness(Color color, float factor)
     {
-        float[] hsb = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), null);
-        float newB = clamp01(hsb[2] * factor);
-        return Color.getHSBColor(hsb[0], hsb[1], newB);
+        return FieldPalette.adjustBrightness(color, factor);
     }
 
-    // clamp 0..1
-    private float clamp01(float v)
+    /*
+     * One species row in the legend.
+     * Remembers what is currently shown so unchanged labels are left alone.
+     */
+    private static class LegendEntry
     {
-        return Math.max(0f, Math.min(1f, v));
-    }
+        private final String name;
+        private final Class<?> speciesClass;
+        private final JLabel text;
+        private int shownCount = -1;
+        private int shownInfected = -1;
 
-    // Basic linear blend
-    private Color blend(Color a, Color b, float t)
-    {
-        t = clamp01(t);
-        int r = (int)(a.getRed()   * (1 - t) + b.getRed()   * t);
-        int g = (int)(a.getGreen() * (1 - t) + b.getGreen() * t);
-        int bl = (int)(a.getBlue()  * (1 - t) + b.getBlue()  * t);
-        return new Color(r, g, bl);
+        LegendEntry(String name, Class<?> speciesClass, JLabel text)
+        {
+            this.name = name;
+            this.speciesClass = speciesClass;
+            this.text = text;
+        }
     }
 
     /*
      * Panel that actually draws the grid onto an image buffer.
      * (Buffering makes repaint faster, otherwise Swing is kinda slow.)
+     * It is a viewport: only the cells under the window get drawn, one lookup per pixel,
+     * so the cost depends on the window size and not on how big the world is.
      */
     private class FieldView extends JPanel
     {
         private final int GRID_VIEW_SCALING_FACTOR = 6;
+        private final int MAX_PREFERRED_WIDTH = 960;
+        private final int MAX_PREFERRED_HEIGHT = 720;
+        private final double MAX_ZOOM = 40.0;
+        private final double ZOOM_STEP = 1.25;
 
         private final int gridWidth, gridHeight;
-        private int xScale, yScale;
-        private Dimension size;
-        private Graphics g;
-        private Image fieldImage;
 
-        // Stores the grid size in cells
+        // latest colour per cell (row * gridWidth + col), filled by showStatus
+        private final int[] cellColors;
+        private boolean night;
+
+        // viewport: pixels per cell and which cell coordinate sits at the top-left pixel
+        private double zoom = GRID_VIEW_SCALING_FACTOR;
+        private double originX, originY;
+        private boolean fitToWindow = true;
+
+        private BufferedImage fieldImage;
+        private int[] pixels;
+
+        // which cell each screen column/row lands on (-1 = outside the world)
+        private int[] pixelCol, pixelRow;
+        private boolean[] colEdge, rowEdge;
+
+        private int dragX, dragY;
+
+        private final int OVERLAY_X = 8, OVERLAY_Y = 8;
+        private final int OVERLAY_WIDTH = 250, OVERLAY_HEIGHT = 86;
+
+        // Stores the grid size in cells and hooks up zoom/pan
         public FieldView(int height, int width)
         {
             gridHeight = height;
             gridWidth = width;
-            size = new Dimension(0, 0);
+            cellColors = new int[height * width];
+
+            MouseAdapter mouse = new MouseAdapter() {
+                public void mousePressed(MouseEvent e)
+                {
+                    requestFocusInWindow();
+                    dragX = e.getX();
+                    dragY = e.getY();
+                }
+
+                public void mouseDragged(MouseEvent e)
+                {
+                    pan(e.getX() - dragX, e.getY() - dragY);
+                    dragX = e.getX();
+                    dragY = e.getY();
+                }
+
+                public void mouseClicked(MouseEvent e)
+                {
+                    if(e.getClickCount() == 2) {
+                        fitToWindow = true;
+                        refresh();
+                    }
+                }
+
+                public void mouseWheelMoved(MouseWheelEvent e)
+                {
+                    double factor = Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation());
+                    zoomAt(e.getX(), e.getY(), factor);
+                }
+            };
+            addMouseListener(mouse);
+            addMouseMotionListener(mouse);
+            addMouseWheelListener(mouse);
+
+            setFocusable(true);
+            addKeyListener(new KeyAdapter() {
+                public void keyPressed(KeyEvent e)
+                {
+                    if(e.getKeyCode() == KeyEvent.VK_P) {
+                        perfOverlayModel.setSelected(!perfOverlayModel.isSelected());
+                    }
+                }
+            });
+
+            addComponentListener(new ComponentAdapter() {
+                public void componentResized(ComponentEvent e)
+                {
+                    refresh();
+                }
+            });
         }
 
-        // Swing asks this when laying out the frame
+        // Swing asks this when laying out the frame (capped so huge worlds still fit on screen)
         public Dimension getPreferredSize()
         {
-            return new Dimension(gridWidth * GRID_VIEW_SCALING_FACTOR,
-                    gridHeight * GRID_VIEW_SCALING_FACTOR);
+            return new Dimension(Math.min(gridWidth * GRID_VIEW_SCALING_FACTOR, MAX_PREFERRED_WIDTH),
+                    Math.min(gridHeight * GRID_VIEW_SCALING_FACTOR, MAX_PREFERRED_HEIGHT));
+        }
+
+        // Zooms by factor keeping the cell under (x, y) where it is
+        private synchronized void zoomAt(int x, int y, double factor)
+        {
+            double minZoom = Math.min(fitZoom(), 1.0) * 0.5;
+            double newZoom = Math.max(minZoom, Math.min(MAX_ZOOM, zoom * factor));
+
+            double cellX = originX + x / zoom;
+            double cellY = originY + y / zoom;
+            zoom = newZoom;
+            originX = cellX - x / zoom;
+            originY = cellY - y / zoom;
+
+            fitToWindow = false;
+            refresh();
+        }
+
+        // Moves the view by a pixel offset (dragging right shows cells further left)
+        private synchronized void pan(int dx, int dy)
+        {
+            originX -= dx / zoom;
+            originY -= dy / zoom;
+            fitToWindow = false;
+            refresh();
+        }
+
+        // Zoom that makes the whole world fit in the panel
+        private double fitZoom()
+        {
+            int w = Math.max(1, getWidth());
+            int h = Math.max(1, getHeight());
+            return Math.min(w / (double) gridWidth, h / (double) gridHeight);
         }
 
-        // Prepares the buffer + background
-        public void preparePaint(boolean night)
+        // Redraw from the stored cell colours (used after zoom/pan/resize)
+        private void refresh()
         {
-            if(!size.equals(getSize())) {
-                size = getSize();
-                fieldImage = fieldView.createImage(size.width, size.height);
-                g = fieldImage.getGraphics();
+            render();
+            repaint();
+        }
 
-                xScale = size.width / gridWidth;
-                if(xScale < 1) xScale = GRID_VIEW_SCALING_FACTOR;
+        // Draws the visible part of the world into the buffer
+        public synchronized void render()
+        {
+            int w = getWidth();
+            int h = getHeight();
+            if(w <= 0 || h <= 0) return;
+
+            if(fieldImage == null || fieldImage.getWidth() != w || fieldImage.getHeight() != h) {
+                fieldImage = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+                pixels = ((DataBufferInt) fieldImage.getRaster().getDataBuffer()).getData();
+                pixelCol = new int[w];
+                pixelRow = new int[h];
+                colEdge = new boolean[w];
+                rowEdge = new boolean[h];
+            }
 
-                yScale = size.height / gridHeight;
-                if(yScale < 1) yScale = GRID_VIEW_SCALING_FACTOR;
+            if(fitToWindow) {
+                zoom = fitZoom();
+                originX = (gridWidth - w / zoom) / 2;
+                originY = (gridHeight - h / zoom) / 2;
             }
 
-            g.setColor(night ? NIGHT_GRID_BORDER : GRID_BORDER_DAY);
-            g.fillRect(0, 0, size.width, size.height);
+            // keep at least a bit of the world on screen
+            originX = Math.max(-w / zoom + 1, Math.min(gridWidth - 1, originX));
+            originY = Math.max(-h / zoom + 1, Math.min(gridHeight - 1, originY));
+
+            boolean gridLines = zoom >= 3;
+            mapPixels(pixelCol, colEdge, originX, gridWidth, gridLines);
+            mapPixels(pixelRow, rowEdge, originY, gridHeight, gridLines);
+
+            int border = palette.getBorderRGB(night);
+            int level = levelForZoom();
+
+            if(level == 0) {
+                drawCells(w, h, border);
+            }
+            else {
+                drawBlocks(w, h, border, level);
+            }
         }
 
-        // Draws one cell
-        public void drawMark(int x, int y, Color color)
+        // Works out which cell each pixel column (or row) shows
+        private void mapPixels(int[] cells, boolean[] edges, double origin, int limit, boolean gridLines)
         {
-            g.setColor(color);
-            g.fillRect(x * xScale, y * yScale, xScale - 1, yScale - 1);
+            for(int p = 0; p < cells.length; p++) {
+                int cell = (int) Math.floor(origin + (p + 0.5) / zoom);
+                int nextCell = (int) Math.floor(origin + (p + 1.5) / zoom);
+
+                cells[p] = (cell >= 0 && cell < limit) ? cell : -1;
+                edges[p] = gridLines && nextCell != cell;
+            }
+        }
+
+        // 0 = draw real cells, otherwise the mipmap level whose blocks are about a pixel big
+        private int levelForZoom()
+        {
+            double cellsPerPixel = 1.0 / zoom;
+            if(cellsPerPixel < (1 << FieldMipmap.BASE_LEVEL)) return 0;
+
+            int level = 31 - Integer.numberOfLeadingZeros((int) cellsPerPixel);
+            return Math.min(mipmap.getTopLevel(), Math.max(mipmap.getBaseLevel(), level));
+        }
+
+        // One pixel = one cell lookup (cells smaller than a pixel just get sampled)
+        private void drawCells(int w, int h, int border)
+        {
+            for(int py = 0; py < h; py++) {
+                int row = pixelRow[py];
+                int offset = py * w;
+
+                for(int px = 0; px < w; px++) {
+                    int col = pixelCol[px];
+                    if(row < 0 || col < 0 || rowEdge[py] || colEdge[px]) {
+                        pixels[offset + px] = border;
+                    }
+                    else {
+                        pixels[offset + px] = cellColors[row * gridWidth + col];
+                    }
+                }
+            }
+        }
+
+        // Zoomed right out: each pixel shows its mipmap block (dominant species over mean veg)
+        private void drawBlocks(int w, int h, int border, int level)
+        {
+            for(int py = 0; py < h; py++) {
+                int row = pixelRow[py];
+                int offset = py * w;
+
+                for(int px = 0; px < w; px++) {
+                    int col = pixelCol[px];
+                    if(row < 0 || col < 0) {
+                        pixels[offset + px] = border;
+                        continue;
+                    }
+
+                    pixels[offset + px] = palette.getBlockRGB(mipmap, level, row >> level, col >> level, night);
+                }
+            }
+        }
+
+        // Redraws just the dirty cells and repaints the rectangle around them
+        public void renderCells(BitSet dirty)
+        {
+            int minX, minY, maxX, maxY;
+
+            synchronized(this) {
+                if(fieldImage == null || levelForZoom() != 0
+                        || fieldImage.getWidth() != getWidth() || fieldImage.getHeight() != getHeight()) {
+                    render();
+                    repaint();
+                    return;
+                }
+
+                int w = fieldImage.getWidth();
+                int h = fieldImage.getHeight();
+                int border = palette.getBorderRGB(night);
+                minX = w; minY = h; maxX = -1; maxY = -1;
+
+                for(int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+                    int row = i / gridWidth;
+                    int col = i % gridWidth;
+
+                    // rough pixel range of the cell (one extra each side, the lookup tables decide)
+                    int x0 = Math.max(0, (int) Math.floor((col - originX) * zoom) - 1);
+                    int x1 = Math.min(w, (int) Math.ceil((col + 1 - originX) * zoom) + 1);
+                    int y0 = Math.max(0, (int) Math.floor((row - originY) * zoom) - 1);
+                    int y1 = Math.min(h, (int) Math.ceil((row + 1 - originY) * zoom) + 1);
+                    if(x0 >= x1 || y0 >= y1) continue;
+
+                    int color = cellColors[i];
+                    for(int py = y0; py < y1; py++) {
+                        if(pixelRow[py] != row) continue;
+                        int offset = py * w;
+                        for(int px = x0; px < x1; px++) {
+                            if(pixelCol[px] != col) continue;
+                            pixels[offset + px] = (rowEdge[py] || colEdge[px]) ? border : color;
+                        }
+                    }
+
+                    minX = Math.min(minX, x0);
+                    minY = Math.min(minY, y0);
+                    maxX = Math.max(maxX, x1);
+                    maxY = Math.max(maxY, y1);
+                }
+            }
+
+            if(maxX >= 0) {
+                repaint(minX, minY, maxX - minX, maxY - minY);
+            }
+        }
+
+        // Asks Swing to redraw just the overlay corner
+        public void repaintOverlay()
+        {
+            repaint(OVERLAY_X, OVERLAY_Y, OVERLAY_WIDTH + 1, OVERLAY_HEIGHT + 1);
         }
 
         // Standard paint hook
         public void paintComponent(Graphics g)
         {
-            if(fieldImage != null) {
-                Dimension currentSize = getSize();
-                if(size.equals(currentSize)) {
+            super.paintComponent(g);
+            synchronized(this) {
+                if(fieldImage != null) {
                     g.drawImage(fieldImage, 0, 0, null);
-                } else {
-                    g.drawImage(fieldImage, 0, 0, currentSize.width, currentSize.height, null);
                 }
             }
+
+            if(perfOverlayVisible && perfMonitor != null) {
+                paintPerfOverlay(g);
+            }
+        }
+
+        // Translucent box with the sliding-window numbers from the PerfMonitor
+        private void paintPerfOverlay(Graphics g)
+        {
+            PerfMonitor p = perfMonitor;
+
+            g.setColor(new Color(0, 0, 0, 170));
+            g.fillRect(OVERLAY_X, OVERLAY_Y, OVERLAY_WIDTH, OVERLAY_HEIGHT);
+            g.setColor(Color.white);
+            g.setFont(g.getFont().deriveFont(11f));
+
+            double alloc = p.getMeanAllocatedBytes();
+            String allocText = (alloc < 0) ? "n/a" : String.format("%.1f KB", alloc / 1024.0);
+
+            int x = OVERLAY_X + 8;
+            int y = OVERLAY_Y + 16;
+            g.drawString(String.format("Steps/sec: %.1f  (last %d steps)", p.getStepsPerSecond(), p.getSampleCount()), x, y);
+            g.drawString(String.format("disease %.2f ms   act %.2f ms",
+                    p.getMeanPhaseMillis(PerfMonitor.Phase.DISEASE), p.getMeanPhaseMillis(PerfMonitor.Phase.ACT)), x, y + 16);
+            g.drawString(String.format("veg %.2f ms   render %.2f ms",
+                    p.getMeanPhaseMillis(PerfMonitor.Phase.VEGETATION), p.getMeanPhaseMillis(PerfMonitor.Phase.RENDER)), x, y + 32);
+            g.drawString("alloc " + allocText + "/step   GC " + String.format("%.2f ms/step", p.getMeanGcMillis()), x, y + 48);
+            g.drawString("(P to hide)", x, y + 64);
         }
     }
-}
\ No newline at end of file
+}
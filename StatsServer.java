@@ -0,0 +1,402 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.DoubleSupplier;
+import java.util.zip.GZIPOutputStream;
+import javax.imageio.ImageIO;
+
+/*
+ * Small HTTP server for watching a (usually headless) run from a browser.
+ * Binds to 127.0.0.1 unless told otherwise.
+ *
+ *   GET /stats                 current metrics as JSON
+ *   GET /events                Server-Sent Events, one "step" event per step with populations
+ *   GET /frame?format=png&cell=2   the field as a PNG (cell = pixels per cell)
+ *   GET /frame?format=rle      species + vegetation grids, run-length encoded (see writeRle),
+ *                              gzipped too if the client sends Accept-Encoding: gzip
+ *
+ * The sim thread never waits on a client: each /events client has a small queue, and if it
+ * is full the oldest line is dropped. Frames are grabbed by the sim thread at the end of the
+ * next step only when someone asked for one; encoding happens on the http thread.
+ *
+ * Command line: java StatsServer depth width [port] [host]   (runs the sim until it dies out)
+ */
+public class StatsServer implements StepListener
+{
+    private static final int CLIENT_QUEUE = 64;
+    private static final int MAX_SSE_CLIENTS = 16;
+    private static final long FRAME_WAIT_MS = 500;
+
+    private final Simulator simulator;
+    private final MetricsRegistry registry;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final FieldPalette palette = new FieldPalette();
+
+    private final Set<BlockingQueue<String>> clients = new CopyOnWriteArraySet<>();
+    private volatile CompletableFuture<Frame> pendingFrame;
+    private volatile Frame lastFrame;
+
+    // A grabbed field: packed colours for PNG, species/vegetation bytes for RLE
+    private record Frame(int step, int depth, int width, int[] rgb, byte[] species, byte[] vegetation) { }
+
+    // Sets the server up (call start() to begin serving)
+    public StatsServer(Simulator simulator, String host, int port) throws IOException
+    {
+        this.simulator = simulator;
+        this.registry = simulator.getMetrics().getRegistry();
+
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        // SSE clients hold a thread each, so this can't be a small fixed pool
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "stats-http");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+
+        server.createContext("/stats", this::handleStats);
+        server.createContext("/events", this::handleEvents);
+        server.createContext("/frame", this::handleFrame);
+    }
+
+    public void start()
+    {
+        simulator.addStepListener(this);
+        server.start();
+    }
+
+    public void stop()
+    {
+        simulator.removeStepListener(this);
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    // Sim thread: push the step to SSE clients and grab a frame if one was asked for
+    public void stepCompleted(int step, Field field)
+    {
+        if(!clients.isEmpty()) {
+            String line = stepJson(step, field);
+            for(BlockingQueue<String> queue : clients) {
+                // drop oldest so a slow browser only loses old steps
+                while(!queue.offer(line)) queue.poll();
+            }
+        }
+
+        CompletableFuture<Frame> wanted = pendingFrame;
+        if(wanted != null && !wanted.isDone()) {
+            wanted.complete(capture(step, field));
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException
+    {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"step\":").append(simulator.getStep());
+        json.append(",\"timeOfDay\":\"").append(TimeManager.getTimeOfDay()).append('"');
+        json.append(",\"weather\":\"").append(WeatherManager.getWeather()).append('"');
+
+        for(Map.Entry<String, MetricsRegistry.LongCounter> e : registry.getCounters().entrySet()) {
+            json.append(",\"").append(e.getKey()).append("\":").append(e.getValue().get());
+        }
+        for(Map.Entry<String, DoubleSupplier> e : registry.getGauges().entrySet()) {
+            json.append(",\"").append(e.getKey()).append("\":").append(number(e.getValue().getAsDouble()));
+        }
+        for(Map.Entry<String, MetricsRegistry.Histogram> e : registry.getHistograms().entrySet()) {
+            MetricsRegistry.Histogram h = e.getValue();
+            json.append(",\"").append(e.getKey()).append("\":{")
+                .append("\"count\":").append(h.getCount())
+                .append(",\"mean\":").append(number(h.getMean()))
+                .append(",\"p50\":").append(h.getPercentile(0.50))
+                .append(",\"p99\":").append(h.getPercentile(0.99))
+                .append(",\"max\":").append(h.getMax()).append('}');
+        }
+        json.append('}');
+
+        send(exchange, 200, "application/json", json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void handleEvents(HttpExchange exchange) throws IOException
+    {
+        if(clients.size() >= MAX_SSE_CLIENTS) {
+            send(exchange, 503, "text/plain", "Too many event clients".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(CLIENT_QUEUE);
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+
+        clients.add(queue);
+        try(OutputStream out = exchange.getResponseBody()) {
+            while(true) {
+                String line = queue.poll(15, TimeUnit.SECONDS);
+                // comment line as a keep-alive, also how we notice the browser went away
+                String message = (line == null) ? ": ping\n\n" : "event: step\ndata: " + line + "\n\n";
+                out.write(message.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        }
+        catch(IOException | InterruptedException e) {
+            // client closed the connection or the server is stopping
+        }
+        finally {
+            clients.remove(queue);
+        }
+    }
+
+    private void handleFrame(HttpExchange exchange) throws IOException
+    {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String format = query.getOrDefault("format", "png");
+        int cell;
+        try {
+            cell = Math.max(1, Math.min(16, Integer.parseInt(query.getOrDefault("cell", "2"))));
+        }
+        catch(NumberFormatException e) {
+            send(exchange, 400, "text/plain", "cell must be a whole number".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        Frame frame = awaitFrame();
+        if(frame == null) {
+            send(exchange, 503, "text/plain", "No frame available".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if(format.equals("rle")) {
+            // runs of vegetation bands still repeat a lot, so gzip on top if the client takes it
+            String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean gzip = accept != null && accept.contains("gzip");
+            try(DataOutputStream out = new DataOutputStream(gzip ? new GZIPOutputStream(bytes) : bytes)) {
+                writeRle(frame, out);
+            }
+            if(gzip) exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            send(exchange, 200, "application/octet-stream", bytes.toByteArray());
+        }
+        else {
+            ImageIO.write(toImage(frame, cell), "png", bytes);
+            send(exchange, 200, "image/png", bytes.toByteArray());
+        }
+    }
+
+    /*
+     * Asks the sim thread for the next step's frame. If none comes in time and no step is in
+     * progress (paused), reads the field here; if a slow step is still going, hands back the
+     * last frame (null if there's never been one).
+     */
+    private Frame awaitFrame()
+    {
+        CompletableFuture<Frame> wanted;
+        synchronized(this) {
+            wanted = pendingFrame;
+            if(wanted == null || wanted.isDone()) {
+                wanted = new CompletableFuture<>();
+                pendingFrame = wanted;
+            }
+        }
+
+        try {
+            return wanted.get(FRAME_WAIT_MS, TimeUnit.MILLISECONDS);
+        }
+        catch(TimeoutException e) {
+            // only while no step can run, so the field isn't changing under us
+            Frame[] read = new Frame[1];
+            if(!simulator.readIfIdle(() -> read[0] = capture(simulator.getStep(), simulator.getField()))) {
+                return lastFrame;
+            }
+            wanted.complete(read[0]);
+            return read[0];
+        }
+        catch(Exception e) {
+            return null;
+        }
+    }
+
+    // Copies what's needed out of the field (palette isn't thread safe, hence synchronized)
+    private synchronized Frame capture(int step, Field field)
+    {
+        int depth = field.getDepth(), width = field.getWidth();
+        int[] rgb = new int[depth * width];
+        byte[] species = new byte[depth * width];
+        byte[] vegetation = new byte[depth * width];
+        boolean night = TimeManager.isNight();
+
+        for(int row = 0; row < depth; row++) {
+            for(int col = 0; col < width; col++) {
+                int i = row * width + col;
+                Location loc = new Location(row, col);
+                Dinosaur d = field.getDinosaurAt(loc);
+                int veg = field.getVegetationAt(loc);
+
+                vegetation[i] = (byte) Field.vegetationBucket(veg);
+                if(d != null) {
+                    species[i] = (byte) ((d.getSpeciesType().ordinal() + 1) | (d.isInfected() ? 0x80 : 0));
+                    rgb[i] = palette.getDinosaurRGB(d);
+                }
+                else {
+                    rgb[i] = palette.getVegetationRGB(veg, night);
+                }
+            }
+        }
+        Frame frame = new Frame(step, depth, width, rgb, species, vegetation);
+        lastFrame = frame;
+        return frame;
+    }
+
+    private static BufferedImage toImage(Frame frame, int cell)
+    {
+        BufferedImage image = new BufferedImage(frame.width() * cell, frame.depth() * cell, BufferedImage.TYPE_INT_RGB);
+        for(int row = 0; row < frame.depth(); row++) {
+            for(int col = 0; col < frame.width(); col++) {
+                int color = frame.rgb()[row * frame.width() + col];
+                for(int dy = 0; dy < cell; dy++) {
+                    for(int dx = 0; dx < cell; dx++) {
+                        image.setRGB(col * cell + dx, row * cell + dy, color);
+                    }
+                }
+            }
+        }
+        return image;
+    }
+
+    /*
+     * RLE frame layout (big-endian):
+     *   "DRLE", int step, int depth, int width,
+     *   species plane, vegetation plane
+     * Each plane is row-major runs of (varint runLength, byte value) ending at depth*width cells
+     * (varint = 7 bits per byte, low bits first, high bit set means more bytes follow).
+     * Species byte: 0 = empty, else SpeciesType ordinal + 1, with 0x80 set if infected.
+     * Vegetation byte: Field.vegetationBucket of the tile.
+     */
+    private static void writeRle(Frame frame, DataOutputStream out) throws IOException
+    {
+        out.writeBytes("DRLE");
+        out.writeInt(frame.step());
+        out.writeInt(frame.depth());
+        out.writeInt(frame.width());
+        writeRuns(frame.species(), out);
+        writeRuns(frame.vegetation(), out);
+        out.flush();
+    }
+
+    private static void writeRuns(byte[] plane, DataOutputStream out) throws IOException
+    {
+        int i = 0;
+        while(i < plane.length) {
+            byte value = plane[i];
+            int run = 1;
+            while(i + run < plane.length && plane[i + run] == value) run++;
+            writeVarint(run, out);
+            out.writeByte(value);
+            i += run;
+        }
+    }
+
+    private static void writeVarint(int value, DataOutputStream out) throws IOException
+    {
+        while((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    // {"step":N,"population":{...},"infected":N} for the event stream
+    private static String stepJson(int step, Field field)
+    {
+        int[] counts = new int[SpeciesType.values().length];
+        int infected = 0;
+        for(Dinosaur d : field.getDinosaurs()) {
+            if(!d.isAlive()) continue;
+            counts[d.getSpeciesType().ordinal()]++;
+            if(d.isInfected()) infected++;
+        }
+
+        StringBuilder json = new StringBuilder("{\"step\":").append(step).append(",\"population\":{");
+        for(SpeciesType type : SpeciesType.values()) {
+            if(type.ordinal() > 0) json.append(',');
+            json.append('"').append(type.name()).append("\":").append(counts[type.ordinal()]);
+        }
+        json.append("},\"infected\":").append(infected).append('}');
+        return json.toString();
+    }
+
+    private static String number(double v)
+    {
+        if(Double.isNaN(v) || Double.isInfinite(v)) return "null";
+        return Double.toString(v);
+    }
+
+    private static Map<String, String> parseQuery(String query)
+    {
+        Map<String, String> params = new HashMap<>();
+        if(query == null) return params;
+        for(String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if(eq > 0) params.put(pair.substring(0, eq), pair.substring(eq + 1));
+        }
+        return params;
+    }
+
+    private static void send(HttpExchange exchange, int status, String type, byte[] body) throws IOException
+    {
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.sendResponseHeaders(status, body.length);
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // Headless run with the server attached
+    public static void main(String[] args) throws IOException
+    {
+        System.setProperty("java.awt.headless", "true");
+
+        if(args.length < 2) {
+            System.out.println("Usage: StatsServer depth width [port] [host]");
+            return;
+        }
+
+        int depth = Integer.parseInt(args[0]);
+        int width = Integer.parseInt(args[1]);
+        int port = (args.length > 2) ? Integer.parseInt(args[2]) : 8080;
+        String host = (args.length > 3) ? args[3] : "127.0.0.1";
+
+        Simulator sim = new Simulator(depth, width, true);
+        StatsServer server = new StatsServer(sim, host, port);
+        server.start();
+        System.out.println("Serving on http://" + host + ":" + server.getPort() + "/stats");
+
+        while(sim.getField().isViable()) {
+            sim.simulateOneStep();
+        }
+        System.out.println("World died out at step " + sim.getStep());
+        server.stop();
+    }
+}
@@ -0,0 +1,17 @@
+/*
+ * Somewhere per-step population stats go (console, a CSV file, ...).
+ * Simulator.reportStats hands one StepStats per step to its sink.
+ * Sinks that do I/O should be wrapped in an AsyncStatsSink so the sim thread doesn't wait.
+ */
+public interface StatsSink extends AutoCloseable
+{
+    // One step's stats
+    void accept(StepStats stats);
+
+    // Push out anything buffered (called after each batch by AsyncStatsSink)
+    default void flush() { }
+
+    // Flush and release files/threads
+    @Override
+    default void close() { }
+}
@@ -0,0 +1,17 @@
+/*
+ * Something that wants to hear about every finished step (exporters, stats, recorders...).
+ * Called on the simulation thread right after the step, so keep it quick and don't
+ * hold on to the Field after returning (the next step replaces it).
+ */
+public interface StepListener
+{
+    // step is the number just finished, field is the new state
+    void stepCompleted(int step, Field field);
+
+    // The world was swapped for a different one (reset, rewind, a loaded checkpoint) and now
+    // stands at step; the next stepCompleted carries on from it. Called between steps, on the
+    // thread that swapped it.
+    default void worldReplaced(int step, Field field)
+    {
+    }
+}
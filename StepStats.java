@@ -0,0 +1,36 @@
+/*
+ * Population numbers for one step (what used to be printed by Field.fieldStats).
+ * counts is indexed by SpeciesType ordinal and only has live dinos in it.
+ */
+public record StepStats(int step, TimeOfDay timeOfDay, WeatherState weather, int[] counts, int infected)
+{
+    // Counts the live dinos in a field
+    public static StepStats of(int step, Field field)
+    {
+        int[] counts = new int[SpeciesType.values().length];
+        int infected = 0;
+
+        for(Dinosaur d : field.getDinosaurs()) {
+            if(d == null || !d.isAlive()) continue;
+            counts[d.getSpeciesType().ordinal()]++;
+            if(d.isInfected()) infected++;
+        }
+        return new StepStats(step, TimeManager.getTimeOfDay(), WeatherManager.getWeather(), counts, infected);
+    }
+
+    public int getCount(SpeciesType type)
+    {
+        return counts[type.ordinal()];
+    }
+
+    // Same line the console always showed
+    public String toConsoleLine()
+    {
+        return "Iguanadons: " + getCount(SpeciesType.IGUANADON) +
+               " Diabloceratops: " + getCount(SpeciesType.DIABLOCERATOPS) +
+               " Ankylosaurus: " + getCount(SpeciesType.ANKYLOSAURUS) +
+               " | Allosaurs: " + getCount(SpeciesType.ALLOSAURUS) +
+               " Carnotaurus: " + getCount(SpeciesType.CARNOTAURUS) +
+               " Dilophosaurus: " + getCount(SpeciesType.DILOPHOSAURUS);
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Decides when a headless/batch run isn't worth stepping any more, and says why.
+ * Rules are given as a comma-separated spec (any mix, checked after every step):
+ *   viable                 stop once Field.isViable() says one side has died out
+ *   extinct[:S+S...]       stop once any of those species (default: any species) has none left
+ *   mateless[:S+S...]      stop once any of those species can never breed again (all one sex,
+ *                          since females need a male next to them); implies extinct for them
+ *   steady[:window:cv]     stop once every species' count has varied less than cv (coefficient
+ *                          of variation) over the last window steps (default 100, 0.01)
+ *   predict[:horizon:max]  stop once a species with at most max left (default 10) is heading
+ *                          for zero within horizon steps on its recent trend (default 50).
+ *                          A guess, unlike the rest
+ * e.g. "viable,mateless,steady" or "extinct:ALLOSAURUS+CARNOTAURUS,predict:80:5".
+ *
+ * Keeps a little history, so use a fresh one per world (fresh() gives one with the same rules).
+ */
+public class StopPolicy
+{
+    // Why a run ended
+    public enum Reason
+    {
+        COMPLETED, NOT_VIABLE, EXTINCTION, NO_MATES, STEADY_STATE, PREDICTED_EXTINCTION
+    }
+
+    private final String spec;
+    private boolean viable;
+    private final Set<SpeciesType> extinct = EnumSet.noneOf(SpeciesType.class);
+    private final Set<SpeciesType> mateless = EnumSet.noneOf(SpeciesType.class);
+    private final Set<SpeciesType> predicted = EnumSet.noneOf(SpeciesType.class);
+    private int steadyWindow, predictHorizon, predictMax;
+    private double steadyCv;
+
+    // counts[species][step % historyLength] for the last historyLength steps
+    private final int[][] history;
+    private int stepsSeen;
+
+    // Policy from a spec (see the class comment); an empty spec never stops anything
+    public StopPolicy(String spec)
+    {
+        this.spec = spec;
+        for(String rule : spec.split(",")) {
+            rule = rule.trim();
+            if(rule.isEmpty()) continue;
+            String[] parts = rule.split(":");
+            switch(parts[0]) {
+                case "viable" -> viable = true;
+                case "extinct" -> extinct.addAll(species(parts));
+                case "mateless" -> mateless.addAll(species(parts));
+                case "steady" -> {
+                    steadyWindow = (parts.length > 1) ? Integer.parseInt(parts[1]) : 100;
+                    steadyCv = (parts.length > 2) ? Double.parseDouble(parts[2]) : 0.01;
+                }
+                case "predict" -> {
+                    predicted.addAll(EnumSet.allOf(SpeciesType.class));
+                    predictHorizon = (parts.length > 1) ? Integer.parseInt(parts[1]) : 50;
+                    predictMax = (parts.length > 2) ? Integer.parseInt(parts[2]) : 10;
+                }
+                default -> throw new IllegalArgumentException("Unknown stop rule: " + rule);
+            }
+        }
+        history = new int[SpeciesType.values().length][Math.max(1, Math.max(steadyWindow, predictHorizon))];
+    }
+
+    // Same rules, no history (for the next world)
+    public StopPolicy fresh()
+    {
+        return new StopPolicy(spec);
+    }
+
+    public String getSpec()
+    {
+        return spec;
+    }
+
+    // Call after every step (and on the starting world); null means keep going
+    public Reason check(Field field)
+    {
+        SpeciesType[] types = SpeciesType.values();
+        int[] males = new int[types.length], females = new int[types.length];
+        for(Dinosaur d : field.getDinosaurs()) {
+            if(d == null || !d.isAlive()) continue;
+            if(d.isFemale()) females[d.getSpeciesType().ordinal()]++;
+            else males[d.getSpeciesType().ordinal()]++;
+        }
+
+        int slot = stepsSeen % history[0].length;
+        for(int s = 0; s < types.length; s++) history[s][slot] = males[s] + females[s];
+        stepsSeen++;
+
+        if(viable && !field.isViable()) return Reason.NOT_VIABLE;
+        for(SpeciesType type : types) {
+            int s = type.ordinal();
+            int count = males[s] + females[s];
+            if(count == 0 && (extinct.contains(type) || mateless.contains(type))) return Reason.EXTINCTION;
+            if(count > 0 && mateless.contains(type) && (males[s] == 0 || females[s] == 0)) return Reason.NO_MATES;
+        }
+        if(steadyWindow > 0 && stepsSeen >= steadyWindow && isSteady()) return Reason.STEADY_STATE;
+        if(predictHorizon > 0 && stepsSeen >= predictHorizon) {
+            for(SpeciesType type : predicted) {
+                if(headingForZero(type.ordinal())) return Reason.PREDICTED_EXTINCTION;
+            }
+        }
+        return null;
+    }
+
+    // Every species within steadyCv of its mean over the window
+    private boolean isSteady()
+    {
+        for(int[] counts : history) {
+            double mean = 0, ss = 0;
+            List<Integer> window = last(counts, steadyWindow);
+            for(int c : window) mean += c;
+            mean /= window.size();
+            if(mean == 0) continue;
+            for(int c : window) ss += (c - mean) * (c - mean);
+            if(Math.sqrt(ss / window.size()) / mean >= steadyCv) return false;
+        }
+        return true;
+    }
+
+    // Least-squares trend over the last horizon steps reaches zero within another horizon steps
+    private boolean headingForZero(int s)
+    {
+        List<Integer> window = last(history[s], predictHorizon);
+        int now = window.get(window.size() - 1);
+        if(now == 0 || now > predictMax) return false;
+
+        int n = window.size();
+        double meanX = (n - 1) / 2.0, meanY = 0;
+        for(int c : window) meanY += c;
+        meanY /= n;
+        double sxy = 0, sxx = 0;
+        for(int i = 0; i < n; i++) {
+            sxy += (i - meanX) * (window.get(i) - meanY);
+            sxx += (i - meanX) * (i - meanX);
+        }
+        double slope = sxy / sxx;
+        return slope < 0 && now + slope * predictHorizon <= 0;
+    }
+
+    // The last n values of a ring buffer, oldest first
+    private List<Integer> last(int[] ring, int n)
+    {
+        List<Integer> out = new ArrayList<>(n);
+        for(int k = stepsSeen - n; k < stepsSeen; k++) out.add(ring[k % ring.length]);
+        return out;
+    }
+
+    private static Set<SpeciesType> species(String[] parts)
+    {
+        if(parts.length < 2 || parts[1].equalsIgnoreCase("any")) return EnumSet.allOf(SpeciesType.class);
+        Set<SpeciesType> set = EnumSet.noneOf(SpeciesType.class);
+        for(String name : parts[1].split("\\+")) set.add(SpeciesType.valueOf(name.trim().toUpperCase()));
+        return set;
+    }
+}
@@ -0,0 +1,370 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Batch tuning: expands ranges/lists over any Tuning or SpeciesTuning values into a grid of
+ * configurations, runs each one headless over a few seeds (in parallel worker processes, see
+ * HeadlessWorker) and writes summary numbers per configuration and seed to a CSV.
+ *
+ * Every result is also kept in an on-disk cache, keyed by a SHA-256 of everything that decides
+ * how a run comes out: the full tuning (defaults included, so changing one in code counts),
+ * seed, grid size, steps, stop rules and Simulator.ENGINE_VERSION. Re-running a sweep that
+ * overlaps an earlier one only runs the points that are missing.
+ * --stop gives StopPolicy rules so worlds whose fate is settled (e.g. a predator left without
+ * mates, or nothing changing any more) end early; the CSV says when and why each one stopped.
+ *
+ * Usage: java SweepRunner [--size=90x60] [--steps=300] [--seeds=4] [--first-seed=1] [--workers=N]
+ *                         [--cache=sweep-cache.txt] [--out=sweep.csv] [--stop=rules] key=spec ...
+ *   spec is a list (0.1,0.2,0.4) or an inclusive range from:to:step (0.1:0.5:0.1)
+ *   e.g. java SweepRunner vegRegrowChance=0.1:0.5:0.1 ALLOSAURUS.maxAge=80,120
+ */
+public class SweepRunner
+{
+    // tuning that only changes how the window behaves, not what a run does
+    private static final String IGNORED_KEY = "simDelayMs";
+
+    // One grid point: the swept keys with their (canonical) values
+    public record Config(Map<String, String> settings)
+    {
+        List<String> asArgs()
+        {
+            List<String> args = new ArrayList<>();
+            for(Map.Entry<String, String> e : settings.entrySet()) args.add(e.getKey() + "=" + e.getValue());
+            return args;
+        }
+    }
+
+    // One run's numbers, and whether they came out of the cache
+    public record Result(Config config, long seed, Map<String, String> metrics, boolean cached) {}
+
+    private final int depth, width, steps, workers;
+    private final String stopRules;
+    private final Path cacheFile;
+    private final Map<String, Map<String, String>> cache = new HashMap<>();
+
+    public SweepRunner(int depth, int width, int steps, String stopRules, int workers, Path cacheFile) throws IOException
+    {
+        this.depth = depth;
+        this.width = width;
+        this.steps = steps;
+        this.stopRules = stopRules;
+        this.workers = workers;
+        this.cacheFile = cacheFile;
+        loadCache();
+    }
+
+    /*
+     * Every combination of the specs, in order (last key changes fastest). Values are put into
+     * the form Tuning itself prints, so "0.10" and "0.1" are the same point.
+     */
+    public static List<Config> expand(Map<String, String> specs)
+    {
+        List<Config> configs = new ArrayList<>();
+        configs.add(new Config(new LinkedHashMap<>()));
+        for(Map.Entry<String, String> spec : specs.entrySet()) {
+            List<String> values = values(spec.getKey(), spec.getValue());
+            List<Config> next = new ArrayList<>();
+            for(Config c : configs) {
+                for(String v : values) {
+                    Map<String, String> settings = new LinkedHashMap<>(c.settings());
+                    settings.put(spec.getKey(), v);
+                    next.add(new Config(settings));
+                }
+            }
+            configs = next;
+        }
+        return configs;
+    }
+
+    // Runs every config over the seeds (cache first); results come back in config, then seed order
+    public List<Result> run(List<Config> configs, long[] seeds) throws IOException
+    {
+        Map<String, Result> byKey = new ConcurrentHashMap<>();
+        List<Future<?>> pending = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            for(Config config : configs) {
+                List<Long> missing = new ArrayList<>();
+                for(long seed : seeds) {
+                    String key = cacheKey(config, seed);
+                    Map<String, String> hit;
+                    synchronized(cache) {
+                        hit = cache.get(key);
+                    }
+                    if(hit != null) byKey.put(key, new Result(config, seed, hit, true));
+                    else missing.add(seed);
+                }
+                if(missing.isEmpty()) continue;
+
+                long[] toRun = missing.stream().mapToLong(Long::longValue).toArray();
+                pending.add(pool.submit(() -> {
+                    try {
+                        for(RunHistory run : HeadlessWorker.run(depth, width, steps, toRun, config.asArgs(), stopRules, r -> true)) {
+                            String key = cacheKey(config, run.seed());
+                            Map<String, String> metrics = summarize(run);
+                            store(key, metrics);
+                            byKey.put(key, new Result(config, run.seed(), metrics, false));
+                        }
+                    }
+                    catch(IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+
+            for(Future<?> f : pending) f.get();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for workers", e);
+        }
+        catch(ExecutionException e) {
+            if(e.getCause() instanceof UncheckedIOException u) throw u.getCause();
+            throw new IOException("Worker failed", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        List<Result> results = new ArrayList<>();
+        for(Config config : configs) {
+            for(long seed : seeds) results.add(byKey.get(cacheKey(config, seed)));
+        }
+        return results;
+    }
+
+    // Numbers kept per run: how it ended, per species final/mean count and extinction step, infections
+    public static Map<String, String> summarize(RunHistory run)
+    {
+        Map<String, String> metrics = new LinkedHashMap<>();
+        metrics.put("stepsRun", String.valueOf(run.getSteps()));
+        metrics.put("stopReason", run.stopReason().name());
+        int total = 0;
+        for(SpeciesType type : SpeciesType.values()) total += run.finalCount(type);
+        metrics.put("finalTotal", String.valueOf(total));
+        for(SpeciesType type : SpeciesType.values()) {
+            metrics.put("final." + type, String.valueOf(run.finalCount(type)));
+            metrics.put("mean." + type, String.format(Locale.ROOT, "%.2f", run.meanCount(type)));
+            metrics.put("extinct." + type, String.valueOf(run.extinctionStep(type)));
+        }
+        metrics.put("peakInfected", String.valueOf(run.peakInfected()));
+        metrics.put("infectedSteps", String.valueOf(run.infectedSteps()));
+        return metrics;
+    }
+
+    /*
+     * Hash of everything that decides how a run comes out. The tuning is the full set of values
+     * with the config applied, in key order, so a default changing in code misses the cache too.
+     */
+    public String cacheKey(Config config, long seed)
+    {
+        Map<String, String> tuning = tuningWith(config.settings());
+        StringBuilder text = new StringBuilder();
+        text.append("engine=").append(Simulator.ENGINE_VERSION).append('\n');
+        text.append("size=").append(depth).append('x').append(width).append('\n');
+        text.append("steps=").append(steps).append('\n');
+        text.append("seed=").append(seed).append('\n');
+        // only there when set, so results from before stop rules existed still match
+        if(!stopRules.isEmpty()) text.append("stop=").append(stopRules).append('\n');
+        for(Map.Entry<String, String> e : tuning.entrySet()) {
+            if(!e.getKey().equals(IGNORED_KEY)) text.append(e.getKey()).append('=').append(e.getValue()).append('\n');
+        }
+        return sha256(text.toString());
+    }
+
+    public int getCachedCount()
+    {
+        synchronized(cache) {
+            return cache.size();
+        }
+    }
+
+    // Full tuning snapshot with some values changed (the statics are put back after)
+    private static synchronized Map<String, String> tuningWith(Map<String, String> settings)
+    {
+        Map<String, String> saved = Tuning.snapshot();
+        try {
+            for(Map.Entry<String, String> e : settings.entrySet()) {
+                if(!Tuning.set(e.getKey(), e.getValue())) {
+                    throw new IllegalArgumentException("Bad tuning setting: " + e.getKey() + "=" + e.getValue());
+                }
+            }
+            return Tuning.snapshot();
+        }
+        finally {
+            Tuning.restore(saved);
+        }
+    }
+
+    // The values a spec stands for, each in Tuning's own format
+    private static List<String> values(String key, String spec)
+    {
+        List<String> raw = new ArrayList<>();
+        String[] range = spec.split(":");
+        if(range.length == 3) {
+            BigDecimal from = new BigDecimal(range[0]), to = new BigDecimal(range[1]), step = new BigDecimal(range[2]);
+            if(step.signum() <= 0) throw new IllegalArgumentException("Range step must be > 0: " + spec);
+            for(BigDecimal v = from; v.compareTo(to) <= 0; v = v.add(step)) raw.add(v.toPlainString());
+        }
+        else {
+            for(String v : spec.split(",")) raw.add(v.trim());
+        }
+
+        List<String> values = new ArrayList<>();
+        for(String v : raw) {
+            String canonical = tuningWith(Map.of(key, v)).get(key);
+            if(!values.contains(canonical)) values.add(canonical);
+        }
+        return values;
+    }
+
+    // Cache file: one line per run, "hash metric=value metric=value ..."; a torn last line is skipped,
+    // as are runs saved with a decimal comma (older builds formatted in the default locale)
+    private void loadCache() throws IOException
+    {
+        if(!Files.exists(cacheFile)) return;
+        for(String line : Files.readAllLines(cacheFile, StandardCharsets.UTF_8)) {
+            String[] parts = line.trim().split(" ");
+            if(parts.length < 2 || parts[0].length() != 64) continue;
+            Map<String, String> metrics = new LinkedHashMap<>();
+            boolean ok = true;
+            for(int i = 1; i < parts.length; i++) {
+                int eq = parts[i].indexOf('=');
+                if(eq <= 0 || parts[i].indexOf(',') >= 0) {
+                    ok = false;
+                    break;
+                }
+                metrics.put(parts[i].substring(0, eq), parts[i].substring(eq + 1));
+            }
+            if(ok) cache.put(parts[0], metrics);
+        }
+    }
+
+    // Appends one result straight away, so a sweep that's stopped halfway keeps what it did
+    private void store(String key, Map<String, String> metrics) throws IOException
+    {
+        StringBuilder line = new StringBuilder(key);
+        for(Map.Entry<String, String> e : metrics.entrySet()) line.append(' ').append(e.getKey()).append('=').append(e.getValue());
+        line.append('\n');
+
+        synchronized(cache) {
+            Files.writeString(cacheFile, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            cache.put(key, metrics);
+        }
+    }
+
+    private static String sha256(String text)
+    {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for(byte b : digest) hex.append(String.format("%02x", b));
+            return hex.toString();
+        }
+        catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No SHA-256", e);
+        }
+    }
+
+    // Sweep results as CSV: swept keys, seed, then the metrics
+    private static void writeCsv(List<Result> results, Path out) throws IOException
+    {
+        try(PrintWriter w = new PrintWriter(Files.newBufferedWriter(out, StandardCharsets.UTF_8))) {
+            // metrics by name, since older cached results may not have all of them
+            Set<String> metricNames = new LinkedHashSet<>();
+            for(Result r : results) metricNames.addAll(r.metrics().keySet());
+
+            List<String> header = new ArrayList<>(results.get(0).config().settings().keySet());
+            header.add("seed");
+            header.addAll(metricNames);
+            w.println(String.join(",", header));
+            for(Result r : results) {
+                List<String> row = new ArrayList<>(r.config().settings().values());
+                row.add(String.valueOf(r.seed()));
+                for(String name : metricNames) row.add(r.metrics().getOrDefault(name, ""));
+                w.println(String.join(",", row));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        Map<String, String> opts = new LinkedHashMap<>();
+        Map<String, String> specs = new LinkedHashMap<>();
+        for(String arg : args) {
+            int eq = arg.indexOf('=');
+            if(arg.startsWith("--")) {
+                if(eq < 0) opts.put(arg.substring(2), "true");
+                else opts.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+            else if(eq > 0) {
+                specs.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        if(specs.isEmpty()) {
+            System.out.println("Usage: java SweepRunner [--size=90x60] [--steps=300] [--seeds=4] [--first-seed=1] [--workers=N]");
+            System.out.println("                        [--cache=sweep-cache.txt] [--out=sweep.csv] [--stop=rules] key=spec ...");
+            System.out.println("  spec: a list (0.1,0.2,0.4) or an inclusive range from:to:step (0.1:0.5:0.1)");
+            return;
+        }
+
+        String[] size = opts.getOrDefault("size", "90x60").toLowerCase().split("x");
+        int width = Integer.parseInt(size[0]);
+        int depth = Integer.parseInt(size[1]);
+        int steps = Integer.parseInt(opts.getOrDefault("steps", "300"));
+        int seedCount = Integer.parseInt(opts.getOrDefault("seeds", "4"));
+        long firstSeed = Long.parseLong(opts.getOrDefault("first-seed", "1"));
+        int workers = Integer.parseInt(opts.getOrDefault("workers", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        Path cacheFile = Paths.get(opts.getOrDefault("cache", "sweep-cache.txt"));
+        Path out = Paths.get(opts.getOrDefault("out", "sweep.csv"));
+        String stopRules = opts.getOrDefault("stop", "");
+        new StopPolicy(stopRules);  // bad rules fail here, not in every worker
+
+        long[] seeds = new long[seedCount];
+        for(int i = 0; i < seedCount; i++) seeds[i] = firstSeed + i;
+
+        List<Config> configs = expand(specs);
+        SweepRunner sweep = new SweepRunner(depth, width, steps, stopRules, workers, cacheFile);
+        long start = System.nanoTime();
+        List<Result> results = sweep.run(configs, seeds);
+        writeCsv(results, out);
+
+        for(Config c : configs) {
+            double total = 0;
+            int n = 0;
+            for(Result r : results) {
+                if(r.config() != c) continue;
+                total += Double.parseDouble(r.metrics().get("finalTotal"));
+                n++;
+            }
+            System.out.printf("%-50s mean final population %.1f%n", String.join(" ", c.asArgs()), total / n);
+        }
+        long computed = results.stream().filter(r -> !r.cached()).count();
+        long stepsRun = results.stream().filter(r -> !r.cached()).mapToLong(r -> Long.parseLong(r.metrics().get("stepsRun"))).sum();
+        System.out.printf("%d configs x %d seeds: %d run (%d of %d steps), %d from cache (%.1f s). Wrote %s%n",
+                configs.size(), seedCount, computed, stepsRun, computed * steps, results.size() - computed,
+                (System.nanoTime() - start) / 1e9, out);
+    }
+}
@@ -20,6 +20,12 @@ public class TimeManager
         current = (phase == 0) ? TimeOfDay.DAY : TimeOfDay.NIGHT;
     }
 
+    // Puts back a saved time of day (checkpoints)
+    public static void restore(TimeOfDay time)
+    {
+        current = time;
+    }
+
     // Get current time of day
     public static TimeOfDay getTimeOfDay()
     {
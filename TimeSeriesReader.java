@@ -0,0 +1,217 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Reads a TimeSeriesRecorder file. The file is memory-mapped and only the blocks that
+ * overlap the asked-for step range get decoded, so pulling a slice out of a million-step
+ * history doesn't read the rest of it.
+ * (One mapping, so files are limited to 2GB, which is a lot of steps at a few bytes each.)
+ *
+ * Command line: java TimeSeriesReader file [fromStep toStep]   prints the range as CSV
+ */
+public class TimeSeriesReader implements AutoCloseable
+{
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final String[] columns;
+
+    // block index: file offset, first step, rows
+    private final long[] blockOffsets;
+    private final long[] blockFirstSteps;
+    private final int[] blockRows;
+
+    public TimeSeriesReader(Path path) throws IOException
+    {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        ByteBuffer in = map.duplicate();
+        if(in.getInt() != TimeSeriesRecorder.HEADER_MAGIC) throw new IOException("Not a time series file: " + path);
+        columns = new String[in.getInt()];
+        for(int i = 0; i < columns.length; i++) {
+            byte[] name = new byte[in.getShort()];
+            in.get(name);
+            columns[i] = new String(name, StandardCharsets.UTF_8);
+        }
+        int firstBlock = in.position();
+
+        List<long[]> index = readFooter();
+        if(index == null) index = scanBlocks(firstBlock);
+
+        blockOffsets = new long[index.size()];
+        blockFirstSteps = new long[index.size()];
+        blockRows = new int[index.size()];
+        for(int i = 0; i < index.size(); i++) {
+            blockOffsets[i] = index.get(i)[0];
+            blockFirstSteps[i] = index.get(i)[1];
+            blockRows[i] = (int) index.get(i)[2];
+        }
+    }
+
+    public String[] getColumns()
+    {
+        return columns.clone();
+    }
+
+    public int getColumnIndex(String name)
+    {
+        for(int i = 0; i < columns.length; i++) {
+            if(columns[i].equals(name)) return i;
+        }
+        throw new IllegalArgumentException("No column " + name);
+    }
+
+    public int getBlockCount()
+    {
+        return blockOffsets.length;
+    }
+
+    public long getRowCount()
+    {
+        long total = 0;
+        for(int rows : blockRows) total += rows;
+        return total;
+    }
+
+    /*
+     * All columns for steps fromStep..toStep (inclusive), as result[column][row].
+     * Steps are assumed to go up through the file, which is how the recorder writes them.
+     */
+    public long[][] read(long fromStep, long toStep)
+    {
+        int first = Math.max(0, blockFor(fromStep));
+        List<long[][]> parts = new ArrayList<>();
+        int total = 0;
+
+        for(int b = first; b < blockOffsets.length && blockFirstSteps[b] <= toStep; b++) {
+            long[][] block = decodeBlock(b);
+            long[] steps = block[0];
+
+            int start = 0, end = steps.length;
+            while(start < end && steps[start] < fromStep) start++;
+            while(end > start && steps[end - 1] > toStep) end--;
+            if(start == end) continue;
+
+            long[][] slice = new long[columns.length][];
+            for(int c = 0; c < columns.length; c++) slice[c] = Arrays.copyOfRange(block[c], start, end);
+            parts.add(slice);
+            total += end - start;
+        }
+
+        long[][] result = new long[columns.length][total];
+        int at = 0;
+        for(long[][] part : parts) {
+            for(int c = 0; c < columns.length; c++) {
+                System.arraycopy(part[c], 0, result[c], at, part[c].length);
+            }
+            at += part[0].length;
+        }
+        return result;
+    }
+
+    // One column for a step range
+    public long[] readColumn(String name, long fromStep, long toStep)
+    {
+        return read(fromStep, toStep)[getColumnIndex(name)];
+    }
+
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    // Last block whose first step is <= step (binary search on the index)
+    private int blockFor(long step)
+    {
+        int found = Arrays.binarySearch(blockFirstSteps, step);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    private long[][] decodeBlock(int b)
+    {
+        ByteBuffer in = map.duplicate();
+        in.position((int) blockOffsets[b]);
+        int rows = in.getInt();
+        in.getLong();
+        in.getInt();
+
+        long[][] values = new long[columns.length][rows];
+        for(int c = 0; c < columns.length; c++) {
+            int length = in.getInt();
+            TimeSeriesRecorder.decodeColumn(in, in.position() + length, values[c], rows);
+        }
+        return values;
+    }
+
+    // The index written by close(), or null if there isn't one
+    private List<long[]> readFooter()
+    {
+        int size = map.capacity();
+        if(size < 16 || map.getInt(size - 4) != TimeSeriesRecorder.FOOTER_MAGIC) return null;
+
+        int blocks = map.getInt(size - 8);
+        long indexOffset = map.getLong(size - 16);
+        if(indexOffset + blocks * 20L + 16 != size) return null;
+
+        List<long[]> index = new ArrayList<>();
+        ByteBuffer in = map.duplicate();
+        in.position((int) indexOffset);
+        for(int i = 0; i < blocks; i++) {
+            index.add(new long[] { in.getLong(), in.getLong(), in.getInt() });
+        }
+        return index;
+    }
+
+    // No footer (the run crashed): walk the blocks, stop at the first incomplete one
+    private List<long[]> scanBlocks(int offset)
+    {
+        List<long[]> index = new ArrayList<>();
+        int size = map.capacity();
+        while(offset + 16 <= size) {
+            int rows = map.getInt(offset);
+            long firstStep = map.getLong(offset + 4);
+            int payload = map.getInt(offset + 12);
+            if(rows <= 0 || payload < 0 || offset + 16L + payload > size) break;
+
+            index.add(new long[] { offset, firstStep, rows });
+            offset += 16 + payload;
+        }
+        return index;
+    }
+
+    // Dumps a step range as CSV
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 1) {
+            System.out.println("Usage: TimeSeriesReader file [fromStep toStep]");
+            return;
+        }
+
+        try(TimeSeriesReader reader = new TimeSeriesReader(Paths.get(args[0]))) {
+            long from = (args.length > 1) ? Long.parseLong(args[1]) : Long.MIN_VALUE;
+            long to = (args.length > 2) ? Long.parseLong(args[2]) : Long.MAX_VALUE;
+
+            long[][] data = reader.read(from, to);
+            System.out.println(String.join(",", reader.getColumns()));
+
+            StringBuilder line = new StringBuilder();
+            for(int r = 0; r < data[0].length; r++) {
+                line.setLength(0);
+                for(int c = 0; c < data.length; c++) {
+                    if(c > 0) line.append(',');
+                    line.append(data[c][r]);
+                }
+                System.out.println(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Append-only per-step history of a run, stored by column so it packs down small.
+ * Every step records: step, a count per SpeciesType, infected, vegetation mean (x100)/min/max,
+ * weather and time of day. Read it back with TimeSeriesReader.
+ *
+ * Rows are buffered into blocks of BLOCK_ROWS. Each column in a block is delta encoded:
+ * a token is a zigzag varint, low bit 0 = "next delta is (token >> 1)", low bit 1 = "repeat
+ * the previous delta (token >> 1) more times". Counts that wobble cost a byte a step, and
+ * columns that hardly change (weather, time, step) cost next to nothing.
+ *
+ * File layout (big-endian):
+ *   header  "DTS1", int columns, then each column name as short length + UTF-8
+ *   blocks  int rows, long firstStep, int payloadBytes, then per column: int bytes + tokens
+ *   footer  per block (long offset, long firstStep, int rows), long indexOffset, int blocks, "DTSI"
+ * The footer is only written by close(); TimeSeriesReader rebuilds the index by walking the
+ * blocks if a run died before that.
+ */
+public class TimeSeriesRecorder implements StepListener, AutoCloseable
+{
+    public static final int BLOCK_ROWS = 4096;
+    static final int HEADER_MAGIC = 0x44545331;  // "DTS1"
+    static final int FOOTER_MAGIC = 0x44545349;  // "DTSI"
+
+    private final FileChannel channel;
+    private final String[] columns;
+    private final long[][] pending;
+    private int rows;
+
+    private final List<long[]> index = new ArrayList<>();
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(1 << 16);
+    // reused every step, so sampling doesn't make garbage
+    private final int[] counts = new int[SpeciesType.values().length];
+    private int[] vegRow = new int[0];
+    private boolean closed;
+
+    // Creates (or truncates) the file and writes the header
+    public TimeSeriesRecorder(Path path) throws IOException
+    {
+        columns = columnNames();
+        pending = new long[columns.length][BLOCK_ROWS];
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteBuffer header = ByteBuffer.allocate(1024);
+        header.putInt(HEADER_MAGIC).putInt(columns.length);
+        for(String name : columns) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            header.putShort((short) bytes.length).put(bytes);
+        }
+        header.flip();
+        writeFully(header);
+    }
+
+    // step, one per species, infected, vegMeanX100, vegMin, vegMax, weather, timeOfDay
+    public static String[] columnNames()
+    {
+        List<String> names = new ArrayList<>();
+        names.add("step");
+        for(SpeciesType type : SpeciesType.values()) names.add(type.name());
+        names.add("infected");
+        names.add("vegMeanX100");
+        names.add("vegMin");
+        names.add("vegMax");
+        names.add("weather");
+        names.add("timeOfDay");
+        return names.toArray(new String[0]);
+    }
+
+    public void stepCompleted(int step, Field field)
+    {
+        int c = 0;
+        pending[c++][rows] = step;
+
+        Arrays.fill(counts, 0);
+        int infected = 0;
+        for(Dinosaur d : field.getDinosaurs()) {
+            if(!d.isAlive()) continue;
+            counts[d.getSpeciesType().ordinal()]++;
+            if(d.isInfected()) infected++;
+        }
+        for(int count : counts) pending[c++][rows] = count;
+        pending[c++][rows] = infected;
+
+        // one pass over the grid for all the vegetation numbers
+        long sum = 0;
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        if(vegRow.length != field.getWidth()) vegRow = new int[field.getWidth()];
+        for(int row = 0; row < field.getDepth(); row++) {
+            field.getVegetationRow(row, vegRow);
+            for(int v : vegRow) {
+                sum += v;
+                if(v < min) min = v;
+                if(v > max) max = v;
+            }
+        }
+        pending[c++][rows] = Math.round(sum * 100.0 / ((long) field.getDepth() * field.getWidth()));
+        pending[c++][rows] = min;
+        pending[c++][rows] = max;
+        pending[c++][rows] = WeatherManager.getWeather().ordinal();
+        pending[c][rows] = TimeManager.getTimeOfDay().ordinal();
+
+        rows++;
+        if(rows == BLOCK_ROWS) {
+            try {
+                writeBlock();
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Writes the buffered rows out as a block (partial blocks are fine)
+    public void flush() throws IOException
+    {
+        if(rows > 0) writeBlock();
+        channel.force(false);
+    }
+
+    // Last block + footer index
+    public void close() throws IOException
+    {
+        if(closed) return;
+        closed = true;
+
+        if(rows > 0) writeBlock();
+
+        long indexOffset = channel.position();
+        ByteBuffer footer = ByteBuffer.allocate(index.size() * 20 + 16);
+        for(long[] entry : index) {
+            footer.putLong(entry[0]).putLong(entry[1]).putInt((int) entry[2]);
+        }
+        footer.putLong(indexOffset).putInt(index.size()).putInt(FOOTER_MAGIC);
+        footer.flip();
+        writeFully(footer);
+
+        channel.force(true);
+        channel.close();
+    }
+
+    private void writeBlock() throws IOException
+    {
+        // worst case is 10 bytes per value, plus the per-column lengths
+        int worst = 16 + columns.length * (4 + rows * 10);
+        if(encodeBuffer.capacity() < worst) encodeBuffer = ByteBuffer.allocate(worst);
+
+        ByteBuffer buf = encodeBuffer;
+        buf.clear();
+        buf.putInt(rows).putLong(pending[0][0]).putInt(0);
+
+        for(long[] column : pending) {
+            int lengthAt = buf.position();
+            buf.putInt(0);
+            encodeColumn(column, rows, buf);
+            buf.putInt(lengthAt, buf.position() - lengthAt - 4);
+        }
+        buf.putInt(12, buf.position() - 16);
+        buf.flip();
+
+        index.add(new long[] { channel.position(), pending[0][0], rows });
+        writeFully(buf);
+        rows = 0;
+    }
+
+    // Delta + repeat-run tokens (see the class comment)
+    static void encodeColumn(long[] values, int count, ByteBuffer out)
+    {
+        long previous = 0;
+        long previousDelta = Long.MIN_VALUE;
+        int repeats = 0;
+
+        for(int i = 0; i < count; i++) {
+            long delta = values[i] - previous;
+            previous = values[i];
+
+            if(delta == previousDelta) {
+                repeats++;
+                continue;
+            }
+            if(repeats > 0) {
+                putVarint(((long) repeats << 1) | 1, out);
+                repeats = 0;
+            }
+            putVarint(zigzag(delta) << 1, out);
+            previousDelta = delta;
+        }
+        if(repeats > 0) putVarint(((long) repeats << 1) | 1, out);
+    }
+
+    // Reverse of encodeColumn
+    static void decodeColumn(ByteBuffer in, int end, long[] out, int count)
+    {
+        long value = 0;
+        long delta = 0;
+        int i = 0;
+
+        while(i < count && in.position() < end) {
+            long token = getVarint(in);
+            if((token & 1) == 0) {
+                delta = unzigzag(token >>> 1);
+                value += delta;
+                out[i++] = value;
+            }
+            else {
+                long repeats = token >>> 1;
+                for(long r = 0; r < repeats && i < count; r++) {
+                    value += delta;
+                    out[i++] = value;
+                }
+            }
+        }
+        in.position(end);
+    }
+
+    static long zigzag(long v)
+    {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    static long unzigzag(long v)
+    {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    static void putVarint(long v, ByteBuffer out)
+    {
+        while((v & ~0x7FL) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    static long getVarint(ByteBuffer in)
+    {
+        long result = 0;
+        int shift = 0;
+        while(true) {
+            byte b = in.get();
+            result |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0) return result;
+            shift += 7;
+        }
+    }
+
+    private void writeFully(ByteBuffer buf) throws IOException
+    {
+        while(buf.hasRemaining()) channel.write(buf);
+    }
+}
@@ -1,5 +1,10 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /*
  * Global tuning values + per-species tuning objects.
@@ -57,6 +62,118 @@ public class Tuning
         return species.get(type);
     }
 
+    // Spawn chances in species order (allo, carno, dilo, igu, diablo, anky)
+    public static double[] getSpawnChances()
+    {
+        return new double[] {
+            pAllosaurus, pCarnotaurus, pDilophosaurus,
+            pIguanadon, pDiabloceratops, pAnkylosaurus
+        };
+    }
+
+    // Puts back spawn chances from getSpawnChances
+    public static void setSpawnChances(double[] p)
+    {
+        pAllosaurus = p[0]; pCarnotaurus = p[1]; pDilophosaurus = p[2];
+        pIguanadon = p[3]; pDiabloceratops = p[4]; pAnkylosaurus = p[5];
+    }
+
+    // Multiplies every spawn chance (denser/sparser worlds), returns the old ones
+    public static double[] scaleSpawnChances(double factor)
+    {
+        double[] old = getSpawnChances();
+        double[] scaled = old.clone();
+        for(int i = 0; i < scaled.length; i++) scaled[i] *= factor;
+        setSpawnChances(scaled);
+        return old;
+    }
+
+    // Every tunable value as text: "simDelayMs", "ALLOSAURUS.maxAge", ... (for checkpoints/replays)
+    public static Map<String, String> snapshot()
+    {
+        Map<String, String> values = new TreeMap<>();
+        for(Field f : tunableFields(Tuning.class, true)) {
+            values.put(f.getName(), read(f, null));
+        }
+        for(SpeciesType type : SpeciesType.values()) {
+            for(Field f : tunableFields(SpeciesTuning.class, false)) {
+                values.put(type.name() + "." + f.getName(), read(f, species.get(type)));
+            }
+        }
+        return values;
+    }
+
+    // Puts back values from snapshot (unknown keys are ignored, missing ones left alone)
+    public static void restore(Map<String, String> values)
+    {
+        for(Map.Entry<String, String> e : values.entrySet()) {
+            set(e.getKey(), e.getValue());
+        }
+    }
+
+    // Sets one value by its snapshot key, returns false if there is no such key
+    public static boolean set(String key, String value)
+    {
+        try {
+            int dot = key.indexOf('.');
+            if(dot < 0) {
+                Field f = Tuning.class.getField(key);
+                if(!isTunable(f, true)) return false;
+                write(f, null, value);
+            }
+            else {
+                SpeciesType type = SpeciesType.valueOf(key.substring(0, dot));
+                Field f = SpeciesTuning.class.getField(key.substring(dot + 1));
+                if(!isTunable(f, false)) return false;
+                write(f, species.get(type), value);
+            }
+            return true;
+        }
+        catch(NoSuchFieldException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // public, non-final fields of the right kind (static for Tuning, instance for SpeciesTuning)
+    private static List<Field> tunableFields(Class<?> type, boolean statics)
+    {
+        List<Field> fields = new ArrayList<>();
+        for(Field f : type.getFields()) {
+            if(isTunable(f, statics)) fields.add(f);
+        }
+        return fields;
+    }
+
+    private static boolean isTunable(Field f, boolean statics)
+    {
+        int mod = f.getModifiers();
+        return Modifier.isStatic(mod) == statics && !Modifier.isFinal(mod);
+    }
+
+    private static String read(Field f, Object target)
+    {
+        try {
+            return String.valueOf(f.get(target));
+        }
+        catch(IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void write(Field f, Object target, String value)
+    {
+        try {
+            Class<?> t = f.getType();
+            if(t == int.class) f.setInt(target, Integer.parseInt(value));
+            else if(t == double.class) f.setDouble(target, Double.parseDouble(value));
+            else if(t == boolean.class) f.setBoolean(target, Boolean.parseBoolean(value));
+            else throw new IllegalArgumentException("Unsupported tuning type " + t);
+        }
+        catch(IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     // Default allosaurus settings
     private static SpeciesTuning defaultAllo() {
         SpeciesTuning t = new SpeciesTuning(SpeciesType.ALLOSAURUS);
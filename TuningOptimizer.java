@@ -0,0 +1,285 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Searches SpeciesTuning values for a world where every species keeps going, using
+ * differential evolution (DE/rand/1/bin): a population of candidate tunings, where each
+ * generation every member is challenged by a mix of three others and loses its place if the
+ * challenger does at least as well.
+ *
+ * A candidate is scored over several seeds, each in a headless world (HeadlessWorker, run in
+ * parallel on a worker pool). Per seed:
+ *   score = coexistence * (1 - varianceWeight * mean coefficient of variation of the counts)
+ * where coexistence is the fraction of the steps before the first species died out (1 if none
+ * did). So 1.0 is "all six made it, and steadily". A candidate's fitness is its mean score.
+ * Bad candidates are cut short two ways: a world ends as soon as a species dies out or is left
+ * without mates (StopPolicy "mateless"), and a challenger's remaining seeds are skipped once it
+ * can no longer beat the member it's up against.
+ *
+ * Usage: java TuningOptimizer [--size=90x60] [--steps=700] [--seeds=4] [--population=12]
+ *                             [--generations=20] [--workers=N] [--variance-weight=0.25] [--seed=1]
+ *                             [--params=breedingProbability,maxLitterSize,maxAge,breedingAge]
+ *                             [--out=best-tuning.txt] [key=low:high ...]
+ * --params searches those fields for every species, from half to double their current values;
+ * key=low:high instead names exactly what to search. The best tuning is written as key=value lines
+ * (what HeadlessWorker, SweepRunner and EquivalenceHarness take as settings).
+ */
+public class TuningOptimizer
+{
+    private static final String DEFAULT_PARAMS = "breedingProbability,maxLitterSize,maxAge,breedingAge";
+    private static final double F = 0.6, CR = 0.9;
+
+    // A scored candidate (aborted = stopped early, fitness is then only an upper bound)
+    public record Candidate(double[] x, double fitness, boolean aborted) {}
+
+    private final TuningSpace space;
+    private final int depth, width, steps, workers;
+    private final long[] seeds;
+    private final double varianceWeight;
+    private final Random rand;
+
+    private int worldsRun, candidatesCut;
+
+    public TuningOptimizer(TuningSpace space, int depth, int width, int steps, long[] seeds, int workers,
+                           double varianceWeight, long searchSeed)
+    {
+        this.space = space;
+        this.depth = depth;
+        this.width = width;
+        this.steps = steps;
+        this.seeds = seeds;
+        this.workers = workers;
+        this.varianceWeight = varianceWeight;
+        this.rand = new Random(searchSeed);
+    }
+
+    // Searches for the given number of generations; returns the best candidate found
+    public Candidate search(int populationSize, int generations, PrintWriter log) throws IOException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            // the current tuning goes in as one of the starting members
+            List<double[]> start = new ArrayList<>();
+            start.add(space.current());
+            while(start.size() < populationSize) start.add(randomPoint());
+            List<Candidate> population = evaluateAll(pool, start, null);
+            report(log, 0, population);
+
+            for(int g = 1; g <= generations; g++) {
+                List<double[]> trials = new ArrayList<>();
+                for(int i = 0; i < populationSize; i++) trials.add(trial(population, i));
+                List<Candidate> scored = evaluateAll(pool, trials, population);
+                for(int i = 0; i < populationSize; i++) {
+                    Candidate t = scored.get(i);
+                    if(!t.aborted() && t.fitness() >= population.get(i).fitness()) population.set(i, t);
+                }
+                report(log, g, population);
+            }
+            return best(population);
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // The tuning values a point stands for, as key=value settings
+    public List<String> settings(double[] x)
+    {
+        return space.settings(x);
+    }
+
+    // One seed's score (see the class comment)
+    public double score(RunHistory run)
+    {
+        SpeciesType[] types = SpeciesType.values();
+        int firstExtinction = steps;
+        double cvTotal = 0;
+        // a species left all one sex is as good as gone, and its world was stopped there
+        if(run.stopReason() != StopPolicy.Reason.COMPLETED) firstExtinction = run.getSteps();
+        for(SpeciesType type : types) {
+            firstExtinction = Math.min(firstExtinction, run.extinctionStep(type));
+            int[] counts = run.trajectory(type);
+            double mean = 0, ss = 0;
+            for(int c : counts) mean += c;
+            mean /= counts.length;
+            for(int c : counts) ss += (c - mean) * (c - mean);
+            double cv = (mean > 0) ? Math.sqrt(ss / counts.length) / mean : 1;
+            cvTotal += Math.min(1, cv);
+        }
+        double coexistence = (double) firstExtinction / steps;
+        return coexistence * (1 - varianceWeight * cvTotal / types.length);
+    }
+
+    public synchronized int getWorldsRun()
+    {
+        return worldsRun;
+    }
+
+    // Challengers that were stopped before all their seeds ran
+    public synchronized int getCandidatesCut()
+    {
+        return candidatesCut;
+    }
+
+    // DE/rand/1/bin challenger for member i
+    private double[] trial(List<Candidate> population, int i)
+    {
+        int n = population.size();
+        int a, b, c;
+        do a = rand.nextInt(n); while(a == i);
+        do b = rand.nextInt(n); while(b == i || b == a);
+        do c = rand.nextInt(n); while(c == i || c == a || c == b);
+
+        double[] target = population.get(i).x();
+        double[] xa = population.get(a).x(), xb = population.get(b).x(), xc = population.get(c).x();
+        double[] trial = target.clone();
+        int always = rand.nextInt(target.length);
+        for(int d = 0; d < target.length; d++) {
+            if(d != always && rand.nextDouble() >= CR) continue;
+            TuningSpace.Param p = space.get(d);
+            double v = xa[d] + F * (xb[d] - xc[d]);
+            // out of range: go halfway from the target to the edge instead
+            if(v < p.low()) v = (p.low() + target[d]) / 2;
+            if(v > p.high()) v = (p.high() + target[d]) / 2;
+            trial[d] = v;
+        }
+        return trial;
+    }
+
+    // Scores every point in parallel; against[i] (if given) is the fitness trial i has to reach
+    private List<Candidate> evaluateAll(ExecutorService pool, List<double[]> points, List<Candidate> against)
+            throws IOException
+    {
+        List<Future<Candidate>> futures = new ArrayList<>();
+        for(int i = 0; i < points.size(); i++) {
+            double[] x = points.get(i);
+            double needed = (against == null) ? Double.NEGATIVE_INFINITY : against.get(i).fitness();
+            futures.add(pool.submit(() -> evaluate(x, needed)));
+        }
+
+        List<Candidate> scored = new ArrayList<>();
+        try {
+            for(Future<Candidate> f : futures) scored.add(f.get());
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for workers", e);
+        }
+        catch(ExecutionException e) {
+            if(e.getCause() instanceof UncheckedIOException u) throw u.getCause();
+            throw new IOException("Worker failed", e.getCause());
+        }
+        return scored;
+    }
+
+    // Runs the seeds one after another in a worker, giving up once `needed` is out of reach
+    private Candidate evaluate(double[] x, double needed)
+    {
+        double[] total = new double[1];
+        int[] done = new int[1];
+        try {
+            HeadlessWorker.run(depth, width, steps, seeds, settings(x), "mateless", run -> {
+                total[0] += score(run);
+                done[0]++;
+                return bestPossible(total[0], done[0]) >= needed;
+            });
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        boolean aborted = done[0] < seeds.length;
+        synchronized(this) {
+            worldsRun += done[0];
+            if(aborted) candidatesCut++;
+        }
+        return new Candidate(x, bestPossible(total[0], done[0]), aborted);
+    }
+
+    // Scores are at most 1, so this is the most the seeds not run yet could bring the fitness to
+    private double bestPossible(double total, int done)
+    {
+        return (total + (seeds.length - done)) / seeds.length;
+    }
+
+    private void report(PrintWriter log, int generation, List<Candidate> population)
+    {
+        double mean = population.stream().mapToDouble(Candidate::fitness).average().orElse(0);
+        Candidate best = best(population);
+        log.printf("generation %3d  best %.4f  mean %.4f  worlds %d  cut short %d%n",
+                generation, best.fitness(), mean, getWorldsRun(), getCandidatesCut());
+        log.flush();
+    }
+
+    private static Candidate best(List<Candidate> population)
+    {
+        Candidate best = population.get(0);
+        for(Candidate c : population) if(c.fitness() > best.fitness()) best = c;
+        return best;
+    }
+
+    private double[] randomPoint()
+    {
+        double[] u = new double[space.size()];
+        for(int d = 0; d < u.length; d++) u[d] = rand.nextDouble();
+        return space.fromUnit(u);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        Map<String, String> opts = new LinkedHashMap<>();
+        Map<String, String> ranges = new LinkedHashMap<>();
+        for(String arg : args) {
+            int eq = arg.indexOf('=');
+            if(arg.startsWith("--")) {
+                if(eq < 0) opts.put(arg.substring(2), "true");
+                else opts.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+            else if(eq > 0) {
+                ranges.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+
+        String[] size = opts.getOrDefault("size", "90x60").toLowerCase().split("x");
+        int width = Integer.parseInt(size[0]);
+        int depth = Integer.parseInt(size[1]);
+        int steps = Integer.parseInt(opts.getOrDefault("steps", "700"));
+        int seedCount = Integer.parseInt(opts.getOrDefault("seeds", "4"));
+        int populationSize = Integer.parseInt(opts.getOrDefault("population", "12"));
+        int generations = Integer.parseInt(opts.getOrDefault("generations", "20"));
+        int workers = Integer.parseInt(opts.getOrDefault("workers", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        double varianceWeight = Double.parseDouble(opts.getOrDefault("variance-weight", "0.25"));
+        long searchSeed = Long.parseLong(opts.getOrDefault("seed", "1"));
+        String out = opts.getOrDefault("out", "best-tuning.txt");
+        if(populationSize < 4) throw new IllegalArgumentException("Population must be at least 4");
+
+        long[] seeds = new long[seedCount];
+        for(int i = 0; i < seedCount; i++) seeds[i] = i + 1;
+
+        TuningSpace space = TuningSpace.parse(ranges, opts.getOrDefault("params", DEFAULT_PARAMS));
+        TuningOptimizer optimizer = new TuningOptimizer(space, depth, width, steps, seeds, workers, varianceWeight, searchSeed);
+        PrintWriter log = new PrintWriter(System.out, true);
+        log.printf("Searching %d values, population %d, %d generations, %d seeds of %d steps%n",
+                space.size(), populationSize, generations, seedCount, steps);
+
+        long start = System.nanoTime();
+        Candidate best = optimizer.search(populationSize, generations, log);
+        List<String> settings = optimizer.settings(best.x());
+        Files.write(Paths.get(out), settings, StandardCharsets.UTF_8);
+        log.printf("Best fitness %.4f after %.1f s, written to %s:%n", best.fitness(), (System.nanoTime() - start) / 1e9, out);
+        for(String s : settings) log.println("  " + s);
+    }
+}
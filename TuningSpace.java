@@ -0,0 +1,154 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * A box of tuning values to search or sample: one Param (key, low, high) per dimension.
+ * A point is a double[] with one value per Param; settings() turns it into the key=value
+ * settings HeadlessWorker takes (whole-number keys rounded).
+ *
+ * Built from key=low:high specs, or from field names (e.g. "maxAge,breedingAge") searched for
+ * every species from half to double their current values. "all" names every numeric field.
+ */
+public class TuningSpace
+{
+    // One value being searched, between low and high
+    public record Param(String key, double low, double high, boolean integer) {}
+
+    private final List<Param> params;
+
+    public TuningSpace(List<Param> params)
+    {
+        this.params = List.copyOf(params);
+    }
+
+    // key=low:high specs if given, otherwise the named fields for every species
+    public static TuningSpace parse(Map<String, String> ranges, String fields)
+    {
+        Map<String, String> tuning = Tuning.snapshot();
+        List<Param> params = new ArrayList<>();
+        if(!ranges.isEmpty()) {
+            for(Map.Entry<String, String> e : ranges.entrySet()) {
+                String current = tuning.get(e.getKey());
+                String[] range = e.getValue().split(":");
+                if(current == null || range.length != 2) throw new IllegalArgumentException("Expected key=low:high for a tuning key: " + e.getKey());
+                params.add(new Param(e.getKey(), Double.parseDouble(range[0]), Double.parseDouble(range[1]), isInteger(current)));
+            }
+            return new TuningSpace(params);
+        }
+
+        boolean all = fields.trim().equals("all");
+        for(SpeciesType type : SpeciesType.values()) {
+            List<String> names = all ? numericFields(tuning, type) : List.of(fields.split(","));
+            for(String field : names) {
+                String key = type.name() + "." + field.trim();
+                String current = tuning.get(key);
+                if(current == null) throw new IllegalArgumentException("No tuning value " + key);
+                double v = Double.parseDouble(current);
+                // nothing to scale (a 0.0 modifier), so leave it out rather than search a point
+                if(v == 0 && !isInteger(current)) continue;
+                boolean integer = isInteger(current);
+                double low = v / 2, high = v * 2;
+                if(integer) {
+                    // small whole numbers still need room to move
+                    low = Math.max(0, Math.min(low, v - 1));
+                    high = Math.max(high, v + 1);
+                }
+                else if(v < 1) {
+                    // fractions are chances, which stop at 1
+                    high = Math.min(high, 1);
+                }
+                params.add(new Param(key, low, high, integer));
+            }
+        }
+        return new TuningSpace(params);
+    }
+
+    // Every field of a species' tuning that holds a number (so not the on/off flags)
+    private static List<String> numericFields(Map<String, String> tuning, SpeciesType type)
+    {
+        List<String> out = new ArrayList<>();
+        String prefix = type.name() + ".";
+        for(Map.Entry<String, String> e : tuning.entrySet()) {
+            if(!e.getKey().startsWith(prefix)) continue;
+            try {
+                Double.parseDouble(e.getValue());
+                out.add(e.getKey().substring(prefix.length()));
+            }
+            catch(NumberFormatException notANumber) {
+                // booleans
+            }
+        }
+        return out;
+    }
+
+    public List<Param> getParams()
+    {
+        return params;
+    }
+
+    public int size()
+    {
+        return params.size();
+    }
+
+    public Param get(int d)
+    {
+        return params.get(d);
+    }
+
+    // The tuning values a point stands for, as key=value settings
+    public List<String> settings(double[] x)
+    {
+        List<String> out = new ArrayList<>();
+        for(int d = 0; d < params.size(); d++) out.add(params.get(d).key() + "=" + format(params.get(d), x[d]));
+        return out;
+    }
+
+    // The current tuning as a point (clamped into the box)
+    public double[] current()
+    {
+        Map<String, String> tuning = Tuning.snapshot();
+        double[] x = new double[params.size()];
+        for(int d = 0; d < x.length; d++) {
+            Param p = params.get(d);
+            x[d] = clamp(p, Double.parseDouble(tuning.get(p.key())));
+        }
+        return x;
+    }
+
+    // The point at fractions u (each 0..1) of the way across every range
+    public double[] fromUnit(double[] u)
+    {
+        double[] x = new double[params.size()];
+        for(int d = 0; d < x.length; d++) {
+            Param p = params.get(d);
+            x[d] = p.low() + u[d] * (p.high() - p.low());
+        }
+        return x;
+    }
+
+    private static double clamp(Param p, double v)
+    {
+        return Math.max(p.low(), Math.min(p.high(), v));
+    }
+
+    private static String format(Param p, double v)
+    {
+        if(p.integer()) return String.valueOf(Math.round(v));
+        return BigDecimal.valueOf(v).setScale(4, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+    }
+
+    private static boolean isInteger(String value)
+    {
+        try {
+            Long.parseLong(value);
+            return true;
+        }
+        catch(NumberFormatException e) {
+            return false;
+        }
+    }
+}
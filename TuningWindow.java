@@ -1,6 +1,5 @@
 import javax.swing.*;
 import java.awt.*;
-import java.util.function.Consumer;
 
 /*
  * Tuning window for changing values while the sim runs.
@@ -16,6 +15,8 @@ public class TuningWindow extends JFrame
     private final JButton stepBtn = new JButton("Step");
     private final JButton resetBtn = new JButton("Reset");
     private final JButton applyBtn = new JButton("Apply");
+    private final JCheckBox perfBox = new JCheckBox("Perf overlay");
+    private final JCheckBox previewBox = new JCheckBox("Preview edits", true);
 
     private final JTabbedPane tabs = new JTabbedPane();
 
@@ -26,13 +27,23 @@ public class TuningWindow extends JFrame
     private JSpinner wClearSpinner, wRainSpinner, wFogSpinner, wHeatSpinner;
     private JSpinner pAllo, pCarno, pDilo, pIgu, pDiablo, pAnky;
 
-    // Stores per-species "apply" hooks (one per tab basically)
-    private final java.util.Map<SpeciesType, Consumer<SpeciesTuning>> speciesApply =
-            new java.util.EnumMap<>(SpeciesType.class);
+    // Edited (not yet applied) values by tuning key, for Apply and the preview
+    private final java.util.Map<String, java.util.function.Supplier<Object>> edits = new java.util.LinkedHashMap<>();
+    // the keys a preview can show (not the ones only populate() reads, which only a Reset uses)
+    private final java.util.Set<String> previewed = new java.util.HashSet<>();
+
+    // How far ahead, and how many runs, a preview looks
+    private static final int PREVIEW_STEPS = 120, PREVIEW_RUNS = 4;
+    private final PreviewPanel previewPanel = new PreviewPanel();
+    private final PreviewService preview;
+    // waits for the spinner clicking to stop before starting a preview
+    private final Timer previewTimer = new Timer(300, e -> requestPreview());
 
     public TuningWindow(Simulator simulator)
     {
         this.simulator = simulator;
+        this.preview = new PreviewService(simulator, PREVIEW_STEPS, PREVIEW_RUNS, previewPanel::show, previewPanel::setStatus);
+        previewTimer.setRepeats(false);
 
         setTitle("Simulation Tuning");
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
@@ -47,6 +58,7 @@ public class TuningWindow extends JFrame
         tabs.addTab("Ankylosaurus", buildSpeciesPanel(SpeciesType.ANKYLOSAURUS));
 
         add(tabs, BorderLayout.CENTER);
+        add(previewPanel, BorderLayout.EAST);
         add(buildBottomBar(), BorderLayout.SOUTH);
 
         pack();
@@ -60,6 +72,8 @@ public class TuningWindow extends JFrame
     private JPanel buildBottomBar()
     {
         JPanel p = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 6));
+        p.add(previewBox);
+        p.add(perfBox);
         p.add(applyBtn);
         p.add(resetBtn);
         p.add(stepBtn);
@@ -71,6 +85,7 @@ public class TuningWindow extends JFrame
     // Hooks up button actions
     private void wireButtons()
     {
+        // between steps, so a running sim (and any replay log) sees the new values from one step on
         applyBtn.addActionListener(e -> applyAll());
 
         resetBtn.addActionListener(e -> {
@@ -81,6 +96,70 @@ public class TuningWindow extends JFrame
         stepBtn.addActionListener(e -> simulator.simulateOneStep());
         runBtn.addActionListener(e -> simulator.startContinuous());
         pauseBtn.addActionListener(e -> simulator.stopContinuous());
+        // shares the view's model, so pressing P over the grid ticks/unticks it too
+        ButtonModel overlay = simulator.getPerfOverlayModel();
+        if(overlay != null) perfBox.setModel(overlay);
+        else perfBox.setEnabled(false);
+        previewBox.addActionListener(e -> {
+            if(previewBox.isSelected()) previewTimer.restart();
+        });
+
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e)
+            {
+                previewTimer.stop();
+                preview.shutdown();
+            }
+        });
+    }
+
+    // Previews the edited values that differ from the ones the sim is using
+    private void requestPreview()
+    {
+        if(!previewBox.isSelected()) return;
+        java.util.Map<String, String> current = Tuning.snapshot();
+        java.util.List<String> settings = new java.util.ArrayList<>();
+        for(java.util.Map.Entry<String, String> e : readEdits().entrySet()) {
+            if(!previewed.contains(e.getKey())) continue;
+            if(!e.getValue().equals(current.get(e.getKey()))) settings.add(e.getKey() + "=" + e.getValue());
+        }
+        preview.request(settings);
+    }
+
+    // What every tracked spinner/checkbox holds right now, by tuning key (call on the EDT)
+    private java.util.Map<String, String> readEdits()
+    {
+        java.util.Map<String, String> values = new java.util.LinkedHashMap<>();
+        for(java.util.Map.Entry<String, java.util.function.Supplier<Object>> e : edits.entrySet()) {
+            values.put(e.getKey(), String.valueOf(e.getValue().get()));
+        }
+        return values;
+    }
+
+    // Remembers which tuning key a spinner edits, and previews it when it changes
+    private JSpinner track(String key, JSpinner spinner)
+    {
+        edits.put(key, spinner::getValue);
+        previewed.add(key);
+        spinner.addChangeListener(e -> previewTimer.restart());
+        return spinner;
+    }
+
+    private JCheckBox track(String key, JCheckBox box)
+    {
+        edits.put(key, box::isSelected);
+        previewed.add(key);
+        box.addActionListener(e -> previewTimer.restart());
+        return box;
+    }
+
+    // A value only the start of a world uses: applied like the rest, but a preview (which
+    // carries on from the running world) would never show it
+    private JSpinner trackForReset(String key, JSpinner spinner)
+    {
+        edits.put(key, spinner::getValue);
+        return spinner;
     }
 
     // Builds the global tab
@@ -91,42 +170,42 @@ public class TuningWindow extends JFrame
 
         delayMs = spinnerInt(Tuning.simDelayMs, 0, 500, 5);
 
-        vegInitMin = spinnerInt(Tuning.vegInitialMin, 0, 100, 1);
-        vegInitMax = spinnerInt(Tuning.vegInitialMax, 0, 100, 1);
+        vegInitMin = trackForReset("vegInitialMin", spinnerInt(Tuning.vegInitialMin, 0, 100, 1));
+        vegInitMax = trackForReset("vegInitialMax", spinnerInt(Tuning.vegInitialMax, 0, 100, 1));
 
-        vegRegrowChance = spinnerDouble(Tuning.vegRegrowChance, 0.0, 1.0, 0.01);
-        vegGrowDay = spinnerInt(Tuning.vegRegrowAmountDay, 0, 10, 1);
-        vegGrowNight = spinnerInt(Tuning.vegRegrowAmountNight, 0, 10, 1);
+        vegRegrowChance = track("vegRegrowChance", spinnerDouble(Tuning.vegRegrowChance, 0.0, 1.0, 0.01));
+        vegGrowDay = track("vegRegrowAmountDay", spinnerInt(Tuning.vegRegrowAmountDay, 0, 10, 1));
+        vegGrowNight = track("vegRegrowAmountNight", spinnerInt(Tuning.vegRegrowAmountNight, 0, 10, 1));
 
-        seedInf = spinnerInt(Tuning.initialInfections, 0, 200, 1);
-        outbreakChance = spinnerDouble(Tuning.spontaneousOutbreakChance, 0.0, 0.05, 0.0005);
+        seedInf = trackForReset("initialInfections", spinnerInt(Tuning.initialInfections, 0, 200, 1));
+        outbreakChance = track("spontaneousOutbreakChance", spinnerDouble(Tuning.spontaneousOutbreakChance, 0.0, 0.05, 0.0005));
 
-        infMinDur = spinnerInt(Tuning.infectionMinDuration, 0, 200, 1);
-        infMaxDur = spinnerInt(Tuning.infectionMaxDuration, 0, 200, 1);
-        adjSpreadChance = spinnerDouble(Tuning.adjacentSpreadChance, 0.0, 1.0, 0.01);
-        predEatInfChance = spinnerDouble(Tuning.predatorEatInfectedChance, 0.0, 1.0, 0.01);
-        extraDrain = spinnerInt(Tuning.extraInfectedEnergyLoss, 0, 10, 1);
-        surviveThresh = spinnerInt(Tuning.surviveEnergyThreshold, 0, 50, 1);
-        immuneDur = spinnerInt(Tuning.immunityDuration, 0, 200, 1);
+        infMinDur = track("infectionMinDuration", spinnerInt(Tuning.infectionMinDuration, 0, 200, 1));
+        infMaxDur = track("infectionMaxDuration", spinnerInt(Tuning.infectionMaxDuration, 0, 200, 1));
+        adjSpreadChance = track("adjacentSpreadChance", spinnerDouble(Tuning.adjacentSpreadChance, 0.0, 1.0, 0.01));
+        predEatInfChance = track("predatorEatInfectedChance", spinnerDouble(Tuning.predatorEatInfectedChance, 0.0, 1.0, 0.01));
+        extraDrain = track("extraInfectedEnergyLoss", spinnerInt(Tuning.extraInfectedEnergyLoss, 0, 10, 1));
+        surviveThresh = track("surviveEnergyThreshold", spinnerInt(Tuning.surviveEnergyThreshold, 0, 50, 1));
+        immuneDur = track("immunityDuration", spinnerInt(Tuning.immunityDuration, 0, 200, 1));
 
-        wClearSpinner = spinnerDouble(Tuning.wClear, 0.0, 1.0, 0.01);
-        wRainSpinner = spinnerDouble(Tuning.wRain, 0.0, 1.0, 0.01);
-        wFogSpinner = spinnerDouble(Tuning.wFog, 0.0, 1.0, 0.01);
-        wHeatSpinner = spinnerDouble(Tuning.wHeat, 0.0, 1.0, 0.01);
+        wClearSpinner = track("wClear", spinnerDouble(Tuning.wClear, 0.0, 1.0, 0.01));
+        wRainSpinner = track("wRain", spinnerDouble(Tuning.wRain, 0.0, 1.0, 0.01));
+        wFogSpinner = track("wFog", spinnerDouble(Tuning.wFog, 0.0, 1.0, 0.01));
+        wHeatSpinner = track("wHeat", spinnerDouble(Tuning.wHeat, 0.0, 1.0, 0.01));
 
-        pAllo = spinnerDouble(Tuning.pAllosaurus, 0.0, 0.20, 0.001);
-        pCarno = spinnerDouble(Tuning.pCarnotaurus, 0.0, 0.20, 0.001);
-        pDilo = spinnerDouble(Tuning.pDilophosaurus, 0.0, 0.20, 0.001);
+        pAllo = trackForReset("pAllosaurus", spinnerDouble(Tuning.pAllosaurus, 0.0, 0.20, 0.001));
+        pCarno = trackForReset("pCarnotaurus", spinnerDouble(Tuning.pCarnotaurus, 0.0, 0.20, 0.001));
+        pDilo = trackForReset("pDilophosaurus", spinnerDouble(Tuning.pDilophosaurus, 0.0, 0.20, 0.001));
 
-        pIgu = spinnerDouble(Tuning.pIguanadon, 0.0, 0.40, 0.001);
-        pDiablo = spinnerDouble(Tuning.pDiabloceratops, 0.0, 0.40, 0.001);
-        pAnky = spinnerDouble(Tuning.pAnkylosaurus, 0.0, 0.40, 0.001);
+        pIgu = trackForReset("pIguanadon", spinnerDouble(Tuning.pIguanadon, 0.0, 0.40, 0.001));
+        pDiablo = trackForReset("pDiabloceratops", spinnerDouble(Tuning.pDiabloceratops, 0.0, 0.40, 0.001));
+        pAnky = trackForReset("pAnkylosaurus", spinnerDouble(Tuning.pAnkylosaurus, 0.0, 0.40, 0.001));
 
         int r = 0;
         addRow(panel, gc, r++, "Sim delay (ms)", delayMs);
 
-        addRow(panel, gc, r++, "Veg init min", vegInitMin);
-        addRow(panel, gc, r++, "Veg init max", vegInitMax);
+        addRow(panel, gc, r++, "Veg init min (on Reset)", vegInitMin);
+        addRow(panel, gc, r++, "Veg init max (on Reset)", vegInitMax);
         addRow(panel, gc, r++, "Veg regrow chance", vegRegrowChance);
         addRow(panel, gc, r++, "Veg grow day", vegGrowDay);
         addRow(panel, gc, r++, "Veg grow night", vegGrowNight);
@@ -148,17 +227,17 @@ public class TuningWindow extends JFrame
         addRow(panel, gc, r++, "Weather: Heatwave weight", wHeatSpinner);
 
         addSeparator(panel, gc, r++);
-        addRow(panel, gc, r++, "Spawn p(Allosaurus)", pAllo);
-        addRow(panel, gc, r++, "Spawn p(Carnotaurus)", pCarno);
-        addRow(panel, gc, r++, "Spawn p(Dilophosaurus)", pDilo);
-        addRow(panel, gc, r++, "Spawn p(Iguanadon)", pIgu);
-        addRow(panel, gc, r++, "Spawn p(Diabloceratops)", pDiablo);
-        addRow(panel, gc, r++, "Spawn p(Ankylosaurus)", pAnky);
+        addRow(panel, gc, r++, "Spawn p(Allosaurus) (on Reset)", pAllo);
+        addRow(panel, gc, r++, "Spawn p(Carnotaurus) (on Reset)", pCarno);
+        addRow(panel, gc, r++, "Spawn p(Dilophosaurus) (on Reset)", pDilo);
+        addRow(panel, gc, r++, "Spawn p(Iguanadon) (on Reset)", pIgu);
+        addRow(panel, gc, r++, "Spawn p(Diabloceratops) (on Reset)", pDiablo);
+        addRow(panel, gc, r++, "Spawn p(Ankylosaurus) (on Reset)", pAnky);
 
         return panel;
     }
 
-    // Builds one species tab and registers an apply hook for that species
+    // Builds one species tab (its spinners are tracked by tuning key, like the global ones)
     private JPanel buildSpeciesPanel(SpeciesType type)
     {
         SpeciesTuning t = Tuning.get(type);
@@ -167,15 +246,15 @@ public class TuningWindow extends JFrame
         GridBagConstraints gc = baseGC();
         int r = 0;
 
-        JSpinner maxEnergy = spinnerInt(t.maxEnergy, 1, 200, 1);
-        JSpinner stepLoss = spinnerInt(t.stepEnergyLoss, 0, 10, 1);
-        JSpinner maxAge = spinnerInt(t.maxAge, 1, 1000, 1);
+        JSpinner maxEnergy = track(type.name() + ".maxEnergy", spinnerInt(t.maxEnergy, 1, 200, 1));
+        JSpinner stepLoss = track(type.name() + ".stepEnergyLoss", spinnerInt(t.stepEnergyLoss, 0, 10, 1));
+        JSpinner maxAge = track(type.name() + ".maxAge", spinnerInt(t.maxAge, 1, 1000, 1));
 
-        JSpinner breedingAge = spinnerInt(t.breedingAge, 0, 200, 1);
-        JSpinner breedProb = spinnerDouble(t.breedingProbability, 0.0, 1.0, 0.01);
-        JSpinner maxLitter = spinnerInt(t.maxLitterSize, 0, 20, 1);
-        JSpinner breedEnergy = spinnerInt(t.breedingEnergyThreshold, 0, 200, 1);
-        JSpinner babyCost = spinnerInt(t.energyCostPerBaby, 0, 50, 1);
+        JSpinner breedingAge = track(type.name() + ".breedingAge", spinnerInt(t.breedingAge, 0, 200, 1));
+        JSpinner breedProb = track(type.name() + ".breedingProbability", spinnerDouble(t.breedingProbability, 0.0, 1.0, 0.01));
+        JSpinner maxLitter = track(type.name() + ".maxLitterSize", spinnerInt(t.maxLitterSize, 0, 20, 1));
+        JSpinner breedEnergy = track(type.name() + ".breedingEnergyThreshold", spinnerInt(t.breedingEnergyThreshold, 0, 200, 1));
+        JSpinner babyCost = track(type.name() + ".energyCostPerBaby", spinnerInt(t.energyCostPerBaby, 0, 50, 1));
 
         addRow(panel, gc, r++, "Max energy", maxEnergy);
         addRow(panel, gc, r++, "Energy loss/step", stepLoss);
@@ -193,48 +272,31 @@ public class TuningWindow extends JFrame
         if(carn) {
             addSeparator(panel, gc, r++);
 
-            JSpinner attack = spinnerInt(t.attack, 0, 50, 1);
-            JSpinner baseKill = spinnerDouble(t.baseKillChance, 0.0, 1.0, 0.01);
-            JSpinner dayMod = spinnerDouble(t.dayKillMod, 0.0, 2.0, 0.01);
-            JSpinner nightMod = spinnerDouble(t.nightKillMod, 0.0, 2.0, 0.01);
+            JSpinner attack = track(type.name() + ".attack", spinnerInt(t.attack, 0, 50, 1));
+            JSpinner baseKill = track(type.name() + ".baseKillChance", spinnerDouble(t.baseKillChance, 0.0, 1.0, 0.01));
+            JSpinner dayMod = track(type.name() + ".dayKillMod", spinnerDouble(t.dayKillMod, 0.0, 2.0, 0.01));
+            JSpinner nightMod = track(type.name() + ".nightKillMod", spinnerDouble(t.nightKillMod, 0.0, 2.0, 0.01));
 
             addRow(panel, gc, r++, "Attack", attack);
             addRow(panel, gc, r++, "Base kill chance", baseKill);
             addRow(panel, gc, r++, "Day kill modifier", dayMod);
             addRow(panel, gc, r++, "Night kill modifier", nightMod);
 
-            JCheckBox nightOnly = new JCheckBox("Hunt only at night", t.huntOnlyAtNight);
+            JCheckBox nightOnly = track(type.name() + ".huntOnlyAtNight", new JCheckBox("Hunt only at night", t.huntOnlyAtNight));
             gc.gridx = 0; gc.gridy = r; gc.gridwidth = 2;
             panel.add(nightOnly, gc);
             r++;
-
-            attachApplyHook(type, s -> {
-                s.maxAge = (int) maxAge.getValue();
-                s.maxEnergy = (int) maxEnergy.getValue();
-                s.stepEnergyLoss = (int) stepLoss.getValue();
-                s.breedingAge = (int) breedingAge.getValue();
-                s.breedingProbability = (double) breedProb.getValue();
-                s.maxLitterSize = (int) maxLitter.getValue();
-                s.breedingEnergyThreshold = (int) breedEnergy.getValue();
-                s.energyCostPerBaby = (int) babyCost.getValue();
-
-                s.attack = (int) attack.getValue();
-                s.baseKillChance = (double) baseKill.getValue();
-                s.dayKillMod = (double) dayMod.getValue();
-                s.nightKillMod = (double) nightMod.getValue();
-                s.huntOnlyAtNight = nightOnly.isSelected();
-            });
         }
         else {
             addSeparator(panel, gc, r++);
 
-            JSpinner defence = spinnerInt(t.defence, 0, 50, 1);
-            JSpinner biteSize = spinnerInt(t.biteSize, 0, 200, 1);
-            JSpinner energyPerVeg = spinnerInt(t.energyPerVeg, 1, 50, 1);
-            JSpinner minVegBreed = spinnerInt(t.minVegToBreed, 0, 100, 1);
+            JSpinner defence = track(type.name() + ".defence", spinnerInt(t.defence, 0, 50, 1));
+            JSpinner biteSize = track(type.name() + ".biteSize", spinnerInt(t.biteSize, 0, 200, 1));
+            JSpinner energyPerVeg = track(type.name() + ".energyPerVeg", spinnerInt(t.energyPerVeg, 1, 50, 1));
+            JSpinner minVegBreed = track(type.name() + ".minVegToBreed", spinnerInt(t.minVegToBreed, 0, 100, 1));
 
-            JCheckBox heavy = new JCheckBox("Heavy (slow in rain)", t.heavy);
-            JSpinner rainSkip = spinnerDouble(t.rainMoveSkipChance, 0.0, 1.0, 0.05);
+            JCheckBox heavy = track(type.name() + ".heavy", new JCheckBox("Heavy (slow in rain)", t.heavy));
+            JSpinner rainSkip = track(type.name() + ".rainMoveSkipChance", spinnerDouble(t.rainMoveSkipChance, 0.0, 1.0, 0.05));
 
             addRow(panel, gc, r++, "Defence", defence);
             addRow(panel, gc, r++, "Bite size", biteSize);
@@ -245,76 +307,21 @@ public class TuningWindow extends JFrame
             panel.add(heavy, gc);
             r++;
             addRow(panel, gc, r++, "Rain move skip chance", rainSkip);
-
-            attachApplyHook(type, s -> {
-                s.maxAge = (int) maxAge.getValue();
-                s.maxEnergy = (int) maxEnergy.getValue();
-                s.stepEnergyLoss = (int) stepLoss.getValue();
-                s.breedingAge = (int) breedingAge.getValue();
-                s.breedingProbability = (double) breedProb.getValue();
-                s.maxLitterSize = (int) maxLitter.getValue();
-                s.breedingEnergyThreshold = (int) breedEnergy.getValue();
-                s.energyCostPerBaby = (int) babyCost.getValue();
-
-                s.defence = (int) defence.getValue();
-                s.biteSize = (int) biteSize.getValue();
-                s.energyPerVeg = (int) energyPerVeg.getValue();
-                s.minVegToBreed = (int) minVegBreed.getValue();
-
-                s.heavy = heavy.isSelected();
-                s.rainMoveSkipChance = (double) rainSkip.getValue();
-            });
         }
 
         return panel;
     }
 
-    // Registers a hook that runs when Apply is pressed
-    private void attachApplyHook(SpeciesType type, Consumer<SpeciesTuning> hook)
-    {
-        speciesApply.put(type, hook);
-    }
-
-    // Copies UI values back into Tuning
+    // Copies UI values back into Tuning. They're read here on the EDT, when Apply is clicked;
+    // only the writes wait for the gap between two steps
     private void applyAll()
     {
-        Tuning.simDelayMs = (int) delayMs.getValue();
-
-        Tuning.vegInitialMin = (int) vegInitMin.getValue();
-        Tuning.vegInitialMax = (int) vegInitMax.getValue();
-        Tuning.vegRegrowChance = (double) vegRegrowChance.getValue();
-        Tuning.vegRegrowAmountDay = (int) vegGrowDay.getValue();
-        Tuning.vegRegrowAmountNight = (int) vegGrowNight.getValue();
-
-        Tuning.initialInfections = (int) seedInf.getValue();
-        Tuning.spontaneousOutbreakChance = (double) outbreakChance.getValue();
-        Tuning.infectionMinDuration = (int) infMinDur.getValue();
-        Tuning.infectionMaxDuration = (int) infMaxDur.getValue();
-        Tuning.adjacentSpreadChance = (double) adjSpreadChance.getValue();
-        Tuning.predatorEatInfectedChance = (double) predEatInfChance.getValue();
-        Tuning.extraInfectedEnergyLoss = (int) extraDrain.getValue();
-        Tuning.surviveEnergyThreshold = (int) surviveThresh.getValue();
-        Tuning.immunityDuration = (int) immuneDur.getValue();
-
-        Tuning.wClear = (double) wClearSpinner.getValue();
-        Tuning.wRain = (double) wRainSpinner.getValue();
-        Tuning.wFog = (double) wFogSpinner.getValue();
-        Tuning.wHeat = (double) wHeatSpinner.getValue();
-
-        Tuning.pAllosaurus = (double) pAllo.getValue();
-        Tuning.pCarnotaurus = (double) pCarno.getValue();
-        Tuning.pDilophosaurus = (double) pDilo.getValue();
-
-        Tuning.pIguanadon = (double) pIgu.getValue();
-        Tuning.pDiabloceratops = (double) pDiablo.getValue();
-        Tuning.pAnkylosaurus = (double) pAnky.getValue();
-
-        for(SpeciesType st : SpeciesType.values()) {
-            Consumer<SpeciesTuning> hook = speciesApply.get(st);
-            if(hook != null) hook.accept(Tuning.get(st));
-        }
-
-        // System.out.println("[tuning] applied");
+        int delay = (int) delayMs.getValue();
+        java.util.Map<String, String> values = readEdits();
+        simulator.runBetweenSteps(() -> {
+            Tuning.simDelayMs = delay;
+            Tuning.restore(values);
+        });
     }
 
     // GridBag default settings (makes layout easier)
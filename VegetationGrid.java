@@ -0,0 +1,200 @@
+import java.nio.ByteBuffer;
+
+/*
+ * Vegetation amounts (0..100) for a whole field, kept as bands of CHUNK_ROWS rows ("chunks").
+ * Chunks can be shared between grids and are copy-on-write: a grid only copies a chunk the
+ * first time it writes to it. So handing vegetation on to the next step's Field, or to a fork,
+ * costs nothing up front.
+ * A grid can also sit on top of a ByteBuffer (e.g. a memory-mapped checkpoint). Chunks are then
+ * read straight out of the buffer and only copied onto the heap once something writes to them.
+ *
+ * Not thread safe. Sharing touches both grids, so don't share while either one is being stepped.
+ */
+public class VegetationGrid
+{
+    public static final int CHUNK_ROWS = 16;
+
+    private final int depth, width;
+    private final int chunkBytes;
+
+    // null = not copied out of the backing buffer yet
+    private final byte[][] chunks;
+    // false = someone else can see this chunk, copy it before writing
+    private final boolean[] owned;
+    private ByteBuffer backing;
+
+    // Fresh grid, all zero
+    public VegetationGrid(int depth, int width)
+    {
+        this(depth, width, null);
+        for(int k = 0; k < chunks.length; k++) {
+            chunks[k] = new byte[chunkLength(k)];
+            owned[k] = true;
+        }
+    }
+
+    private VegetationGrid(int depth, int width, ByteBuffer backing)
+    {
+        this.depth = depth;
+        this.width = width;
+        this.chunkBytes = CHUNK_ROWS * width;
+        this.chunks = new byte[(depth + CHUNK_ROWS - 1) / CHUNK_ROWS][];
+        this.owned = new boolean[chunks.length];
+        this.backing = backing;
+    }
+
+    // Grid that reads depth*width bytes (row by row) from the buffer, which is never written to
+    public static VegetationGrid over(int depth, int width, ByteBuffer bytes)
+    {
+        if(bytes.remaining() < (long) depth * width) {
+            throw new IllegalArgumentException("Buffer too small for a " + depth + "x" + width + " grid");
+        }
+        return new VegetationGrid(depth, width, bytes.slice());
+    }
+
+    // A new grid with the same contents, sharing every chunk
+    public VegetationGrid fork()
+    {
+        VegetationGrid copy = new VegetationGrid(depth, width, null);
+        copy.shareFrom(this);
+        return copy;
+    }
+
+    // Takes on other's contents by sharing its chunks (sizes must match)
+    public void shareFrom(VegetationGrid other)
+    {
+        if(other.depth != depth || other.width != width) {
+            throw new IllegalArgumentException("Grid sizes differ");
+        }
+        for(int k = 0; k < chunks.length; k++) {
+            chunks[k] = other.chunks[k];
+            owned[k] = false;
+            other.owned[k] = false;
+        }
+        backing = other.backing;
+    }
+
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int get(int row, int col)
+    {
+        int k = row / CHUNK_ROWS;
+        int offset = (row - k * CHUNK_ROWS) * width + col;
+        byte[] chunk = chunks[k];
+        return (chunk != null) ? chunk[offset] & 0xFF : backing.get(k * chunkBytes + offset) & 0xFF;
+    }
+
+    public void set(int row, int col, int value)
+    {
+        int k = row / CHUNK_ROWS;
+        writableChunk(k)[(row - k * CHUNK_ROWS) * width + col] = (byte) value;
+    }
+
+    // Copies one row into dest
+    public void getRow(int row, int[] dest)
+    {
+        int k = row / CHUNK_ROWS;
+        int base = (row - k * CHUNK_ROWS) * width;
+        byte[] chunk = chunks[k];
+        for(int c = 0; c < width; c++) {
+            dest[c] = (chunk != null) ? chunk[base + c] & 0xFF : backing.get(k * chunkBytes + base + c) & 0xFF;
+        }
+    }
+
+    // Overwrites one row from src
+    public void setRow(int row, int[] src)
+    {
+        int k = row / CHUNK_ROWS;
+        byte[] chunk = writableChunk(k);
+        int base = (row - k * CHUNK_ROWS) * width;
+        for(int c = 0; c < width; c++) chunk[base + c] = (byte) src[c];
+    }
+
+    // Sum of every cell
+    public long total()
+    {
+        long total = 0;
+        for(int k = 0; k < chunks.length; k++) {
+            byte[] chunk = readableChunk(k);
+            for(byte b : chunk) total += b & 0xFF;
+        }
+        return total;
+    }
+
+    // XOR of a mixed hash per cell (position and amount), see WorldHash; reads every cell
+    public long stateHash()
+    {
+        long hash = 0;
+        for(int k = 0; k < chunks.length; k++) {
+            byte[] chunk = readableChunk(k);
+            long cell = (long) k * chunkBytes;
+            for(int i = 0; i < chunk.length; i++) {
+                hash ^= WorldHash.mix(((cell + i) << 8) | (chunk[i] & 0xFF));
+            }
+        }
+        return hash;
+    }
+
+    public int getChunkCount()
+    {
+        return chunks.length;
+    }
+
+    // Rows in chunk k (the last chunk can be short)
+    public int getChunkRows(int k)
+    {
+        return Math.min(CHUNK_ROWS, depth - k * CHUNK_ROWS);
+    }
+
+    // True if both grids still see the very same chunk k (so its contents are equal)
+    public boolean sharesChunk(VegetationGrid other, int k)
+    {
+        if(chunks[k] == null) return other.chunks[k] == null && backing == other.backing;
+        return chunks[k] == other.chunks[k];
+    }
+
+    // Chunk k as row-major bytes, for reading only
+    byte[] readableChunk(int k)
+    {
+        byte[] chunk = chunks[k];
+        return (chunk != null) ? chunk : writableChunk(k);
+    }
+
+    // Chunk k as row-major bytes, copied first if anything else can see it
+    byte[] writableChunk(int k)
+    {
+        if(owned[k]) return chunks[k];
+
+        byte[] copy = new byte[chunkLength(k)];
+        if(chunks[k] != null) {
+            System.arraycopy(chunks[k], 0, copy, 0, copy.length);
+        }
+        else {
+            backing.get(k * chunkBytes, copy);
+        }
+        chunks[k] = copy;
+        owned[k] = true;
+        return copy;
+    }
+
+    // How many chunks have been copied/written by this grid (rest are shared)
+    public int getOwnedChunkCount()
+    {
+        int n = 0;
+        for(boolean o : owned) if(o) n++;
+        return n;
+    }
+
+    private int chunkLength(int k)
+    {
+        return getChunkRows(k) * width;
+    }
+}
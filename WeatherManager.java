@@ -34,13 +34,29 @@ public class WeatherManager
             if(current == WeatherState.HEATWAVE) consecutiveHeatwaveCycles++;
             else consecutiveHeatwaveCycles = 0;
 
+            WeatherState previous = current;
             current = rollNextWeather();
             stepsUntilChange = CHANGE_INTERVAL;
+            if(current != previous) SimEvents.weatherChanged(previous, current, consecutiveHeatwaveCycles);
 
             // System.out.println("[weather] now " + current + " heatStreak=" + consecutiveHeatwaveCycles);
         }
     }
 
+    // Steps left before the next weather roll
+    public static int getStepsUntilChange()
+    {
+        return stepsUntilChange;
+    }
+
+    // Puts the weather back to a saved state (checkpoints)
+    public static void restore(WeatherState weather, int untilChange, int heatwaveCycles)
+    {
+        current = weather;
+        stepsUntilChange = untilChange;
+        consecutiveHeatwaveCycles = heatwaveCycles;
+    }
+
     // Gets current weather
     public static WeatherState getWeather()
     {
@@ -0,0 +1,330 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Saves a whole world to a compact binary file and loads it back, so a long run can be
+ * stopped and resumed (or sent to someone). Loading puts back everything the next step
+ * depends on, so a resumed run carries on exactly like the original would have.
+ *
+ * Everything streams through one reusable NIO buffer, so the size of the world doesn't
+ * matter for memory and big worlds go at disk speed.
+ *
+ * Layout (big-endian, "varint" = 7 bits per byte, low bits first):
+ *   "DCKP", int version, int depth, int width, int step
+ *   byte timeOfDay, byte weather, int stepsUntilChange, int heatwaveCycles, long rngState
+ *   int tuningCount, then (utf key, utf value) pairs   (utf = short length + UTF-8)
+ *   vegetation: depth*width bytes, row by row
+ *   int dinoCount, then per dino in the field's list order:
+ *     byte species, byte flags (alive, female, infected, infectionChanged),
+ *     varint row, varint col, varint maxEnergy, energy, age, infectionTimer, immunityTimer
+ *   "DEND"
+ *
+ * Command line:
+ *   java WorldCheckpoint save depth width steps file     run headless, then save
+ *   java WorldCheckpoint resume file steps [saveTo]      load, run more steps, maybe save again
+ */
+public class WorldCheckpoint
+{
+    private static final int MAGIC = 0x44434B50;      // "DCKP"
+    private static final int END_MAGIC = 0x44454E44;  // "DEND"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private static final int ALIVE = 1, FEMALE = 2, INFECTED = 4, INFECTION_CHANGED = 8;
+
+    private WorldCheckpoint() {}
+
+    // Writes the simulator's current world (call between steps)
+    public static void save(Simulator sim, Path path) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            save(sim, channel);
+        }
+    }
+
+    // Same, into a channel that's already open (e.g. the middle of a ReplayLog); leaves it open
+    public static void save(Simulator sim, WritableByteChannel channel) throws IOException
+    {
+        Field field = sim.getField();
+        int depth = field.getDepth(), width = field.getWidth();
+
+        Out out = new Out(channel);
+        out.need(64);
+        out.buf.putInt(MAGIC).putInt(VERSION).putInt(depth).putInt(width).putInt(sim.getStep());
+        out.buf.put((byte) TimeManager.getTimeOfDay().ordinal());
+        out.buf.put((byte) WeatherManager.getWeather().ordinal());
+        out.buf.putInt(WeatherManager.getStepsUntilChange());
+        out.buf.putInt(WeatherManager.getConsecutiveHeatwaveCycles());
+        out.buf.putLong(Randomizer.getState());
+
+        Map<String, String> tuning = Tuning.snapshot();
+        out.need(4);
+        out.buf.putInt(tuning.size());
+        for(Map.Entry<String, String> e : tuning.entrySet()) {
+            out.putUtf(e.getKey());
+            out.putUtf(e.getValue());
+        }
+
+        int[] row = new int[width];
+        for(int r = 0; r < depth; r++) {
+            field.getVegetationRow(r, row);
+            for(int c = 0; c < width; c++) {
+                out.need(1);
+                out.buf.put((byte) row[c]);
+            }
+        }
+
+        // dead dinos have no location, so find every dino's cell from the map
+        Map<Dinosaur, Location> cells = new IdentityHashMap<>();
+        for(Map.Entry<Location, Dinosaur> e : field.getOccupants().entrySet()) {
+            cells.put(e.getValue(), e.getKey());
+        }
+
+        List<Dinosaur> dinos = field.getDinosaurs();
+        out.need(4);
+        out.buf.putInt(dinos.size());
+        for(Dinosaur d : dinos) {
+            Location cell = cells.get(d);
+            int flags = (d.isAlive() ? ALIVE : 0) | (d.isFemale() ? FEMALE : 0)
+                    | (d.isInfected() ? INFECTED : 0) | (d.hasPendingInfectionChange() ? INFECTION_CHANGED : 0);
+
+            out.need(2 + 7 * 5);
+            out.buf.put((byte) d.getSpeciesType().ordinal());
+            out.buf.put((byte) flags);
+            out.putVarint(cell.row());
+            out.putVarint(cell.col());
+            out.putVarint(d.getMaxEnergy());
+            out.putVarint(d.getEnergy());
+            out.putVarint(d.getAge());
+            out.putVarint(d.getInfectionTimer());
+            out.putVarint(d.getImmunityTimer());
+        }
+
+        out.need(4);
+        out.buf.putInt(END_MAGIC);
+        out.flush();
+    }
+
+    // Loads a checkpoint into a simulator (replaces its world, time, weather, rng and tuning)
+    public static void load(Simulator sim, Path path) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            load(sim, channel);
+        }
+    }
+
+    // Same, from an open channel at the start of a checkpoint (may read past its end; leaves it open)
+    public static void load(Simulator sim, ReadableByteChannel channel) throws IOException
+    {
+        In in = new In(channel);
+        in.need(4 * 5);
+        if(in.buf.getInt() != MAGIC) throw new IOException("Not a world checkpoint");
+        int version = in.buf.getInt();
+        if(version != VERSION) throw new IOException("Unsupported checkpoint version " + version);
+
+        int depth = in.buf.getInt();
+        int width = in.buf.getInt();
+        int step = in.buf.getInt();
+
+        in.need(2 + 4 + 4 + 8);
+        TimeOfDay time = TimeOfDay.values()[in.buf.get()];
+        WeatherState weather = WeatherState.values()[in.buf.get()];
+        int untilChange = in.buf.getInt();
+        int heatwaveCycles = in.buf.getInt();
+        long rngState = in.buf.getLong();
+
+        in.need(4);
+        int tuningCount = in.buf.getInt();
+        Map<String, String> tuning = new TreeMap<>();
+        for(int i = 0; i < tuningCount; i++) {
+            tuning.put(in.getUtf(), in.getUtf());
+        }
+
+        // empty grid: the usual random start vegetation would only be overwritten
+        Field field = new Field(new VegetationGrid(depth, width));
+        int[] row = new int[width];
+        for(int r = 0; r < depth; r++) {
+            for(int c = 0; c < width; c++) {
+                in.need(1);
+                row[c] = in.buf.get();
+            }
+            field.setVegetationRow(r, row);
+        }
+
+        in.need(4);
+        int count = in.buf.getInt();
+        SpeciesType[] species = SpeciesType.values();
+        for(int i = 0; i < count; i++) {
+            in.need(2);
+            SpeciesType type = species[in.buf.get()];
+            int flags = in.buf.get();
+            Location cell = new Location(in.getVarint(), in.getVarint());
+            int maxEnergy = in.getVarint();
+            int energy = in.getVarint();
+            int age = in.getVarint();
+            int infectionTimer = in.getVarint();
+            int immunityTimer = in.getVarint();
+
+            Dinosaur d = Dinosaur.create(type, cell, (flags & FEMALE) != 0);
+            d.restoreState((flags & ALIVE) != 0, (flags & FEMALE) != 0, maxEnergy, energy, age,
+                    (flags & INFECTED) != 0, infectionTimer, immunityTimer, (flags & INFECTION_CHANGED) != 0);
+            field.placeDinosaur(d, cell);
+        }
+
+        in.need(4);
+        if(in.buf.getInt() != END_MAGIC) throw new IOException("Checkpoint is truncated or corrupt");
+
+        // then the globals it was saved with (making the dinos above left the rng alone)
+        new SimGlobals(tuning, time, weather, untilChange, heatwaveCycles, rngState).install();
+        sim.restoreWorld(field, step);
+    }
+
+    // Just the size out of a checkpoint header (so a matching Simulator can be made first)
+    public static int[] readSize(Path path) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            In in = new In(channel);
+            in.need(16);
+            if(in.buf.getInt() != MAGIC) throw new IOException("Not a world checkpoint: " + path);
+            in.buf.getInt();
+            return new int[] { in.buf.getInt(), in.buf.getInt() };
+        }
+    }
+
+    /*
+     * Buffered writer over a channel: need(n) makes sure n bytes fit before putting them.
+     * Nothing reaches the channel until flush().
+     */
+    private static class Out
+    {
+        final WritableByteChannel channel;
+        final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Out(WritableByteChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        void need(int bytes) throws IOException
+        {
+            if(buf.remaining() < bytes) drain();
+        }
+
+        void putVarint(int value)
+        {
+            while((value & ~0x7F) != 0) {
+                buf.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buf.put((byte) value);
+        }
+
+        void putUtf(String s) throws IOException
+        {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            need(2 + bytes.length);
+            buf.putShort((short) bytes.length).put(bytes);
+        }
+
+        private void drain() throws IOException
+        {
+            buf.flip();
+            while(buf.hasRemaining()) channel.write(buf);
+            buf.clear();
+        }
+
+        void flush() throws IOException
+        {
+            drain();
+        }
+    }
+
+    /*
+     * Buffered reader over a channel: need(n) refills until n bytes are available.
+     */
+    private static class In
+    {
+        final ReadableByteChannel channel;
+        final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        In(ReadableByteChannel channel)
+        {
+            this.channel = channel;
+            buf.flip();
+        }
+
+        void need(int bytes) throws IOException
+        {
+            if(buf.remaining() >= bytes) return;
+            buf.compact();
+            while(buf.position() < bytes) {
+                if(channel.read(buf) < 0) throw new EOFException("Checkpoint ended early");
+            }
+            buf.flip();
+        }
+
+        int getVarint() throws IOException
+        {
+            int result = 0;
+            for(int shift = 0; ; shift += 7) {
+                need(1);
+                byte b = buf.get();
+                result |= (b & 0x7F) << shift;
+                if((b & 0x80) == 0) return result;
+            }
+        }
+
+        String getUtf() throws IOException
+        {
+            need(2);
+            byte[] bytes = new byte[buf.getShort()];
+            need(bytes.length);
+            buf.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        System.setProperty("java.awt.headless", "true");
+
+        if(args.length >= 5 && args[0].equals("save")) {
+            Simulator sim = new Simulator(Integer.parseInt(args[1]), Integer.parseInt(args[2]), true);
+            sim.simulate(Integer.parseInt(args[3]));
+            long start = System.nanoTime();
+            save(sim, Paths.get(args[4]));
+            System.out.printf("Saved step %d (%d dinos) in %.2fs%n", sim.getStep(),
+                    sim.getField().getDinosaurs().size(), (System.nanoTime() - start) / 1e9);
+        }
+        else if(args.length >= 3 && args[0].equals("resume")) {
+            Path from = Paths.get(args[1]);
+            int[] size = readSize(from);
+            Simulator sim = new Simulator(size[0], size[1], true);
+
+            long start = System.nanoTime();
+            load(sim, from);
+            System.out.printf("Loaded step %d (%d dinos) in %.2fs%n", sim.getStep(),
+                    sim.getField().getDinosaurs().size(), (System.nanoTime() - start) / 1e9);
+
+            sim.simulate(Integer.parseInt(args[2]));
+            if(args.length > 3) save(sim, Paths.get(args[3]));
+        }
+        else {
+            System.out.println("Usage: WorldCheckpoint save depth width steps file");
+            System.out.println("       WorldCheckpoint resume file steps [saveTo]");
+        }
+    }
+}
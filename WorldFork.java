@@ -0,0 +1,132 @@
+/*
+ * A what-if branch of a run: starts from a WorldSnapshot with its own tuning, time, weather
+ * and rng, and can be stepped without touching the run it came from.
+ *
+ *   WorldSnapshot here = WorldSnapshot.of(sim);
+ *   WorldFork a = new WorldFork(here).withTuning("vegRegrowChance", "0.4");
+ *   WorldFork b = new WorldFork(here).withTuning("ALLOSAURUS.maxAge", "120");
+ *   a.simulate(500);  b.simulate(500);
+ *
+ * Branches are cheap until they're stepped: they share the snapshot (vegetation chunks and the
+ * packed dinosaurs) and only make their own world on the first simulate().
+ * The managers are static, so a branch swaps its globals in while it steps and puts the
+ * previous ones back after. Only one branch steps at a time (they queue on a lock); the main
+ * run shouldn't be stepping while a branch does either.
+ */
+public class WorldFork
+{
+    // the statics are shared by everything in the JVM
+    private static final Object GLOBALS_LOCK = new Object();
+
+    private final WorldSnapshot start;
+    private SimGlobals globals;
+    private Simulator sim;
+
+    // Branch starting at the snapshot, with the globals it was taken with
+    public WorldFork(WorldSnapshot start)
+    {
+        this.start = start;
+        this.globals = start.getGlobals();
+    }
+
+    // Branch off the simulator's current state (call between its steps)
+    public static WorldFork of(Simulator source)
+    {
+        synchronized(GLOBALS_LOCK) {
+            return new WorldFork(WorldSnapshot.of(source));
+        }
+    }
+
+    // Another branch from wherever this one has got to
+    public WorldFork fork()
+    {
+        synchronized(GLOBALS_LOCK) {
+            WorldFork copy = new WorldFork((sim == null) ? start : new WorldSnapshot(sim, globals));
+            copy.globals = globals;
+            return copy;
+        }
+    }
+
+    // Changes one tuning value for this branch only (key as in Tuning.snapshot); returns this
+    public WorldFork withTuning(String key, String value)
+    {
+        synchronized(GLOBALS_LOCK) {
+            globals = globals.withTuning(key, value);
+        }
+        return this;
+    }
+
+    // Reseeds this branch's rng, so otherwise identical branches can play out differently
+    public WorldFork withSeed(long seed)
+    {
+        synchronized(GLOBALS_LOCK) {
+            SimGlobals outside = SimGlobals.capture();
+            Randomizer.reset(seed);
+            globals = globals.withRngState(Randomizer.getState());
+            outside.install();
+        }
+        return this;
+    }
+
+    // Runs up to numSteps steps of this branch (stops early if one side dies out)
+    public void simulate(int numSteps)
+    {
+        synchronized(GLOBALS_LOCK) {
+            SimGlobals outside = SimGlobals.capture();
+            try {
+                if(sim == null) sim = newSimulator();
+                globals.install();
+                for(int n = 0; n < numSteps && sim.getField().isViable(); n++) {
+                    sim.simulateOneStep();
+                }
+                globals = SimGlobals.capture();
+            }
+            finally {
+                outside.install();
+            }
+        }
+    }
+
+    // The branch's own simulator (made on first use) e.g. to add StepListeners; step it through simulate()
+    public Simulator getSimulator()
+    {
+        synchronized(GLOBALS_LOCK) {
+            if(sim == null) {
+                SimGlobals outside = SimGlobals.capture();
+                try {
+                    sim = newSimulator();
+                }
+                finally {
+                    outside.install();
+                }
+            }
+            return sim;
+        }
+    }
+
+    public Field getField()
+    {
+        return (sim != null) ? sim.getField() : null;
+    }
+
+    public int getStep()
+    {
+        return (sim != null) ? sim.getStep() : start.getStep();
+    }
+
+    // This branch's tuning/time/weather/rng (what gets installed while it steps)
+    public SimGlobals getGlobals()
+    {
+        return globals;
+    }
+
+    // Headless simulator over a fresh copy of the snapshot (messes with the statics, callers put them back)
+    private Simulator newSimulator()
+    {
+        // tiny, since its own world gets swapped out straight away
+        Simulator made = new Simulator(1, 1, true);
+        made.setStatsSink(null);
+        made.restoreWorld(start.newField(), start.getStep());
+        return made;
+    }
+}
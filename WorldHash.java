@@ -0,0 +1,95 @@
+import java.io.PrintStream;
+import java.util.Map;
+
+/*
+ * A 64-bit fingerprint of a world: the XOR of a mixed hash per vegetation cell (position,
+ * amount) and per live dinosaur (cell, species and every bit of state the next step reads).
+ * Dead ones left lying in a cell count as empty, like they do for the next step.
+ * Two engines that agree on the world agree on the hash, whatever order they keep things in,
+ * so comparing one number a step is enough to prove they're doing the same thing.
+ * It's worked out from scratch every time, one pass over every cell and dinosaur. Keeping a
+ * running XOR up to date on every write wouldn't be cheaper: regrowth rewrites most of the
+ * vegetation each step, and every live dino ages and uses energy each step, so nearly all
+ * of it changes anyway (and the hot paths would pay for it even with no hash attached).
+ *
+ * As a StepListener it keeps the latest hash and, given a stream, prints "step hash" lines
+ * for diffing between runs.
+ */
+public class WorldHash implements StepListener
+{
+    private final PrintStream out;
+    private volatile int lastStep = -1;
+    private volatile long lastHash;
+
+    // Just keeps the latest hash
+    public WorldHash()
+    {
+        this(null);
+    }
+
+    // Also prints every step's hash to out
+    public WorldHash(PrintStream out)
+    {
+        this.out = out;
+    }
+
+    @Override
+    public void stepCompleted(int step, Field field)
+    {
+        long hash = of(field);
+        lastHash = hash;
+        lastStep = step;
+        if(out != null) out.println(step + " " + toHex(hash));
+    }
+
+    public int getLastStep()
+    {
+        return lastStep;
+    }
+
+    public long getLastHash()
+    {
+        return lastHash;
+    }
+
+    // Hash of the whole world in the field
+    public static long of(Field field)
+    {
+        long hash = field.getVegetation().stateHash();
+        int width = field.getWidth();
+        for(Map.Entry<Location, Dinosaur> e : field.getOccupants().entrySet()) {
+            if(!e.getValue().isAlive()) continue;
+            Location loc = e.getKey();
+            hash ^= of(e.getValue(), loc.row() * width + loc.col());
+        }
+        return hash;
+    }
+
+    // Hash of one dinosaur standing in a cell (row * width + col)
+    public static long of(Dinosaur d, int cell)
+    {
+        int flags = (d.isFemale() ? 1 : 0) | (d.isInfected() ? 2 : 0) | (d.hasPendingInfectionChange() ? 4 : 0);
+        long h = mix(((long) cell << 16) | (d.getSpeciesType().ordinal() << 8) | flags);
+        h = mix(h + d.getMaxEnergy());
+        h = mix(h + d.getEnergy());
+        h = mix(h + d.getAge());
+        h = mix(h + d.getInfectionTimer());
+        h = mix(h + d.getImmunityTimer());
+        // kept apart from vegetation cells, which hash (cell << 8 | amount)
+        return mix(h ^ 0x5DEECE66DL);
+    }
+
+    // 64-bit finaliser (from SplitMix64): every input bit affects every output bit
+    public static long mix(long z)
+    {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static String toHex(long hash)
+    {
+        return String.format("%016x", hash);
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * A frozen copy of a world at one step, for starting branches from (see WorldFork).
+ * Vegetation is a copy-on-write fork of the live grid, so taking a snapshot copies none of it
+ * and the live run only copies the chunks it goes on to change. Dinosaurs are packed into
+ * plain columns (about 26 bytes each) that every branch reads from; a branch only makes its
+ * own dinosaur objects when it actually starts stepping.
+ * Nothing here is ever written after the constructor, so any number of branches can share one.
+ */
+public class WorldSnapshot
+{
+    static final int ALIVE = 1, FEMALE = 2, INFECTED = 4, INFECTION_CHANGED = 8;
+
+    private final int depth, width, step;
+    private final SimGlobals globals;
+
+    // package-private so RewindBuffer can encode/decode frames without copying them again
+    final VegetationGrid vegetation;
+    final byte[] species, flags;
+    final int[] cell, maxEnergy, energy, age, infectionTimer, immunityTimer;
+
+    // Snapshot of the simulator's world, with whatever the statics currently hold (call between steps)
+    public static WorldSnapshot of(Simulator sim)
+    {
+        return new WorldSnapshot(sim, SimGlobals.capture());
+    }
+
+    // Snapshot of the simulator's world, with globals kept somewhere else (a branch that isn't running)
+    public WorldSnapshot(Simulator sim, SimGlobals globals)
+    {
+        this(sim.getField(), sim.getStep(), globals);
+    }
+
+    // Snapshot of a field at the given step (e.g. from a StepListener)
+    public WorldSnapshot(Field field, int step, SimGlobals globals)
+    {
+        this.depth = field.getDepth();
+        this.width = field.getWidth();
+        this.step = step;
+        this.globals = globals;
+        this.vegetation = field.getVegetation().fork();
+
+        // dead dinos have no location, so every dino's cell comes from the map
+        Map<Dinosaur, Location> cells = new IdentityHashMap<>();
+        for(Map.Entry<Location, Dinosaur> e : field.getOccupants().entrySet()) {
+            cells.put(e.getValue(), e.getKey());
+        }
+
+        List<Dinosaur> dinos = field.getDinosaurs();
+        int n = dinos.size();
+        species = new byte[n];
+        flags = new byte[n];
+        cell = new int[n];
+        maxEnergy = new int[n];
+        energy = new int[n];
+        age = new int[n];
+        infectionTimer = new int[n];
+        immunityTimer = new int[n];
+
+        for(int i = 0; i < n; i++) {
+            Dinosaur d = dinos.get(i);
+            Location loc = cells.get(d);
+            species[i] = (byte) d.getSpeciesType().ordinal();
+            flags[i] = (byte) ((d.isAlive() ? ALIVE : 0) | (d.isFemale() ? FEMALE : 0)
+                    | (d.isInfected() ? INFECTED : 0) | (d.hasPendingInfectionChange() ? INFECTION_CHANGED : 0));
+            cell[i] = loc.row() * width + loc.col();
+            maxEnergy[i] = d.getMaxEnergy();
+            energy[i] = d.getEnergy();
+            age[i] = d.getAge();
+            infectionTimer[i] = d.getInfectionTimer();
+            immunityTimer[i] = d.getImmunityTimer();
+        }
+    }
+
+    // Snapshot from columns that are already packed (arrays are kept, not copied)
+    WorldSnapshot(int step, SimGlobals globals, VegetationGrid vegetation, byte[] species, byte[] flags, int[] cell,
+                  int[] maxEnergy, int[] energy, int[] age, int[] infectionTimer, int[] immunityTimer)
+    {
+        this.depth = vegetation.getDepth();
+        this.width = vegetation.getWidth();
+        this.step = step;
+        this.globals = globals;
+        this.vegetation = vegetation;
+        this.species = species;
+        this.flags = flags;
+        this.cell = cell;
+        this.maxEnergy = maxEnergy;
+        this.energy = energy;
+        this.age = age;
+        this.infectionTimer = infectionTimer;
+        this.immunityTimer = immunityTimer;
+    }
+
+    /*
+     * A new Field holding this world: shares the snapshot's vegetation chunks, makes fresh
+     * dinosaurs. Doesn't touch the shared rng, so it's safe while another world is stepping.
+     */
+    public Field newField()
+    {
+        Field field = new Field(vegetation.fork());
+        SpeciesType[] types = SpeciesType.values();
+        for(int i = 0; i < species.length; i++) {
+            Location loc = new Location(cell[i] / width, cell[i] % width);
+            Dinosaur d = Dinosaur.create(types[species[i]], loc, (flags[i] & FEMALE) != 0);
+            d.restoreState((flags[i] & ALIVE) != 0, (flags[i] & FEMALE) != 0, maxEnergy[i], energy[i], age[i],
+                    (flags[i] & INFECTED) != 0, infectionTimer[i], immunityTimer[i], (flags[i] & INFECTION_CHANGED) != 0);
+            field.placeDinosaur(d, loc);
+        }
+        return field;
+    }
+
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getStep()
+    {
+        return step;
+    }
+
+    public int getDinoCount()
+    {
+        return species.length;
+    }
+
+    // Tuning, time, weather and rng as they were when the snapshot was taken
+    public SimGlobals getGlobals()
+    {
+        return globals;
+    }
+}